@@ -0,0 +1,223 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+
+import benchmarks.GeneratorFixtures;
+
+/**
+ * Entry points for the JMH benchmarks (package benchmarks). JMH refuses benchmark classes in the
+ * default package, and a named package can't import from it, so the benchmarks get an instance of
+ * this class as a benchmarks.GeneratorFixtures and call it through that.
+ */
+public class BenchmarkFixtures implements GeneratorFixtures {
+
+    /** A single-column generator for one type and repetition ("required", "optional" or "repeated") */
+    static TestFileGenerator.VarProperties varProperties(String type, String repetition){
+        return new TestFileGenerator.VarProperties(repetition, type, TestFileGenerator.valueMap.get(type));
+    }
+
+    private static ArrayList<TestFileGenerator.VarProperties> propList(String type, String repetition, int numColumns){
+        ArrayList<TestFileGenerator.VarProperties> propList = new ArrayList<TestFileGenerator.VarProperties>();
+        for (int i = 0; i < numColumns; i++) {
+            propList.add(varProperties(type, repetition));
+        }
+        return propList;
+    }
+
+    private static MessageType schema(String type, String repetition){
+        return MessageTypeParser.parseMessageType(
+                TestFileGenerator.emitFlatSchemaString(propList(type, repetition, 1)));
+    }
+
+    @Override
+    public List<List<String>> csvRecords(String type, String repetition, int numRecords){
+        TestFileGenerator.VarProperties vp = varProperties(type, repetition);
+        List<List<String>> records = new ArrayList<List<String>>(numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            records.add(Arrays.asList(vp.getNextValue()));
+        }
+        return records;
+    }
+
+    @Override
+    public WriteSupport<List<String>> csvWriteSupport(String type, String repetition, RecordConsumer consumer){
+        CsvWriteSupport ws = new CsvWriteSupport(schema(type, repetition));
+        ws.init(null);
+        ws.prepareForWrite(consumer);
+        return ws;
+    }
+
+    @Override
+    public Callable<Integer> batchWrite(String type, String repetition, RecordConsumer consumer){
+        MessageType schema = schema(type, repetition);
+        final ColumnBatchWriteSupport ws = new ColumnBatchWriteSupport(schema);
+        ws.init(null);
+        ws.prepareForWrite(consumer);
+        final ColumnBatch batch = new ColumnBatch(schema, TestFileGenerator.BATCH_SIZE);
+        TestFileGenerator.fillBatch(batch, propList(type, repetition, 1), TestFileGenerator.BATCH_SIZE);
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                batch.rewind();
+                for (int row = 0; row < batch.getNumRows(); row++) {
+                    ws.write(batch);
+                }
+                return batch.getNumRows();
+            }
+        };
+    }
+
+    @Override
+    public Callable<Integer> nestedBatchWrite(String type, String layouts, int depth, RecordConsumer consumer){
+        final ArrayList<TestFileGenerator.VarProperties> propList = propList(type, "optional", 1);
+        if (depth > 0) {
+            String[] names = layouts.split(",");
+            NestedColumn.Kind[] kinds = new NestedColumn.Kind[names.length];
+            for (int i = 0; i < names.length; i++) {
+                kinds[i] = NestedColumn.kind(names[i]);
+            }
+            TestFileGenerator.nest(propList, kinds, depth);
+        }
+        MessageType schema = MessageTypeParser.parseMessageType(TestFileGenerator.emitFlatSchemaString(propList));
+        final ColumnBatchWriteSupport ws = new ColumnBatchWriteSupport(schema);
+        ws.init(null);
+        ws.prepareForWrite(consumer);
+        final ColumnBatch batch = new ColumnBatch(schema, TestFileGenerator.BATCH_SIZE);
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                TestFileGenerator.fillBatch(batch, propList, TestFileGenerator.BATCH_SIZE);
+                for (int row = 0; row < batch.getNumRows(); row++) {
+                    ws.write(batch);
+                }
+                return batch.getNumRows();
+            }
+        };
+    }
+
+    @Override
+    public Callable<String> nextValue(String type, String repetition){
+        final TestFileGenerator.VarProperties vp = varProperties(type, repetition);
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return vp.getNextValue();
+            }
+        };
+    }
+
+    @Override
+    public Callable<Integer> jsonSidecar(String type, String repetition, int numColumns, final Writer out){
+        ArrayList<TestFileGenerator.VarProperties> propList = propList(type, repetition, numColumns);
+        MessageType schema = MessageTypeParser.parseMessageType(TestFileGenerator.emitFlatSchemaString(propList));
+        final ColumnBatch batch = new ColumnBatch(schema, TestFileGenerator.BATCH_SIZE);
+        TestFileGenerator.fillBatch(batch, propList, TestFileGenerator.BATCH_SIZE);
+        final JsonSidecarWriter writer = new JsonSidecarWriter(out, schema, false);
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                writer.write(batch);
+                return batch.getNumRows();
+            }
+        };
+    }
+
+    @Override
+    public Callable<String> flatSchema(int numColumns){
+        final ArrayList<TestFileGenerator.VarProperties> propList = new ArrayList<TestFileGenerator.VarProperties>();
+        String[] types = new String[]{"boolean", "int32", "int64", "float", "double", "binary"};
+        String[] repetitions = new String[]{"required", "optional", "repeated"};
+        for (int i = 0; i < numColumns; i++) {
+            propList.add(varProperties(types[i % types.length], repetitions[i % repetitions.length]));
+        }
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return TestFileGenerator.emitFlatSchemaString(propList);
+            }
+        };
+    }
+
+    @Override
+    public Callable<Long> generateTestCase(final String namePrefix, final File dir, final boolean checksumFs){
+        return new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                // test cases carry generator state, so build a fresh one each time
+                for (TestFileGenerator.TestCase tc : TestFileGenerator.buildTestCases(dir.getPath())) {
+                    if (new File(tc.fileName.getNameParquet()).getName().startsWith(namePrefix)) {
+                        tc.options.checksumFs = checksumFs;
+                        tc.generate();
+                        return tc.options.numRecords;
+                    }
+                }
+                throw new IllegalArgumentException("No test case named " + namePrefix + "*");
+            }
+        };
+    }
+
+    @Override
+    public Callable<Long> generateTestCase(final String namePrefix, final File dir, final String codec,
+                                                  final int compressionThreads){
+        return new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                for (TestFileGenerator.TestCase tc : TestFileGenerator.buildTestCases(dir.getPath())) {
+                    if (new File(tc.fileName.getNameParquet()).getName().startsWith(namePrefix)) {
+                        tc.options.codec = CompressionCodecName.valueOf(codec);
+                        tc.options.compressionThreads = compressionThreads;
+                        tc.generate();
+                        return tc.options.numRecords;
+                    }
+                }
+                throw new IllegalArgumentException("No test case named " + namePrefix + "*");
+            }
+        };
+    }
+
+    @Override
+    public Callable<Long> verifyTestCase(String namePrefix, File dir, boolean valuesSidecar) throws IOException {
+        for (TestFileGenerator.TestCase tc : TestFileGenerator.buildTestCases(dir.getPath())) {
+            final File parquet = new File(tc.fileName.getNameParquet());
+            if (parquet.getName().startsWith(namePrefix)) {
+                tc.options.valuesSidecar = valuesSidecar;
+                tc.generate();
+                return new Callable<Long>() {
+                    @Override
+                    public Long call() throws InterruptedException {
+                        List<TestFileVerifier.FileResult> results =
+                                new TestFileVerifier(1, 1).verify(Collections.singletonList(parquet));
+                        if (!results.get(0).ok()) {
+                            throw new IllegalStateException("Verification failed: " + parquet);
+                        }
+                        return results.get(0).rows;
+                    }
+                };
+            }
+        }
+        throw new IllegalArgumentException("No test case named " + namePrefix + "*");
+    }
+
+    @Override
+    public Callable<Long> generateWideCase(final int numColumns, final File dir){
+        return new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                TestFileGenerator.TestCase tc = TestFileGenerator.buildWideCases(dir.getPath(), numColumns).get(0);
+                tc.generate();
+                return tc.options.numRecords;
+            }
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package benchmarks;
+
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Swallows everything a WriteSupport emits, so only the write support itself is measured */
+class BlackholeRecordConsumer extends RecordConsumer {
+  private final Blackhole bh;
+
+  BlackholeRecordConsumer(Blackhole bh) {
+    this.bh = bh;
+  }
+
+  @Override public void startMessage() { }
+  @Override public void endMessage() { }
+  @Override public void startField(String field, int index) { bh.consume(index); }
+  @Override public void endField(String field, int index) { }
+  @Override public void startGroup() { }
+  @Override public void endGroup() { }
+  @Override public void addInteger(int value) { bh.consume(value); }
+  @Override public void addLong(long value) { bh.consume(value); }
+  @Override public void addBoolean(boolean value) { bh.consume(value); }
+  @Override public void addBinary(Binary value) { bh.consume(value); }
+  @Override public void addFloat(float value) { bh.consume(value); }
+  @Override public void addDouble(double value) { bh.consume(value); }
+}
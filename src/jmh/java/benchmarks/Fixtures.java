@@ -0,0 +1,21 @@
+package benchmarks;
+
+/**
+ * The generator's BenchmarkFixtures. They live in the default package, which can't be referenced
+ * from here, so they implement GeneratorFixtures and only the class is looked up by name: every
+ * call is checked by the compiler, and a missing class fails the first benchmark's setup.
+ */
+final class Fixtures {
+  static final GeneratorFixtures INSTANCE = load();
+
+  private Fixtures() {
+  }
+
+  private static GeneratorFixtures load() {
+    try {
+      return (GeneratorFixtures) Class.forName("BenchmarkFixtures").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("No default-package BenchmarkFixtures on the classpath", e);
+    }
+  }
+}
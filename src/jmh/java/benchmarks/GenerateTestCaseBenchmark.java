@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end generateTestCase() of a small, a page-border and the big-file case, .parquet and .json included,
+ * written through a FileChannel or hadoop's checksumming LocalFileSystem
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GenerateTestCaseBenchmark {
+
+  @Param({"TestPrimitives_multi-type_float", "TestPageBorder_float", "TestBigFile"})
+  public String testCase;
+
+  @Param({"channel", "checksum"})
+  public String fileSystem;
+
+  private File dir;
+  private Callable<Long> generate;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = File.createTempFile("testcases", "");
+    if (!dir.delete() || !dir.mkdir()) {
+      throw new IOException("Can't create " + dir);
+    }
+    generate = Fixtures.INSTANCE.generateTestCase(testCase, dir, fileSystem.equals("checksum"));
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public Long generate() throws Exception {
+    return generate.call();
+  }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.RecordConsumer;
+
+/**
+ * What the benchmarks need from the generator, implemented by the default-package
+ * BenchmarkFixtures (see Fixtures). Everything handed back is a JDK or parquet type.
+ */
+public interface GeneratorFixtures {
+
+  /** The next numRecords string records of a single-column schema */
+  List<List<String>> csvRecords(String type, String repetition, int numRecords);
+
+  /** A CsvWriteSupport for a single-column schema, writing into the given consumer */
+  WriteSupport<List<String>> csvWriteSupport(String type, String repetition, RecordConsumer consumer);
+
+  /** Writes a full batch of a single-column schema into the given consumer, one record per row */
+  Callable<Integer> batchWrite(String type, String repetition, RecordConsumer consumer);
+
+  /**
+   * Generates and shreds a full batch of an optional column wrapped in depth levels of the given
+   * comma-separated layouts (flat for depth 0) into the given consumer
+   */
+  Callable<Integer> nestedBatchWrite(String type, String layouts, int depth, RecordConsumer consumer);
+
+  /** VarProperties.getNextValue() of a fresh single-column generator */
+  Callable<String> nextValue(String type, String repetition);
+
+  /** Streams a batch of numColumns-wide records to the JSON sidecar writer */
+  Callable<Integer> jsonSidecar(String type, String repetition, int numColumns, Writer out);
+
+  /** emitFlatSchemaString() for a schema of numColumns columns of rotating types */
+  Callable<String> flatSchema(int numColumns);
+
+  /**
+   * Generates the first built-in test case whose file name starts with the given prefix into dir,
+   * through hadoop's checksumming LocalFileSystem instead of a FileChannel if checksumFs is set
+   */
+  Callable<Long> generateTestCase(String namePrefix, File dir, boolean checksumFs);
+
+  /**
+   * Same, compressed with the given codec, on compressionThreads threads besides the writing thread or,
+   * if 0, on the writing thread
+   */
+  Callable<Long> generateTestCase(String namePrefix, File dir, String codec, int compressionThreads);
+
+  /**
+   * Generates the first built-in test case whose file name starts with the given prefix into dir, with or
+   * without a .values sidecar, and verifies it against the .values or the .json sidecar on every call
+   */
+  Callable<Long> verifyTestCase(String namePrefix, File dir, boolean valuesSidecar) throws IOException;
+
+  /** Generates the wide-schema mode's file of numColumns columns into dir */
+  Callable<Long> generateWideCase(int numColumns, File dir);
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Records per second formatted into the .json sidecar
+ * (JsonSidecarWriter, which replaced convertRecordToJSON).
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JsonSidecarBenchmark {
+  static final int RECORDS = 1024; // TestFileGenerator.BATCH_SIZE
+
+  @Param({"int64", "double", "binary"})
+  public String type;
+
+  @Param({"optional", "repeated"})
+  public String repetition;
+
+  @Param({"6", "100"})
+  public int numColumns;
+
+  private Callable<Integer> writeBatch;
+
+  @Setup
+  public void setup(final Blackhole bh) {
+    Writer sink = new Writer() {
+      @Override
+      public void write(char[] buf, int off, int len) {
+        bh.consume(buf);
+      }
+
+      @Override
+      public Writer append(CharSequence csq) {
+        bh.consume(csq.length());
+        return this;
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    writeBatch = Fixtures.INSTANCE.jsonSidecar(type, repetition, numColumns, sink);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public Integer writeRecords() throws Exception {
+    return writeBatch.call();
+  }
+}
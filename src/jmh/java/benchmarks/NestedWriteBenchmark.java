@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Records per second generated into a batch and shredded by ColumnBatchWriteSupport, for a column
+ * nested depth levels deep in LIST, MAP and plain groups; depth 0 is the flat optional column
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NestedWriteBenchmark {
+  static final int RECORDS = 1024; // TestFileGenerator.BATCH_SIZE
+
+  @Param({"int32", "binary"})
+  public String type;
+
+  @Param({"list", "map", "struct", "list,map,struct"})
+  public String layouts;
+
+  @Param({"0", "1", "3"})
+  public int depth;
+
+  private Callable<Integer> write;
+
+  @Setup
+  public void setup(Blackhole bh) {
+    write = Fixtures.INSTANCE.nestedBatchWrite(type, layouts, depth, new BlackholeRecordConsumer(bh));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public Integer generateAndWrite() throws Exception {
+    return write.call();
+  }
+}
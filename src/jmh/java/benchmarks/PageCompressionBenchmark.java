@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * generateTestCase() of the big-file case per codec, with pages compressed on the writing thread
+ * (compressionThreads 0) or on a pool of compression threads; the gain needs that many free cores
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageCompressionBenchmark {
+
+  @Param({"TestBigFile"})
+  public String testCase;
+
+  @Param({"UNCOMPRESSED", "SNAPPY", "GZIP"})
+  public String codec;
+
+  @Param({"0", "2", "4"})
+  public int compressionThreads;
+
+  private File dir;
+  private Callable<Long> generate;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = File.createTempFile("testcases", "");
+    if (!dir.delete() || !dir.mkdir()) {
+      throw new IOException("Can't create " + dir);
+    }
+    generate = Fixtures.INSTANCE.generateTestCase(testCase, dir, codec, compressionThreads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public Long generate() throws Exception {
+    return generate.call();
+  }
+}
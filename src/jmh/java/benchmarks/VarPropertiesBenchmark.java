@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** VarProperties.getNextValue() for repeated fields, which builds the '|'-separated list string */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VarPropertiesBenchmark {
+
+  @Param({"boolean", "int32", "int64", "float", "double", "binary"})
+  public String type;
+
+  @Param({"repeated"})
+  public String repetition;
+
+  private Callable<String> nextValue;
+
+  @Setup
+  public void setup() {
+    nextValue = Fixtures.INSTANCE.nextValue(type, repetition);
+  }
+
+  @Benchmark
+  public String getNextValue() throws Exception {
+    return nextValue.call();
+  }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** TestFileVerifier on one thread, against the .json sidecar or the binary .values sidecar */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VerifyBenchmark {
+
+  @Param({"TestBigFile", "TestPrimitives_multi-type_float"})
+  public String testCase;
+
+  @Param({"json", "values"})
+  public String sidecar;
+
+  private File dir;
+  private Callable<Long> verify;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = File.createTempFile("testcases", "");
+    if (!dir.delete() || !dir.mkdir()) {
+      throw new IOException("Can't create " + dir);
+    }
+    verify = Fixtures.INSTANCE.verifyTestCase(testCase, dir, sidecar.equals("values"));
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public Long verify() throws Exception {
+    return verify.call();
+  }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** generateTestCase() of the wide-schema mode's file at growing column counts; time should grow linearly */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms1g"})
+public class WideSchemaBenchmark {
+
+  @Param({"1000", "5000", "20000"})
+  public int numColumns;
+
+  private File dir;
+  private Callable<Long> generate;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = File.createTempFile("testcases", "");
+    if (!dir.delete() || !dir.mkdir()) {
+      throw new IOException("Can't create " + dir);
+    }
+    generate = Fixtures.INSTANCE.generateWideCase(numColumns, dir);
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public Long generate() throws Exception {
+    return generate.call();
+  }
+}
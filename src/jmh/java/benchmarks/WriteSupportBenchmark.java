@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Records per second through CsvWriteSupport and ColumnBatchWriteSupport, per column type and repetition */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WriteSupportBenchmark {
+  static final int RECORDS = 1024; // must match TestFileGenerator.BATCH_SIZE for batchWrite
+
+  @Param({"boolean", "int32", "int64", "float", "double", "binary", "date", "int96", "decimal"})
+  public String type;
+
+  @Param({"required", "optional", "repeated"})
+  public String repetition;
+
+  private List<List<String>> records;
+  private WriteSupport<List<String>> csvWriteSupport;
+  private Callable<Integer> batchWrite;
+
+  @Setup
+  public void setup(Blackhole bh) {
+    records = Fixtures.INSTANCE.csvRecords(type, repetition, RECORDS);
+    csvWriteSupport = Fixtures.INSTANCE.csvWriteSupport(type, repetition, new BlackholeRecordConsumer(bh));
+    batchWrite = Fixtures.INSTANCE.batchWrite(type, repetition, new BlackholeRecordConsumer(bh));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void csvWrite() {
+    for (int i = 0; i < RECORDS; i++) {
+      csvWriteSupport.write(records.get(i));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public Integer batchWrite() throws Exception {
+    return batchWrite.call();
+  }
+}
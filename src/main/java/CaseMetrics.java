@@ -0,0 +1,191 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.format.PageHeader;
+import org.apache.parquet.format.PageType;
+import org.apache.parquet.format.Util;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+
+/**
+ * Where the time of one test case went, and what ended up on disk.
+ *
+ * Stage times are summed over all threads that worked on the case, so with shards or the
+ * pipeline they can add up to more than the case's wall time. The layout (row groups and pages)
+ * is read back from the written file (all data files of a dataset).
+ */
+class CaseMetrics {
+    private static final int PAGE_HEADER_BUFFER_SIZE = 8192;
+
+    long records;
+
+    // time spent in each stage
+    long generateNanos; // filling batches with values
+    long parquetNanos;  // encoding, flushing and closing the Parquet file (and merging shards)
+    long jsonNanos;     // writing the JSON sidecar
+
+    // with the pipeline: throughput of each stage, time blocked on the ring and depth of its input queue
+    boolean pipelined;
+    final GenerationPipeline.StageStats generateStage = new GenerationPipeline.StageStats("generate");
+    final GenerationPipeline.StageStats parquetStage = new GenerationPipeline.StageStats("parquet");
+    final GenerationPipeline.StageStats jsonStage = new GenerationPipeline.StageStats("json");
+
+    // on disk
+    long parquetBytes;
+    long jsonBytes;
+    long schemaBytes;
+    int rowGroups;
+    long minRowGroupBytes;  // compressed size of the column chunks
+    long maxRowGroupBytes;
+    long dataPages;
+    long dictionaryPages;
+    long minPageBytes;      // compressed size of data pages, header excluded
+    long maxPageBytes;
+    long totalPageBytes;
+
+    synchronized void addStageTimes(long generate, long parquet, long json){
+        generateNanos += generate;
+        parquetNanos += parquet;
+        jsonNanos += json;
+    }
+
+    synchronized void addPipelineStats(GenerationPipeline.Stats stats){
+        pipelined = true;
+        generateStage.add(stats.produce);
+        parquetStage.add(stats.parquet);
+        jsonStage.add(stats.json);
+    }
+
+    /** The slowest pipeline stage, which bounds its throughput; null without the pipeline */
+    synchronized String bottleneck(){
+        if (!pipelined) {
+            return null;
+        }
+        GenerationPipeline.StageStats slowest = generateStage;
+        for (GenerationPipeline.StageStats s : new GenerationPipeline.StageStats[]{parquetStage, jsonStage}) {
+            if (s.recordsPerSecond() < slowest.recordsPerSecond()) {
+                slowest = s;
+            }
+        }
+        return slowest.name;
+    }
+
+    /** Sizes and layout of the files of a test case that was just written (or found up to date) */
+    void readFiles(TestFileGenerator.TestFileName tfn, TestFileGenerator.TestOptions options) throws IOException {
+        records = options.numRecords;
+        jsonBytes = new File(tfn.getNameJSON()).length();
+        schemaBytes = new File(tfn.getNameSchema()).length();
+
+        minRowGroupBytes = Long.MAX_VALUE;
+        minPageBytes = Long.MAX_VALUE;
+        // all files of a dataset add up
+        for (File parquet : TestFileGenerator.parquetFiles(tfn, options)) {
+            readLayout(parquet);
+        }
+        if (rowGroups == 0) {
+            minRowGroupBytes = 0;
+        }
+        if (dataPages == 0) {
+            minPageBytes = 0;
+        }
+    }
+
+    private void readLayout(File parquet) throws IOException {
+        parquetBytes += parquet.length();
+        ParquetMetadata footer = ParquetFileReader.readFooter(LocalChannelFileSystem.sharedConfiguration(),
+                new Path(parquet.toURI()), ParquetMetadataConverter.NO_FILTER);
+        rowGroups += footer.getBlocks().size();
+        FileInputStream file = new FileInputStream(parquet); // one for all chunks, wide schemas have many
+        try {
+            for (BlockMetaData block : footer.getBlocks()) {
+                long size = 0;
+                for (ColumnChunkMetaData chunk : block.getColumns()) {
+                    size += chunk.getTotalSize();
+                    countPages(file, chunk);
+                }
+                minRowGroupBytes = Math.min(minRowGroupBytes, size);
+                maxRowGroupBytes = Math.max(maxRowGroupBytes, size);
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private void countPages(FileInputStream file, ColumnChunkMetaData chunk) throws IOException {
+        for (PageHeader header : readPageHeaders(file, chunk)) {
+            int size = header.getCompressed_page_size();
+            if (header.getType() == PageType.DICTIONARY_PAGE) {
+                dictionaryPages++;
+            } else {
+                dataPages++;
+                minPageBytes = Math.min(minPageBytes, size);
+                maxPageBytes = Math.max(maxPageBytes, size);
+                totalPageBytes += size;
+            }
+        }
+    }
+
+    // the footer has no page index in this format version, so walk the page headers of the chunk,
+    // skipping the pages themselves
+    static ArrayList<PageHeader> readPageHeaders(FileInputStream file, ColumnChunkMetaData chunk) throws IOException {
+        ArrayList<PageHeader> headers = new ArrayList<PageHeader>();
+        file.getChannel().position(chunk.getStartingPos());
+        CountingInputStream in = new CountingInputStream(new BufferedInputStream(file,
+                (int) Math.min(PAGE_HEADER_BUFFER_SIZE, Math.max(1, chunk.getTotalSize()))));
+        while (in.count < chunk.getTotalSize()) {
+            PageHeader header = Util.readPageHeader(in);
+            headers.add(header);
+            for (long skip = header.getCompressed_page_size(); skip > 0; ) {
+                long n = in.skip(skip);
+                if (n <= 0) {
+                    throw new IOException("Column chunk " + chunk.getPath() + " ends within a page");
+                }
+                skip -= n;
+            }
+        }
+        return headers;
+    }
+
+    private static class CountingInputStream extends FilterInputStream{
+        long count;
+
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
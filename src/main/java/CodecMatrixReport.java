@@ -0,0 +1,151 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+
+/**
+ * Cost report of the codec/encoding matrix: Parquet write time and size on disk per file, and
+ * compressed vs. uncompressed column chunk sizes per column type, read back from the footers.
+ * The write time is the median over the timed passes of the CaseMetrics Parquet time, which
+ * leaves out generating the values and writing the JSON sidecar.
+ */
+class CodecMatrixReport {
+
+    /** Codecs that can actually compress something here; e.g. LZO needs a library we don't ship */
+    static ArrayList<CompressionCodecName> availableCodecs(){
+        ArrayList<CompressionCodecName> codecs = new ArrayList<CompressionCodecName>();
+        for (CompressionCodecName codec : CompressionCodecName.values()) {
+            String className = codec.getHadoopCompressionCodecClassName();
+            if (className == null) {
+                codecs.add(codec); // uncompressed
+                continue;
+            }
+            try {
+                CompressionCodec hadoopCodec = (CompressionCodec) ReflectionUtils.newInstance(
+                        Class.forName(className), LocalChannelFileSystem.sharedConfiguration());
+                CompressionOutputStream out = hadoopCodec.createOutputStream(new java.io.ByteArrayOutputStream());
+                out.write(new byte[16]);
+                out.close();
+                codecs.add(codec);
+            } catch (Exception e) {
+                System.err.println("Skipping codec " + codec + ": " + e);
+            } catch (LinkageError e) {
+                System.err.println("Skipping codec " + codec + ": " + e); // missing native library
+            }
+        }
+        return codecs;
+    }
+
+    /**
+     * Generate the cases serially, once to warm up (loading the codecs and compiling the writers)
+     * and then repeats times; the summary is the last pass's
+     */
+    static TestCaseRunner.Summary run(File report, List<TestFileGenerator.TestCase> cases, int repeats)
+            throws IOException {
+        if (repeats < 1) {
+            throw new IllegalArgumentException("Number of codec matrix repeats must be positive: " + repeats);
+        }
+        // no cache: every pass writes every file
+        TestCaseRunner runner = new TestCaseRunner(1);
+        runner.run(cases);
+        ArrayList<TestCaseRunner.Summary> passes = new ArrayList<TestCaseRunner.Summary>(repeats);
+        for (int i = 0; i < repeats; i++) {
+            passes.add(runner.run(cases));
+        }
+        write(report, cases, passes);
+        return passes.get(repeats - 1);
+    }
+
+    /** One CSV row per test case and column type */
+    static void write(File report, List<TestFileGenerator.TestCase> cases, List<TestCaseRunner.Summary> passes)
+            throws IOException {
+        // Parquet write times of the cases that no pass failed
+        HashMap<String, long[]> parquetNanos = new HashMap<String, long[]>();
+        for (int i = 0; i < passes.size(); i++) {
+            for (TestCaseRunner.Result r : passes.get(i).results) {
+                long[] times = parquetNanos.get(r.name);
+                if (times == null) {
+                    times = new long[passes.size()];
+                    parquetNanos.put(r.name, times);
+                }
+                times[i] = r.error == null ? r.metrics.parquetNanos : -1;
+            }
+        }
+
+        Configuration conf = LocalChannelFileSystem.sharedConfiguration();
+        PrintWriter out = new PrintWriter(new FileWriter(report));
+        try {
+            out.println("file,codec,dictionary,writer_version,parquet_ms,repeats,bytes_on_disk,column_type," +
+                    "compressed_bytes,uncompressed_bytes,compression_ratio");
+            for (TestFileGenerator.TestCase tc : cases) {
+                String name = tc.fileName.getNameParquet();
+                long[] times = parquetNanos.get(name);
+                if (times == null || min(times) < 0) {
+                    continue; // failures are listed in the run summary
+                }
+                File file = new File(name);
+                ParquetMetadata footer = ParquetFileReader.readFooter(conf, new Path(file.toURI()),
+                        ParquetMetadataConverter.NO_FILTER);
+
+                // [compressed, uncompressed] bytes per physical type
+                TreeMap<String, long[]> sizes = new TreeMap<String, long[]>();
+                for (BlockMetaData block : footer.getBlocks()) {
+                    for (ColumnChunkMetaData chunk : block.getColumns()) {
+                        String type = chunk.getType().name().toLowerCase();
+                        long[] s = sizes.get(type);
+                        if (s == null) {
+                            s = new long[2];
+                            sizes.put(type, s);
+                        }
+                        s[0] += chunk.getTotalSize();
+                        s[1] += chunk.getTotalUncompressedSize();
+                    }
+                }
+
+                for (String type : sizes.keySet()) {
+                    long[] s = sizes.get(type);
+                    out.println(String.format(Locale.ROOT, "%s,%s,%b,%s,%.1f,%d,%d,%s,%d,%d,%.3f",
+                            file.getName(), tc.options.codec, tc.options.enableDictionary, tc.options.writerVersion,
+                            median(times) / 1e6, times.length, file.length(), type, s[0], s[1],
+                            s[0] > 0 ? (double) s[1] / s[0] : 0.0));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static long min(long[] values){
+        long min = Long.MAX_VALUE;
+        for (long v : values) {
+            min = Math.min(min, v);
+        }
+        return min;
+    }
+
+    private static double median(long[] values){
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2.0;
+    }
+}
@@ -0,0 +1,372 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+/**
+ * A batch of rows, stored column-major in primitive arrays.
+ *
+ * Every field of the schema holds one slot per instance of its parent: per row for top-level
+ * fields, per group instance below that. Required and optional fields have a value per slot
+ * (optional ones also a per-slot null flag). Repeated fields hold their items back to back, with a
+ * per-slot list length; lists are appended in slot order. Values live in the primitive leaves
+ * (Column); a Group only holds the structure, and its instances are the slots of its children.
+ * For a flat schema the fields are the columns.
+ */
+public class ColumnBatch {
+  final Node[] fields;    // top-level fields of the schema
+  final Column[] columns; // primitive leaves, in schema column order
+  final boolean flat;
+  final int capacity;
+  int numRows;
+  int generation; // bumped whenever the rows are handed out anew, see ColumnBatchWriteSupport
+
+  public ColumnBatch(MessageType schema, int capacity) {
+    this.capacity = capacity;
+    this.fields = new Node[schema.getFieldCount()];
+    ArrayList<Column> leaves = new ArrayList<Column>();
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = node(schema, schema.getType(i), new String[]{schema.getFieldName(i)}, capacity, leaves);
+    }
+    this.columns = leaves.toArray(new Column[leaves.size()]);
+    this.flat = columns.length == fields.length;
+  }
+
+  private ColumnBatch(Column[] columns, int capacity, int numRows) {
+    this.fields = columns;
+    this.columns = columns;
+    this.flat = true;
+    this.capacity = capacity;
+    this.numRows = numRows;
+  }
+
+  private static Node node(MessageType schema, Type field, String[] path, int capacity, List<Column> leaves) {
+    if (field.isPrimitive()) {
+      Column c = new Column(schema.getColumnDescription(path), field.asPrimitiveType(), capacity);
+      leaves.add(c);
+      return c;
+    }
+    GroupType group = field.asGroupType();
+    Node[] children = new Node[group.getFieldCount()];
+    for (int i = 0; i < children.length; i++) {
+      String[] childPath = Arrays.copyOf(path, path.length + 1);
+      childPath[path.length] = group.getFieldName(i);
+      children[i] = node(schema, group.getType(i), childPath, capacity, leaves);
+    }
+    return new Group(group, children, capacity);
+  }
+
+  /** The given columns of a flat batch as a batch of their own; the values are shared, not copied */
+  public ColumnBatch select(int[] indexes) {
+    requireFlat();
+    Column[] selected = new Column[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      selected[i] = columns[indexes[i]];
+    }
+    return new ColumnBatch(selected, capacity, numRows);
+  }
+
+  /** Append row srcRow of a flat batch of the same schema */
+  public void appendRow(ColumnBatch src, int srcRow) {
+    requireFlat();
+    if (numRows == capacity) {
+      throw new IllegalStateException("Batch is full: " + capacity + " rows");
+    }
+    for (int i = 0; i < columns.length; i++) {
+      columns[i].copyRow(src.columns[i], srcRow, numRows);
+    }
+    numRows++;
+  }
+
+  private void requireFlat() {
+    if (!flat) {
+      throw new UnsupportedOperationException("Only batches of flat schemas can be split up by column or row");
+    }
+  }
+
+  /** The i-th primitive column, in schema column order */
+  public Column column(int i) {
+    return columns[i];
+  }
+
+  /** The i-th top-level field */
+  public Node field(int i) {
+    return fields[i];
+  }
+
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public void setNumRows(int numRows) {
+    if (numRows > capacity) {
+      throw new IllegalArgumentException("Batch capacity is " + capacity + " rows, got " + numRows);
+    }
+    this.numRows = numRows;
+  }
+
+  /** Empty the batch so it can be filled again */
+  public void reset() {
+    for (Node f : fields) {
+      f.reset(numRows);
+    }
+    numRows = 0;
+    generation++;
+  }
+
+  /** Hand the same rows out once more, e.g. to write them again */
+  public void rewind() {
+    generation++;
+  }
+
+  /** A field of the schema; see the class comment for its slots */
+  public abstract static class Node {
+    final String name;
+    final OriginalType originalType;
+    final boolean optional;
+    final boolean repeated;
+
+    boolean[] nulls;  // per slot, optional fields only
+    int[] lengths;    // per slot list length, repeated fields only
+    int[] offsets;    // per slot position of the first list item, repeated fields only
+    int numValues;    // number of list items appended so far, repeated fields only
+
+    Node(Type field, int capacity) {
+      name = field.getName();
+      originalType = field.getOriginalType();
+      repeated = field.isRepetition(Type.Repetition.REPEATED);
+      optional = field.isRepetition(Type.Repetition.OPTIONAL);
+      if (optional) {
+        nulls = new boolean[capacity];
+      }
+      if (repeated) {
+        lengths = new int[capacity];
+        offsets = new int[capacity + 1];
+      }
+    }
+
+    /** Make room for n slots; the top-level fields always have room for the batch's rows */
+    public void ensureSlots(int n) {
+      if (nulls != null && nulls.length < n) {
+        nulls = Arrays.copyOf(nulls, Math.max(n, nulls.length * 2));
+      }
+      if (lengths != null && lengths.length < n) {
+        int size = Math.max(n, lengths.length * 2);
+        lengths = Arrays.copyOf(lengths, size);
+        offsets = Arrays.copyOf(offsets, size + 1);
+      }
+    }
+
+    void reset(int usedSlots) {
+      if (nulls != null) {
+        Arrays.fill(nulls, 0, usedSlots, false);
+      }
+      numValues = 0;
+    }
+
+    public void setNull(int slot) {
+      if (!optional) {
+        throw new IllegalStateException("Only optional fields can hold a null");
+      }
+      nulls[slot] = true;
+    }
+
+    public boolean isNull(int slot) {
+      return optional && nulls[slot];
+    }
+
+    /** Make room for n more list items and return the position of the first one */
+    public abstract int reserve(int n);
+
+    /** All items appended since the previous slot form this slot's list; slots must be closed in order */
+    public void endList(int slot) {
+      lengths[slot] = numValues - offsets[slot];
+      offsets[slot + 1] = numValues;
+    }
+
+    public int listStart(int slot) {
+      return offsets[slot];
+    }
+
+    public int listLength(int slot) {
+      return lengths[slot];
+    }
+  }
+
+  /** A group field: its instances are the slots of its children */
+  public static class Group extends Node {
+    final Node[] children;
+
+    Group(GroupType field, Node[] children, int capacity) {
+      super(field, capacity);
+      this.children = children;
+    }
+
+    public Node child(int i) {
+      return children[i];
+    }
+
+    /** Number of instances, i.e. child slots, for the given number of slots */
+    public int instances(int usedSlots) {
+      return repeated ? numValues : usedSlots;
+    }
+
+    @Override
+    public int reserve(int n) {
+      int pos = numValues;
+      numValues += n;
+      return pos;
+    }
+
+    @Override
+    void reset(int usedSlots) {
+      int instances = instances(usedSlots);
+      for (Node c : children) {
+        c.reset(instances);
+      }
+      super.reset(usedSlots);
+    }
+  }
+
+  /** A primitive field, holding the values */
+  public static class Column extends Node {
+    final PrimitiveTypeName type;
+    final int typeLength;     // fixed_len_byte_array only
+    final ValueFormat format; // text form of the values
+
+    // value storage; only the array matching type is allocated
+    int[] ints;
+    long[] longs;
+    float[] floats;
+    double[] doubles;
+    boolean[] booleans;
+    Binary[] binaries;
+
+    Column(ColumnDescriptor cd, PrimitiveType field, int capacity) {
+      super(field, capacity);
+      type = cd.getType();
+      typeLength = cd.getTypeLength();
+      format = ValueFormat.of(field);
+      allocate(capacity);
+    }
+
+    private void allocate(int size) {
+      switch (type) {
+        case BOOLEAN: booleans = booleans == null ? new boolean[size] : Arrays.copyOf(booleans, size); break;
+        case INT32:   ints = ints == null ? new int[size] : Arrays.copyOf(ints, size); break;
+        case INT64:   longs = longs == null ? new long[size] : Arrays.copyOf(longs, size); break;
+        case FLOAT:   floats = floats == null ? new float[size] : Arrays.copyOf(floats, size); break;
+        case DOUBLE:  doubles = doubles == null ? new double[size] : Arrays.copyOf(doubles, size); break;
+        case BINARY:
+        case INT96:
+        case FIXED_LEN_BYTE_ARRAY:
+          binaries = binaries == null ? new Binary[size] : Arrays.copyOf(binaries, size); break;
+        default:
+          throw new IllegalArgumentException("Unsupported column type: " + type);
+      }
+    }
+
+    private int valueCapacity() {
+      switch (type) {
+        case BOOLEAN: return booleans.length;
+        case INT32:   return ints.length;
+        case INT64:   return longs.length;
+        case FLOAT:   return floats.length;
+        case DOUBLE:  return doubles.length;
+        default:      return binaries.length;
+      }
+    }
+
+    @Override
+    public void ensureSlots(int n) {
+      super.ensureSlots(n);
+      if (!repeated && valueCapacity() < n) {
+        allocate(Math.max(n, valueCapacity() * 2));
+      }
+    }
+
+    @Override
+    void reset(int usedSlots) {
+      if (binaries != null) {
+        // don't hold on to the previous batch's values
+        Arrays.fill(binaries, 0, repeated ? numValues : usedSlots, null);
+      }
+      super.reset(usedSlots);
+    }
+
+    // ---- required / optional columns: one value per slot
+
+    public void setBoolean(int row, boolean v) { booleans[row] = v; }
+    public void setInt(int row, int v)         { ints[row] = v; }
+    public void setLong(int row, long v)       { longs[row] = v; }
+    public void setFloat(int row, float v)     { floats[row] = v; }
+    public void setDouble(int row, double v)   { doubles[row] = v; }
+    public void setBinary(int row, Binary v)   { binaries[row] = v; }
+
+    // ---- repeated columns: items are appended, then the slot's list is closed
+    // (reserve() may reallocate, so it must run before the value array is read)
+
+    @Override
+    public int reserve(int n) {
+      int needed = numValues + n;
+      if (needed > valueCapacity()) {
+        allocate(Math.max(needed, valueCapacity() * 2));
+      }
+      int pos = numValues;
+      numValues = needed;
+      return pos;
+    }
+
+    public void addBoolean(boolean v) { int pos = reserve(1); booleans[pos] = v; }
+    public void addInt(int v)         { int pos = reserve(1); ints[pos] = v; }
+    public void addLong(long v)       { int pos = reserve(1); longs[pos] = v; }
+    public void addFloat(float v)     { int pos = reserve(1); floats[pos] = v; }
+    public void addDouble(double v)   { int pos = reserve(1); doubles[pos] = v; }
+    public void addBinary(Binary v)   { int pos = reserve(1); binaries[pos] = v; }
+
+    /** Copy row srcRow of a column of the same type and repetition to row */
+    void copyRow(Column src, int srcRow, int row) {
+      if (repeated) {
+        int n = src.lengths[srcRow];
+        copyValues(src, src.offsets[srcRow], reserve(n), n);
+        endList(row);
+      } else if (src.isNull(srcRow)) {
+        nulls[row] = true;
+      } else {
+        copyValues(src, srcRow, row, 1);
+      }
+    }
+
+    private void copyValues(Column src, int from, int to, int n) {
+      switch (type) {
+        case BOOLEAN: System.arraycopy(src.booleans, from, booleans, to, n); break;
+        case INT32:   System.arraycopy(src.ints, from, ints, to, n); break;
+        case INT64:   System.arraycopy(src.longs, from, longs, to, n); break;
+        case FLOAT:   System.arraycopy(src.floats, from, floats, to, n); break;
+        case DOUBLE:  System.arraycopy(src.doubles, from, doubles, to, n); break;
+        default:      System.arraycopy(src.binaries, from, binaries, to, n); break;
+      }
+    }
+
+    /** Text form of the value at the given slot, as it would appear in the generator's value sets */
+    public String valueToString(int pos) {
+      switch (type) {
+        case BOOLEAN: return Boolean.toString(booleans[pos]);
+        case INT32:   return format.format(ints[pos]);
+        case INT64:   return format.format(longs[pos]);
+        case FLOAT:   return Float.toString(floats[pos]);
+        case DOUBLE:  return Double.toString(doubles[pos]);
+        default:      return format.format(binaries[pos]);
+      }
+    }
+  }
+}
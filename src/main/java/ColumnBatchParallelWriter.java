@@ -0,0 +1,32 @@
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * ColumnBatchParquetWriter with its pages compressed on compressionThreads worker threads; writes
+ * the same pages and row groups as a ColumnBatchParquetWriter with the same settings.
+ */
+public class ColumnBatchParallelWriter extends ParallelParquetWriter<ColumnBatch> implements ColumnBatchSink {
+
+  public ColumnBatchParallelWriter(Path file, MessageType schema, CompressionCodecName codecName, int block_size,
+                                   int page_size, boolean enableDictionary, boolean validating,
+                                   WriterVersion writerVersion, Configuration conf, int compressionThreads)
+      throws IOException {
+    super(file, new ColumnBatchWriteSupport(schema), codecName, block_size, page_size, enableDictionary, validating,
+        writerVersion, conf, compressionThreads);
+  }
+
+  /** Write every row of the batch */
+  @Override
+  public void write(ColumnBatch batch) throws IOException {
+    for (int row = 0; row < batch.numRows; row++) {
+      super.write(batch);
+    }
+    WriterMemoryManager.global().reportUsage(this);
+  }
+}
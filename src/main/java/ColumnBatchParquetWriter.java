@@ -0,0 +1,69 @@
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Typed counterpart of CsvParquetWriter: takes whole ColumnBatches and writes them row by row.
+ * Registers with the global WriterMemoryManager until closed.
+ */
+public class ColumnBatchParquetWriter extends ParquetWriter<ColumnBatch> implements ColumnBatchSink {
+
+  public ColumnBatchParquetWriter(Path file, MessageType schema) throws IOException {
+    this(file, schema, false);
+  }
+
+  public ColumnBatchParquetWriter(Path file, MessageType schema, boolean enableDictionary) throws IOException {
+    this(file, schema, CompressionCodecName.UNCOMPRESSED, enableDictionary);
+  }
+
+  public ColumnBatchParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, boolean enableDictionary) throws IOException {
+    super(file, new ColumnBatchWriteSupport(schema), codecName, DEFAULT_BLOCK_SIZE, DEFAULT_PAGE_SIZE, enableDictionary, false);
+    WriterMemoryManager.global().register(this, DEFAULT_BLOCK_SIZE);
+  }
+
+  public ColumnBatchParquetWriter(Path file, MessageType schema, boolean enableDictionary,
+                                  int block_size, int page_size) throws IOException {
+    super(file, new ColumnBatchWriteSupport(schema), CompressionCodecName.UNCOMPRESSED, block_size, page_size, enableDictionary, false);
+    WriterMemoryManager.global().register(this, block_size);
+  }
+
+  public ColumnBatchParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, int block_size, int page_size,
+                                  boolean enableDictionary, boolean validating, WriterVersion writerVersion) throws IOException {
+    super(file, new ColumnBatchWriteSupport(schema), codecName, block_size, page_size, page_size,
+        enableDictionary, validating, writerVersion);
+    WriterMemoryManager.global().register(this, block_size);
+  }
+
+  public ColumnBatchParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, int block_size, int page_size,
+                                  boolean enableDictionary, boolean validating, WriterVersion writerVersion,
+                                  Configuration conf) throws IOException {
+    super(file, new ColumnBatchWriteSupport(schema), codecName, block_size, page_size, page_size,
+        enableDictionary, validating, writerVersion, conf);
+    WriterMemoryManager.global().register(this, block_size);
+  }
+
+  /** Write every row of the batch */
+  @Override
+  public void write(ColumnBatch batch) throws IOException {
+    for (int row = 0; row < batch.numRows; row++) {
+      super.write(batch);
+    }
+    WriterMemoryManager.global().reportUsage(this);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      WriterMemoryManager.global().unregister(this);
+    }
+  }
+}
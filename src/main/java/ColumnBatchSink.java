@@ -0,0 +1,12 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/** Where a test case's ColumnBatches go: a ColumnBatchParquetWriter or a ColumnBatchParallelWriter */
+public interface ColumnBatchSink extends Closeable {
+
+  /** Write every row of the batch */
+  void write(ColumnBatch batch) throws IOException;
+
+  /** Bytes written plus buffered so far, for progress reports */
+  long getDataSize();
+}
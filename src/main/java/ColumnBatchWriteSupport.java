@@ -0,0 +1,192 @@
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.hadoop.conf.Configuration;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Writes the rows of a ColumnBatch straight from its primitive arrays, without going through a
+ * String representation. ParquetWriter counts a record per write(), so every call writes the next
+ * row of the batch: a batch takes exactly getNumRows() calls, and a call with another batch, or
+ * the same batch refilled (or rewound), before that fails, as does one more call.
+ *
+ * The schema is compiled once into a shredding plan, a tree of FieldWriters that mirrors the
+ * batch's fields, so writing a record walks the plan and the batch side by side and never looks
+ * at the schema.
+ */
+public class ColumnBatchWriteSupport extends WriteSupport<ColumnBatch> {
+  MessageType schema;
+  RecordConsumer recordConsumer;
+  FieldWriter[] writers;
+
+  private ColumnBatch batch; // being written, null before the first row
+  private int batchGeneration;
+  private int batchRows;
+  private int nextRow;
+
+  public ColumnBatchWriteSupport(MessageType schema) {
+    this.schema = schema;
+    this.writers = compile(schema, schema, new String[0]);
+  }
+
+  @Override
+  public WriteContext init(Configuration config) {
+    return new WriteContext(schema, new HashMap<String, String>());
+  }
+
+  @Override
+  public void prepareForWrite(RecordConsumer r) {
+    recordConsumer = r;
+  }
+
+  /** Write the next row of the batch */
+  @Override
+  public void write(ColumnBatch b) {
+    if (b != batch || b.generation != batchGeneration) {
+      if (batch != null && nextRow != batchRows) {
+        throw new ParquetEncodingException("Next batch after " + nextRow + " of the " + batchRows +
+            " rows of the last one");
+      }
+      if (b.fields.length != writers.length) {
+        throw new ParquetEncodingException("Invalid input data. Expecting " +
+            writers.length + " fields. Batch had " + b.fields.length + " fields");
+      }
+      batch = b;
+      batchGeneration = b.generation;
+      batchRows = b.numRows;
+      nextRow = 0;
+    }
+    if (nextRow == batchRows) {
+      throw new ParquetEncodingException("All " + batchRows + " rows of the batch are written already");
+    }
+
+    recordConsumer.startMessage();
+    writeFields(writers, b.fields, nextRow++);
+    recordConsumer.endMessage();
+  }
+
+  // the fields of one group instance (or of the record), each at the given slot
+  private void writeFields(FieldWriter[] ws, ColumnBatch.Node[] nodes, int slot) {
+    for (int i = 0; i < ws.length; ++i) {
+      ColumnBatch.Node n = nodes[i];
+      FieldWriter w = ws[i];
+      if (!n.repeated) {
+        if (!n.isNull(slot)) {
+          recordConsumer.startField(w.name, w.index);
+          w.add(n, slot);
+          recordConsumer.endField(w.name, w.index);
+        }
+      } else {
+        // an empty list is written as a missing field
+        int len = n.lengths[slot];
+        if (len > 0) {
+          recordConsumer.startField(w.name, w.index);
+          for (int pos = n.offsets[slot], end = pos + len; pos < end; pos++) {
+            w.add(n, pos);
+          }
+          recordConsumer.endField(w.name, w.index);
+        }
+      }
+    }
+  }
+
+  private FieldWriter[] compile(MessageType schema, GroupType group, String[] path) {
+    FieldWriter[] compiled = new FieldWriter[group.getFieldCount()];
+    for (int i = 0; i < compiled.length; ++i) {
+      String name = group.getFieldName(i);
+      String[] fieldPath = Arrays.copyOf(path, path.length + 1);
+      fieldPath[path.length] = name;
+      if (!group.getType(i).isPrimitive()) {
+        final FieldWriter[] children = compile(schema, group.getType(i).asGroupType(), fieldPath);
+        compiled[i] = new FieldWriter(name, i) {
+          @Override
+          void add(ColumnBatch.Node n, int pos) {
+            recordConsumer.startGroup();
+            writeFields(children, ((ColumnBatch.Group) n).children, pos);
+            recordConsumer.endGroup();
+          }
+        };
+        continue;
+      }
+      ColumnDescriptor cd = schema.getColumnDescription(fieldPath);
+
+      switch (cd.getType()) {
+        case BOOLEAN:
+          compiled[i] = new FieldWriter(name, i) {
+            @Override
+            void add(ColumnBatch.Node n, int pos) {
+              recordConsumer.addBoolean(((ColumnBatch.Column) n).booleans[pos]);
+            }
+          };
+          break;
+        case FLOAT:
+          compiled[i] = new FieldWriter(name, i) {
+            @Override
+            void add(ColumnBatch.Node n, int pos) {
+              recordConsumer.addFloat(((ColumnBatch.Column) n).floats[pos]);
+            }
+          };
+          break;
+        case DOUBLE:
+          compiled[i] = new FieldWriter(name, i) {
+            @Override
+            void add(ColumnBatch.Node n, int pos) {
+              recordConsumer.addDouble(((ColumnBatch.Column) n).doubles[pos]);
+            }
+          };
+          break;
+        case INT32:
+          compiled[i] = new FieldWriter(name, i) {
+            @Override
+            void add(ColumnBatch.Node n, int pos) {
+              recordConsumer.addInteger(((ColumnBatch.Column) n).ints[pos]);
+            }
+          };
+          break;
+        case INT64:
+          compiled[i] = new FieldWriter(name, i) {
+            @Override
+            void add(ColumnBatch.Node n, int pos) {
+              recordConsumer.addLong(((ColumnBatch.Column) n).longs[pos]);
+            }
+          };
+          break;
+        case BINARY:
+        case INT96:
+        case FIXED_LEN_BYTE_ARRAY:
+          compiled[i] = new FieldWriter(name, i) {
+            @Override
+            void add(ColumnBatch.Node n, int pos) {
+              recordConsumer.addBinary(((ColumnBatch.Column) n).binaries[pos]);
+            }
+          };
+          break;
+        default:
+          throw new ParquetEncodingException(
+                  "Unsupported column type: " + cd.getType());
+      }
+    }
+    return compiled;
+  }
+
+  /** Writes the values of one column, with its field name and index resolved up front */
+  abstract static class FieldWriter {
+    final String name;
+    final int index;
+
+    FieldWriter(String name, int index) {
+      this.name = name;
+      this.index = index;
+    }
+
+    /** Add the value (or group) at position pos of field n to the current field */
+    abstract void add(ColumnBatch.Node n, int pos);
+  }
+}
@@ -4,12 +4,16 @@ import java.util.List;
 
 import org.apache.hadoop.fs.Path;
 
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
 import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.hadoop.api.WriteSupport;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.apache.parquet.schema.MessageType;
 
 public class CsvParquetWriter extends ParquetWriter<List<String>> {
+  private static final int USAGE_REPORT_ROWS = 1000;
+
+  private long rows;
 
   public CsvParquetWriter(Path file, MessageType schema) throws IOException {
     this(file, schema, false);
@@ -21,10 +25,37 @@ public class CsvParquetWriter extends ParquetWriter<List<String>> {
 
   public CsvParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, boolean enableDictionary) throws IOException {
     super(file, (WriteSupport<List<String>>) new CsvWriteSupport(schema), codecName, DEFAULT_BLOCK_SIZE, DEFAULT_PAGE_SIZE, enableDictionary, false);
+    WriterMemoryManager.global().register(this, DEFAULT_BLOCK_SIZE);
   }
 
   public CsvParquetWriter(Path file, MessageType schema, boolean enableDictionary,
                           int block_size, int page_size) throws IOException {
     super(file, (WriteSupport<List<String>>) new CsvWriteSupport(schema), CompressionCodecName.UNCOMPRESSED, block_size, page_size, enableDictionary, false);
+    WriterMemoryManager.global().register(this, block_size);
+  }
+
+  public CsvParquetWriter(Path file, MessageType schema, CompressionCodecName codecName, int block_size, int page_size,
+                          boolean enableDictionary, boolean validating, WriterVersion writerVersion) throws IOException {
+    super(file, (WriteSupport<List<String>>) new CsvWriteSupport(schema), codecName, block_size, page_size, page_size,
+        enableDictionary, validating, writerVersion);
+    WriterMemoryManager.global().register(this, block_size);
+  }
+
+  /** Write one row; the buffered size is reported to the memory manager every USAGE_REPORT_ROWS rows */
+  @Override
+  public void write(List<String> row) throws IOException {
+    super.write(row);
+    if (++rows % USAGE_REPORT_ROWS == 0) {
+      WriterMemoryManager.global().reportUsage(this);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      WriterMemoryManager.global().unregister(this);
+    }
   }
 }
@@ -1,4 +1,5 @@
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -10,17 +11,20 @@ import org.apache.parquet.io.ParquetEncodingException;
 import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.io.api.RecordConsumer;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
 import org.apache.parquet.schema.Type;
 
 public class CsvWriteSupport extends WriteSupport<List<String>> {
   MessageType schema;
   RecordConsumer recordConsumer;
   List<ColumnDescriptor> cols;
+  FieldWriter[] writers;
 
-  // TODO: support specifying encodings and compression
+  // compression, dictionary encoding and writer version are set on the writer (see CsvParquetWriter)
   public CsvWriteSupport(MessageType schema) {
     this.schema = schema;
     this.cols = schema.getColumns();
+    this.writers = compile(schema, cols);
   }
 
   @Override
@@ -39,63 +43,323 @@ public class CsvWriteSupport extends WriteSupport<List<String>> {
 
   @Override
   public void write(List<String> values) {
-    if (values.size() != cols.size()) {
+    if (values.size() != writers.length) {
       throw new ParquetEncodingException("Invalid input data. Expecting " +
           cols.size() + " columns. Input had " + values.size() + " columns (" + cols + ") : " + values);
     }
 
     recordConsumer.startMessage();
-    for (int i = 0; i < cols.size(); ++i) {
+    for (int i = 0; i < writers.length; ++i) {
       String val = values.get(i);
       // val.length() == 0 indicates a NULL value.
       if (val.length() > 0) {
-        recordConsumer.startField(cols.get(i).getPath()[0], i);
+        FieldWriter w = writers[i];
+        recordConsumer.startField(w.name, w.index);
 
-        // assumption: schema fields' and columns' indices match
-        // (idk why they wouldn't, but haven't found a way to verify that)
-        if (schema.getType(i).getRepetition() != Type.Repetition.REPEATED) {
-          addPrimitiveValue(val, cols.get(i));
+        if (!w.repeated) {
+          w.add(val, 0, val.length());
         } else {
-          // parse each item in a list and add it
-          String[] items = val.split("\\|");
-          for (String item: items){
-            addPrimitiveValue(item, cols.get(i));
+          // add each item of a '|'-separated list; like String.split,
+          // trailing empty items are dropped
+          int end = val.length();
+          while (end > 0 && val.charAt(end - 1) == '|') {
+            end--;
+          }
+          int start = 0;
+          while (start < end) {
+            int sep = val.indexOf('|', start);
+            if (sep < 0 || sep > end) {
+              sep = end;
+            }
+            w.add(val, start, sep);
+            start = sep + 1;
           }
         }
 
-        recordConsumer.endField(cols.get(i).getPath()[0], i);
+        recordConsumer.endField(w.name, w.index);
       }
     }
     recordConsumer.endMessage();
   }
 
-  private Binary stringToBinary(Object value) {
-    return Binary.fromString(value.toString());
+  /**
+   * Resolve field names, indices, repetition and value parsers once per schema,
+   * so that write() does no per-value lookups.
+   */
+  private FieldWriter[] compile(MessageType schema, List<ColumnDescriptor> cols) {
+    // a CSV record has one string per column, so the schema must be flat: one primitive column per field
+    if (cols.size() != schema.getFieldCount()) {
+      throw new ParquetEncodingException("CsvWriteSupport needs a flat schema, got " +
+          schema.getFieldCount() + " fields with " + cols.size() + " columns");
+    }
+    FieldWriter[] compiled = new FieldWriter[cols.size()];
+    for (int i = 0; i < cols.size(); ++i) {
+      ColumnDescriptor cd = cols.get(i);
+      String name = cd.getPath()[0];
+      if (cd.getPath().length != 1 || !name.equals(schema.getFieldName(i))) {
+        throw new ParquetEncodingException("CsvWriteSupport needs a flat schema, field " +
+            schema.getFieldName(i) + " has column " + Arrays.toString(cd.getPath()));
+      }
+      boolean repeated = schema.getType(i).getRepetition() == Type.Repetition.REPEATED;
+      ValueFormat format = ValueFormat.of(schema.getType(i).asPrimitiveType());
+      if (!format.isPlain()) {
+        compiled[i] = logicalWriter(name, i, repeated, cd.getType(), format);
+        continue;
+      }
+
+      switch (cd.getType()) {
+        case BOOLEAN:
+          compiled[i] = new FieldWriter(name, i, repeated) {
+            @Override
+            void add(String s, int start, int end) {
+              // same as Boolean.parseBoolean
+              recordConsumer.addBoolean(end - start == 4 && s.regionMatches(true, start, "true", 0, 4));
+            }
+          };
+          break;
+        case FLOAT:
+          compiled[i] = new FieldWriter(name, i, repeated) {
+            @Override
+            void add(String s, int start, int end) {
+              double v = parseFloating(s, start, end, true);
+              recordConsumer.addFloat(v == v ? (float) v : Float.parseFloat(range(s, start, end)));
+            }
+          };
+          break;
+        case DOUBLE:
+          compiled[i] = new FieldWriter(name, i, repeated) {
+            @Override
+            void add(String s, int start, int end) {
+              double v = parseFloating(s, start, end, false);
+              recordConsumer.addDouble(v == v ? v : Double.parseDouble(range(s, start, end)));
+            }
+          };
+          break;
+        case INT32:
+          compiled[i] = new FieldWriter(name, i, repeated) {
+            @Override
+            void add(String s, int start, int end) {
+              long v = parseDecimal(s, start, end, 9);
+              recordConsumer.addInteger(v != NOT_PARSED ? (int) v : Integer.parseInt(range(s, start, end)));
+            }
+          };
+          break;
+        case INT64:
+          compiled[i] = new FieldWriter(name, i, repeated) {
+            @Override
+            void add(String s, int start, int end) {
+              long v = parseDecimal(s, start, end, 18);
+              recordConsumer.addLong(v != NOT_PARSED ? v : Long.parseLong(range(s, start, end)));
+            }
+          };
+          break;
+        case BINARY:
+        case FIXED_LEN_BYTE_ARRAY:
+          compiled[i] = new FieldWriter(name, i, repeated) {
+            private byte[] buffer = new byte[64];
+
+            @Override
+            void add(String s, int start, int end) {
+              // ASCII is its own UTF-8 encoding; the column writers copy what they keep of a reused array
+              if (buffer.length < end - start) {
+                buffer = new byte[Math.max(end - start, 2 * buffer.length)];
+              }
+              for (int j = start; j < end; j++) {
+                char c = s.charAt(j);
+                if (c >= 0x80) {
+                  recordConsumer.addBinary(stringToBinary(range(s, start, end)));
+                  return;
+                }
+                buffer[j - start] = (byte) c;
+              }
+              recordConsumer.addBinary(Binary.fromReusedByteArray(buffer, 0, end - start));
+            }
+          };
+          break;
+        default:
+          throw new ParquetEncodingException(
+                  "Unsupported column type: " + cd.getType());
+      }
+    }
+    return compiled;
   }
 
-  private void addPrimitiveValue(String val, ColumnDescriptor cd){
-    switch (cd.getType()) {
-      case BOOLEAN:
-        recordConsumer.addBoolean(Boolean.parseBoolean(val));
-        break;
-      case FLOAT:
-        recordConsumer.addFloat(Float.parseFloat(val));
-        break;
-      case DOUBLE:
-        recordConsumer.addDouble(Double.parseDouble(val));
-        break;
+  // dates, timestamps and decimals are written from their text form (see ValueFormat)
+  private FieldWriter logicalWriter(String name, int index, boolean repeated, PrimitiveTypeName type,
+                                    final ValueFormat format) {
+    switch (type) {
       case INT32:
-        recordConsumer.addInteger(Integer.parseInt(val));
-        break;
+        return new FieldWriter(name, index, repeated) {
+          @Override
+          void add(String s, int start, int end) {
+            recordConsumer.addInteger(format.parseInt(range(s, start, end)));
+          }
+        };
       case INT64:
-        recordConsumer.addLong(Long.parseLong(val));
-        break;
-      case BINARY:
-        recordConsumer.addBinary(stringToBinary(val));
-        break;
+        return new FieldWriter(name, index, repeated) {
+          @Override
+          void add(String s, int start, int end) {
+            recordConsumer.addLong(format.parseLong(range(s, start, end)));
+          }
+        };
+      case INT96:
+      case FIXED_LEN_BYTE_ARRAY:
+        return new FieldWriter(name, index, repeated) {
+          @Override
+          void add(String s, int start, int end) {
+            recordConsumer.addBinary(format.parseBinary(range(s, start, end)));
+          }
+        };
       default:
-        throw new ParquetEncodingException(
-                "Unsupported column type: " + cd.getType());
+        throw new ParquetEncodingException("Unsupported column type for " + format.kind + ": " + type);
+    }
+  }
+
+  /** Writes the values of one column, with its field name and index resolved up front */
+  abstract static class FieldWriter {
+    final String name;
+    final int index;
+    final boolean repeated;
+
+    FieldWriter(String name, int index, boolean repeated) {
+      this.name = name;
+      this.index = index;
+      this.repeated = repeated;
+    }
+
+    /** Parse s[start, end) and add it to the current field */
+    abstract void add(String s, int start, int end);
+  }
+
+  private static final long NOT_PARSED = Long.MIN_VALUE;
+
+  /**
+   * Parse a plain decimal integer of at most maxDigits digits without allocating.
+   * Returns NOT_PARSED for anything else, so the caller can fall back to the JDK parser
+   * (which also produces the usual NumberFormatException).
+   */
+  private static long parseDecimal(String s, int start, int end, int maxDigits) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      i++;
+    }
+    if (i == end || end - i > maxDigits) {
+      return NOT_PARSED;
     }
+    long v = 0;
+    for (; i < end; i++) {
+      int d = s.charAt(i) - '0';
+      if (d < 0 || d > 9) {
+        return NOT_PARSED;
+      }
+      v = v * 10 + d;
+    }
+    return negative ? -v : v;
+  }
+
+  // powers of ten that are exact in a double, and in a float up to 1e10
+  private static final double[] DOUBLE_POWERS_OF_TEN = new double[23];
+  private static final float[] FLOAT_POWERS_OF_TEN = new float[11];
+  static {
+    DOUBLE_POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; i++) {
+      DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10;
+    }
+    FLOAT_POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < FLOAT_POWERS_OF_TEN.length; i++) {
+      FLOAT_POWERS_OF_TEN[i] = FLOAT_POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  /**
+   * Parse a plain decimal number ([sign] digits [. digits] [e [sign] digits]) without allocating, if
+   * its digits and its power of ten are both exact in a double (a float if single), so that the one
+   * rounding of their product or quotient gives what Double.parseDouble (Float.parseFloat) does.
+   * Returns NaN for anything else, so the caller can fall back to the JDK parser.
+   */
+  static double parseFloating(String s, int start, int end, boolean single) {
+    int maxDigits = single ? 7 : 15;
+    int maxPower = single ? FLOAT_POWERS_OF_TEN.length - 1 : DOUBLE_POWERS_OF_TEN.length - 1;
+    int i = start;
+    boolean negative = false;
+    if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int power = 0;
+    boolean anyDigit = false;
+    boolean point = false;
+    for (; i < end; i++) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        anyDigit = true;
+        if (mantissa != 0 || c != '0') {
+          if (++digits > maxDigits) {
+            return Double.NaN;
+          }
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        if (point) {
+          power--;
+        }
+      } else if (c == '.' && !point) {
+        point = true;
+      } else {
+        break;
+      }
+    }
+    if (!anyDigit) {
+      return Double.NaN;
+    }
+    if (i < end) {
+      if (s.charAt(i) != 'e' && s.charAt(i) != 'E') {
+        return Double.NaN; // e.g. a type suffix, for the JDK parser to deal with
+      }
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+        negativeExponent = s.charAt(i) == '-';
+        i++;
+      }
+      if (i == end || end - i > 3) {
+        return Double.NaN;
+      }
+      int exponent = 0;
+      for (; i < end; i++) {
+        int d = s.charAt(i) - '0';
+        if (d < 0 || d > 9) {
+          return Double.NaN;
+        }
+        exponent = exponent * 10 + d;
+      }
+      power += negativeExponent ? -exponent : exponent;
+    }
+    if (mantissa == 0) {
+      return negative ? -0.0 : 0.0;
+    }
+    if (power < -maxPower || power > maxPower) {
+      return Double.NaN;
+    }
+    double v;
+    if (single) {
+      float m = mantissa;
+      v = power >= 0 ? m * FLOAT_POWERS_OF_TEN[power] : m / FLOAT_POWERS_OF_TEN[-power];
+    } else {
+      double m = mantissa;
+      v = power >= 0 ? m * DOUBLE_POWERS_OF_TEN[power] : m / DOUBLE_POWERS_OF_TEN[-power];
+    }
+    return negative ? -v : v;
+  }
+
+  private static String range(String s, int start, int end) {
+    return (start == 0 && end == s.length()) ? s : s.substring(start, end);
+  }
+
+  private Binary stringToBinary(Object value) {
+    return Binary.fromString(value.toString());
   }
 }
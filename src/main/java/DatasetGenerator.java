@@ -0,0 +1,588 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.Footer;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Writes one test case as a Hive-style partitioned dataset instead of a single file: a directory
+ * named like the case, with one directory level per partition column ("var_0=42/var_4=true/")
+ * holding the records whose partition columns have those values, in part-NNNNN.parquet files.
+ * Readers take the partition columns from the path, so the data files leave them out; the .json
+ * sidecar holds the full records of all files, in file number order. A null value goes to the
+ * DEFAULT_PARTITION directory.
+ *
+ * Each partition gets a share of the layout's files in proportion to its records (at least one),
+ * and hands its records to them in runs, sized equally or Zipf-like by the layout's sizeSkew.
+ * The calling thread generates the records and routes them into small per-file batches; a pool of
+ * writer threads writes the files, each file on a fixed thread so that its batches stay in order.
+ * At most one file per partition is open at a time, and all open writers share the
+ * WriterMemoryManager's pool. Finally the footers of all files are merged into the _metadata and
+ * _common_metadata summary files, for readers that plan their splits from those.
+ */
+class DatasetGenerator {
+    static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+    static final int MAX_PARTITIONS = 4096;
+    private static final String FILE_PREFIX = "part-";
+    private static final String JSON_PART_SUFFIX = ".part-";
+    private static final int MIN_CHUNK_ROWS = 64;
+    private static final int QUEUE_SIZE = 8;
+
+    // what Hive escapes in partition directory names
+    private static final String ESCAPED_CHARS = "\"#%'*/:=?\\\u007f{[]^";
+
+    private static class Partition{
+        final String dir;   // relative path, "var_0=42/var_4=true"
+        long records;
+        final ArrayList<DataFile> files = new ArrayList<DataFile>();
+        int current;        // file that gets the next records
+
+        Partition(String dir){
+            this.dir = dir;
+        }
+    }
+
+    private static class DataFile{
+        final int number;
+        final File parquet;
+        final File jsonPart;
+        final long records;
+
+        // generator thread
+        long routed;
+        ColumnBatch pending;
+
+        // writer thread
+        ColumnBatchSink parquetWriter;
+        JsonSidecarWriter jsonWriter;
+
+        DataFile(int number, File parquet, File jsonPart, long records){
+            this.number = number;
+            this.parquet = parquet;
+            this.jsonPart = jsonPart;
+            this.records = records;
+        }
+    }
+
+    // records for one file; the last chunk of a file closes it
+    private static class Chunk{
+        final DataFile file;
+        final ColumnBatch batch;
+        final boolean last;
+
+        Chunk(DataFile file, ColumnBatch batch, boolean last){
+            this.file = file;
+            this.batch = batch;
+            this.last = last;
+        }
+    }
+    private static final Chunk END = new Chunk(null, null, false);
+
+    private final int numThreads;
+    private volatile Throwable failure;
+
+    DatasetGenerator(int numThreads){
+        this.numThreads = numThreads;
+    }
+
+    void generate(TestFileGenerator.TestFileName tfn, MessageType schema, final TestFileGenerator.TestOptions options,
+                  ArrayList<TestFileGenerator.VarProperties> propList, final CaseMetrics metrics) throws IOException {
+        int[] partitionColumns = options.dataset.partitionColumns;
+        for (int col : partitionColumns) {
+            if (propList.get(col).repetition.equals("repeated")) {
+                throw new IllegalArgumentException("Can't partition by repeated column " + schema.getFieldName(col));
+            }
+        }
+        final int[] dataColumns = otherColumns(schema.getFieldCount(), partitionColumns);
+        final MessageType dataSchema = select(schema, dataColumns);
+        File root = new File(tfn.getNameDataset());
+        if (options.numRecords == 0) {
+            throw new IllegalArgumentException("A dataset needs at least one record");
+        }
+
+        long t0 = System.nanoTime();
+        TreeMap<String, Partition> partitions = countPartitions(schema, propList, partitionColumns,
+                options.numRecords);
+        ArrayList<DataFile> files = assignFiles(partitions, options.dataset, options.numRecords, root,
+                tfn.getNameJSON());
+        metrics.addStageTimes(System.nanoTime() - t0, 0, 0);
+
+        // writers, each with its own queue
+        ArrayList<BlockingQueue<Chunk>> queues = new ArrayList<BlockingQueue<Chunk>>();
+        ArrayList<Thread> writers = new ArrayList<Thread>();
+        final MessageType fullSchema = schema;
+        for (int t = 0; t < Math.min(numThreads, files.size()); t++) {
+            final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+            queues.add(queue);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain(queue, fullSchema, dataSchema, dataColumns, options, metrics);
+                }
+            }, Thread.currentThread().getName() + "-dataset-" + t);
+            writer.start();
+            writers.add(writer);
+        }
+        try {
+            route(schema, propList, partitionColumns, partitions, options.numRecords, queues, metrics);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            // the writers own their files until they are done
+            for (BlockingQueue<Chunk> queue : queues) {
+                putUninterruptibly(queue, END);
+            }
+            for (Thread writer : writers) {
+                joinQuietly(writer);
+            }
+            for (DataFile f : files) {
+                closeQuietly(f);
+            }
+        }
+        ArrayList<File> jsonParts = new ArrayList<File>(files.size());
+        for (DataFile f : files) {
+            jsonParts.add(f.jsonPart);
+        }
+        if (failure != null) {
+            deleteAll(jsonParts);
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            throw new IOException("Failed to write dataset " + root + ": " + failure, failure);
+        }
+
+        long t1 = System.nanoTime();
+        try {
+            ShardedGenerator.concatenate(jsonParts, new File(tfn.getNameJSON()));
+        } finally {
+            deleteAll(jsonParts);
+        }
+        long t2 = System.nanoTime();
+        writeSummary(root, files, options);
+        metrics.addStageTimes(0, System.nanoTime() - t2, t2 - t1);
+    }
+
+    // number of records per partition, in directory order
+    private static TreeMap<String, Partition> countPartitions(MessageType schema,
+                                                              ArrayList<TestFileGenerator.VarProperties> propList,
+                                                              int[] partitionColumns, long numRecords){
+        // only the partition columns are generated
+        ArrayList<TestFileGenerator.VarProperties> keyProps =
+                new ArrayList<TestFileGenerator.VarProperties>(partitionColumns.length);
+        for (int col : partitionColumns) {
+            keyProps.add(propList.get(col).copyAt(0));
+        }
+        MessageType keySchema = select(schema, partitionColumns);
+        int[] keyColumns = new int[partitionColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyColumns[i] = i;
+        }
+
+        HashMap<String, Partition> byDir = new HashMap<String, Partition>();
+        int batchRows = TestFileGenerator.batchRows(keyProps.size());
+        ColumnBatch batch = new ColumnBatch(keySchema, batchRows);
+        StringBuilder sb = new StringBuilder();
+        for (long j = 0; j < numRecords; j += batch.getNumRows()) {
+            TestFileGenerator.fillBatch(batch, keyProps, (int) Math.min(batchRows, numRecords - j));
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                String dir = partitionDir(sb, keySchema, batch, keyColumns, row);
+                Partition p = byDir.get(dir);
+                if (p == null) {
+                    if (byDir.size() == MAX_PARTITIONS) {
+                        throw new IllegalArgumentException("More than " + MAX_PARTITIONS + " partitions");
+                    }
+                    p = new Partition(dir);
+                    byDir.put(dir, p);
+                }
+                p.records++;
+            }
+        }
+        return new TreeMap<String, Partition>(byDir);
+    }
+
+    // files per partition in proportion to its records, then each file's share of the partition's records
+    private static ArrayList<DataFile> assignFiles(TreeMap<String, Partition> partitions,
+                                                   TestFileGenerator.DatasetLayout layout, long numRecords,
+                                                   File root, String jsonName){
+        ArrayList<Partition> list = new ArrayList<Partition>(partitions.values());
+        int numFiles = Math.max(layout.numFiles, list.size());
+        int[] counts = new int[list.size()];
+        double[] remainders = new double[list.size()];
+        int assigned = 0;
+        for (int i = 0; i < list.size(); i++) {
+            double exact = (double) numFiles * list.get(i).records / numRecords;
+            counts[i] = (int) Math.max(1, Math.min(list.get(i).records, (long) exact));
+            remainders[i] = exact - Math.floor(exact);
+            assigned += counts[i];
+        }
+        // largest remainders first; a partition can't have more files than records
+        while (assigned < numFiles) {
+            int best = -1;
+            for (int i = 0; i < list.size(); i++) {
+                if (counts[i] < list.get(i).records && (best < 0 || remainders[i] > remainders[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            counts[best]++;
+            remainders[best] -= 1;
+            assigned++;
+        }
+
+        ArrayList<DataFile> files = new ArrayList<DataFile>(assigned);
+        for (int i = 0; i < list.size(); i++) {
+            Partition p = list.get(i);
+            long[] sizes = fileSizes(p.records, counts[i], layout.sizeSkew);
+            for (long size : sizes) {
+                int number = files.size();
+                String name = String.format("%s%05d", FILE_PREFIX, number);
+                DataFile f = new DataFile(number, new File(new File(root, p.dir), name + ".parquet"),
+                        new File(String.format("%s%s%05d", jsonName, JSON_PART_SUFFIX, number)), size);
+                p.files.add(f);
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    // records of each of numFiles files: the i-th gets a share of 1/(i+1)^skew, and at least one record
+    static long[] fileSizes(long records, int numFiles, double skew){
+        double[] cumulative = new double[numFiles];
+        double total = 0;
+        for (int i = 0; i < numFiles; i++) {
+            total += Math.pow(i + 1, -skew);
+            cumulative[i] = total;
+        }
+        long[] sizes = new long[numFiles];
+        long end = 0;
+        for (int i = 0; i < numFiles; i++) {
+            long next = i == numFiles - 1 ? records : Math.round(records * cumulative[i] / total);
+            next = Math.max(end + 1, Math.min(records - (numFiles - 1 - i), next));
+            sizes[i] = next - end;
+            end = next;
+        }
+        return sizes;
+    }
+
+    // generate all records and hand them to the files of their partitions
+    private void route(MessageType schema, ArrayList<TestFileGenerator.VarProperties> propList,
+                       int[] partitionColumns, TreeMap<String, Partition> partitions, long numRecords,
+                       ArrayList<BlockingQueue<Chunk>> queues, CaseMetrics metrics) throws InterruptedException {
+        ArrayList<TestFileGenerator.VarProperties> props =
+                new ArrayList<TestFileGenerator.VarProperties>(propList.size());
+        for (TestFileGenerator.VarProperties vp : propList) {
+            props.add(vp.copyAt(0));
+        }
+        HashMap<String, Partition> byDir = new HashMap<String, Partition>(partitions);
+        // one pending batch per open file, so they get smaller with more partitions
+        int batchRows = TestFileGenerator.batchRows(propList.size());
+        int chunkRows = (int) Math.max(MIN_CHUNK_ROWS,
+                Math.min(batchRows, TestFileGenerator.BATCH_VALUES / ((long) propList.size() * partitions.size())));
+
+        ColumnBatch batch = new ColumnBatch(schema, batchRows);
+        StringBuilder sb = new StringBuilder();
+        long generateNanos = 0;
+        for (long j = 0; j < numRecords && failure == null; j += batch.getNumRows()) {
+            long t0 = System.nanoTime();
+            TestFileGenerator.fillBatch(batch, props, (int) Math.min(batchRows, numRecords - j));
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                Partition p = byDir.get(partitionDir(sb, schema, batch, partitionColumns, row));
+                DataFile f = p.files.get(p.current);
+                if (f.pending == null) {
+                    f.pending = new ColumnBatch(schema, (int) Math.min(chunkRows, f.records - f.routed));
+                }
+                f.pending.appendRow(batch, row);
+                f.routed++;
+                boolean last = f.routed == f.records;
+                if (last || f.pending.getNumRows() == f.pending.capacity) {
+                    long t1 = System.nanoTime();
+                    queues.get(f.number % queues.size()).put(new Chunk(f, f.pending, last));
+                    t0 += System.nanoTime() - t1; // waiting for a writer isn't generating
+                    f.pending = null;
+                    if (last) {
+                        p.current++;
+                    }
+                }
+            }
+            generateNanos += System.nanoTime() - t0;
+        }
+        metrics.addStageTimes(generateNanos, 0, 0);
+    }
+
+    private void drain(BlockingQueue<Chunk> queue, MessageType schema, MessageType dataSchema, int[] dataColumns,
+                       TestFileGenerator.TestOptions options, CaseMetrics metrics){
+        long parquetNanos = 0, jsonNanos = 0;
+        try {
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk == END) {
+                    break;
+                }
+                // after a failure keep draining, so the generator is never stuck on a full queue
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    DataFile f = chunk.file;
+                    if (f.parquetWriter == null) {
+                        File dir = f.parquet.getParentFile();
+                        if (!dir.isDirectory() && !dir.mkdirs()) {
+                            throw new IOException("Can't create directory " + dir);
+                        }
+                        f.parquetWriter = TestFileGenerator.openParquetWriter(f.parquet, dataSchema, options);
+                        f.jsonWriter = new JsonSidecarWriter(f.jsonPart, schema, options.compactJson);
+                    }
+                    long t0 = System.nanoTime();
+                    f.parquetWriter.write(chunk.batch.select(dataColumns));
+                    long t1 = System.nanoTime();
+                    f.jsonWriter.write(chunk.batch);
+                    long t2 = System.nanoTime();
+                    if (chunk.last) {
+                        f.jsonWriter.close();
+                        f.jsonWriter = null;
+                        long t3 = System.nanoTime();
+                        f.parquetWriter.close();
+                        f.parquetWriter = null;
+                        jsonNanos += t3 - t2;
+                        t2 = t3;
+                        parquetNanos += System.nanoTime() - t3;
+                    }
+                    parquetNanos += t1 - t0;
+                    jsonNanos += t2 - t1;
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+        } finally {
+            metrics.addStageTimes(0, parquetNanos, jsonNanos);
+        }
+    }
+
+    // _metadata and _common_metadata from the footers of all files
+    private static void writeSummary(File root, ArrayList<DataFile> files, TestFileGenerator.TestOptions options)
+            throws IOException {
+        Configuration conf = LocalChannelFileSystem.sharedConfiguration();
+        ArrayList<Footer> footers = new ArrayList<Footer>(files.size());
+        for (DataFile f : files) {
+            Path path = TestFileGenerator.outputPath(f.parquet, options);
+            footers.add(new Footer(path, ParquetFileReader.readFooter(conf, path, ParquetMetadataConverter.NO_FILTER)));
+        }
+        ParquetFileWriter.writeMetadataFile(conf, TestFileGenerator.outputPath(root, options), footers);
+    }
+
+    /** The data files of a dataset directory, in file number order, which is the order of the sidecar */
+    static List<File> dataFiles(File root){
+        ArrayList<File> files = new ArrayList<File>();
+        collectDataFiles(root, files);
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return files;
+    }
+
+    private static void collectDataFiles(File dir, ArrayList<File> files){
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isDirectory()) {
+                collectDataFiles(f, files);
+            } else if (f.getName().startsWith(FILE_PREFIX) && f.getName().endsWith(".parquet")) {
+                files.add(f);
+            }
+        }
+    }
+
+    /** The summary files next to the data files */
+    static List<File> summaryFiles(File root){
+        return Arrays.asList(new File(root, ParquetFileWriter.PARQUET_METADATA_FILE),
+                new File(root, ParquetFileWriter.PARQUET_COMMON_METADATA_FILE));
+    }
+
+    /** Partition column values of a data file, from its path below root; DEFAULT_PARTITION for null */
+    static Map<String, String> partitionValues(File root, File dataFile){
+        ArrayList<String> dirs = new ArrayList<String>();
+        for (File dir = dataFile.getParentFile(); dir != null && !dir.equals(root); dir = dir.getParentFile()) {
+            dirs.add(dir.getName());
+        }
+        LinkedHashMap<String, String> values = new LinkedHashMap<String, String>();
+        for (int i = dirs.size() - 1; i >= 0; i--) {
+            String dir = dirs.get(i);
+            int eq = dir.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Not a partition directory: " + dir);
+            }
+            values.put(unescape(dir.substring(0, eq)), unescape(dir.substring(eq + 1)));
+        }
+        return values;
+    }
+
+    /** Remove a dataset directory left by an earlier run */
+    static void deleteDataset(File root){
+        File[] children = root.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isDirectory()) {
+                deleteDataset(f);
+            } else {
+                f.delete();
+            }
+        }
+        root.delete();
+    }
+
+    // "var_0=42/var_4=true" for the given row
+    private static String partitionDir(StringBuilder sb, MessageType schema, ColumnBatch batch, int[] columns,
+                                       int row){
+        sb.setLength(0);
+        for (int col : columns) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            escape(sb, schema.getFieldName(col));
+            sb.append('=');
+            ColumnBatch.Column c = batch.column(col);
+            if (c.isNull(row)) {
+                sb.append(DEFAULT_PARTITION);
+            } else {
+                escape(sb, c.valueToString(row));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void escape(StringBuilder sb, String s){
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || ESCAPED_CHARS.indexOf(c) >= 0) {
+                sb.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String s){
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < s.length()) {
+                sb.append((char) Integer.parseInt(s.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int[] otherColumns(int numColumns, int[] columns){
+        boolean[] excluded = new boolean[numColumns];
+        for (int col : columns) {
+            excluded[col] = true;
+        }
+        int[] others = new int[numColumns - columns.length];
+        for (int col = 0, i = 0; col < numColumns; col++) {
+            if (!excluded[col]) {
+                others[i++] = col;
+            }
+        }
+        return others;
+    }
+
+    private static MessageType select(MessageType schema, int[] columns){
+        ArrayList<Type> fields = new ArrayList<Type>(columns.length);
+        for (int col : columns) {
+            fields.add(schema.getType(col));
+        }
+        return new MessageType(schema.getName(), fields);
+    }
+
+    private static void deleteAll(List<File> files){
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
+    // after a failure, so the writers are unregistered from the memory manager
+    private static void closeQuietly(DataFile f){
+        try {
+            if (f.jsonWriter != null) {
+                f.jsonWriter.close();
+            }
+            if (f.parquetWriter != null) {
+                f.parquetWriter.close();
+            }
+        } catch (IOException e) {
+            // the case failed already
+        }
+    }
+
+    private synchronized void fail(Throwable e){
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Chunk> queue, Chunk chunk){
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(chunk);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinQuietly(Thread t){
+        boolean interrupted = false;
+        while (true) {
+            try {
+                t.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Generates a test case as a pipeline: the calling thread produces record batches into a small
+ * ring of reusable ColumnBatches, while one thread drains them into the Parquet writer and another
+ * into the JSON sidecar. A batch goes back to the ring once both sinks are done with it, so the
+ * producer can never get more than RING_SIZE batches ahead of the slower sink.
+ */
+class GenerationPipeline {
+    static final int RING_SIZE = 4;
+
+    /** A ring entry: a batch plus the number of sinks that still have to consume it */
+    private static class Slot{
+        final ColumnBatch batch;
+        final AtomicInteger pending = new AtomicInteger();
+
+        Slot(ColumnBatch batch){
+            this.batch = batch;
+        }
+    }
+    private static final Slot END = new Slot(null);
+
+    /** Throughput and back-pressure counters of one pipeline stage */
+    static class StageStats{
+        final String name;
+        long records;
+        long busyNanos;     // time spent doing the stage's work
+        long waitNanos;     // time spent blocked on the ring
+        long depthSum;      // sum of the stage's input queue depth, sampled before each take
+        long depthSamples;
+        int maxDepth;
+
+        StageStats(String name){
+            this.name = name;
+        }
+
+        void sampleDepth(int depth){
+            depthSum += depth;
+            depthSamples++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        double recordsPerSecond(){
+            return busyNanos > 0 ? records * 1e9 / busyNanos : 0.0;
+        }
+
+        double avgDepth(){
+            return depthSamples > 0 ? (double) depthSum / depthSamples : 0.0;
+        }
+
+        /** Adds the counters of another run of the same stage, e.g. of the next file of a dataset */
+        void add(StageStats other){
+            records += other.records;
+            busyNanos += other.busyNanos;
+            waitNanos += other.waitNanos;
+            depthSum += other.depthSum;
+            depthSamples += other.depthSamples;
+            maxDepth = Math.max(maxDepth, other.maxDepth);
+        }
+    }
+
+    /** Metrics of a whole pipeline run */
+    static class Stats{
+        final StageStats produce = new StageStats("generate");
+        final StageStats parquet = new StageStats("parquet");
+        final StageStats json = new StageStats("json");
+    }
+
+    /** Consumes batches in order */
+    interface Sink{
+        void write(ColumnBatch batch) throws IOException;
+    }
+
+    private final ArrayList<TestFileGenerator.VarProperties> propList;
+    private final int batchRows;
+    private final BlockingQueue<Slot> free = new ArrayBlockingQueue<Slot>(RING_SIZE);
+    private final BlockingQueue<Slot> toParquet = new ArrayBlockingQueue<Slot>(RING_SIZE + 1);
+    private final BlockingQueue<Slot> toJson = new ArrayBlockingQueue<Slot>(RING_SIZE + 1);
+    private volatile Throwable failure;
+
+    GenerationPipeline(MessageType schema, ArrayList<TestFileGenerator.VarProperties> propList){
+        this.propList = propList;
+        this.batchRows = TestFileGenerator.batchRows(propList.size());
+        for (int i = 0; i < RING_SIZE; i++) {
+            free.add(new Slot(new ColumnBatch(schema, batchRows)));
+        }
+    }
+
+    /** Generate numRecords records into both sinks; returns when both have consumed everything */
+    Stats run(long numRecords, Sink parquetSink, Sink jsonSink) throws IOException {
+        Stats stats = new Stats();
+
+        Thread parquetThread = startConsumer("parquet-sink", toParquet, parquetSink, stats.parquet);
+        Thread jsonThread = startConsumer("json-sink", toJson, jsonSink, stats.json);
+        try {
+            produce(numRecords, stats.produce);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            // always let the consumers finish, they own the writers until then
+            toParquet.add(END);
+            toJson.add(END);
+            joinQuietly(parquetThread);
+            joinQuietly(jsonThread);
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new IOException("Pipeline failed: " + failure, failure);
+        }
+        return stats;
+    }
+
+    private void produce(long numRecords, StageStats stats) throws InterruptedException {
+        for (long j = 0; j < numRecords && failure == null; ) {
+            long t0 = System.nanoTime();
+            Slot slot = free.take();
+            long t1 = System.nanoTime();
+
+            ColumnBatch batch = slot.batch;
+            int numRows = (int) Math.min(batchRows, numRecords - j);
+            TestFileGenerator.fillBatch(batch, propList, numRows);
+            j += numRows;
+
+            slot.pending.set(2);
+            stats.sampleDepth(Math.max(toParquet.size(), toJson.size()));
+            toParquet.put(slot);
+            toJson.put(slot);
+            long t2 = System.nanoTime();
+
+            stats.records += numRows;
+            stats.waitNanos += t1 - t0;
+            stats.busyNanos += t2 - t1;
+        }
+    }
+
+    private Thread startConsumer(String name, final BlockingQueue<Slot> queue, final Sink sink,
+                                 final StageStats stats){
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        stats.sampleDepth(queue.size());
+                        long t0 = System.nanoTime();
+                        Slot slot = queue.take();
+                        long t1 = System.nanoTime();
+                        stats.waitNanos += t1 - t0;
+                        if (slot == END) {
+                            return;
+                        }
+                        // after a failure keep draining, so the producer is never stuck on a full ring
+                        if (failure == null) {
+                            try {
+                                sink.write(slot.batch);
+                                stats.records += slot.batch.getNumRows();
+                            } catch (Throwable e) {
+                                fail(e);
+                            }
+                        }
+                        if (slot.pending.decrementAndGet() == 0) {
+                            free.add(slot);
+                        }
+                        stats.busyNanos += System.nanoTime() - t1;
+                    }
+                } catch (InterruptedException e) {
+                    fail(e);
+                }
+            }
+        }, Thread.currentThread().getName() + "-" + name);
+        t.start();
+        return t;
+    }
+
+    private synchronized void fail(Throwable e){
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private static void joinQuietly(Thread t){
+        boolean interrupted = false;
+        while (true) {
+            try {
+                t.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.hadoop.fs.FileSystem;
+
+/**
+ * Keeps the generator running and serves test cases over HTTP on localhost, so a reader's test
+ * suite pays for JVM startup, class loading and Hadoop initialization once instead of on every run.
+ *
+ *   POST /generate   body: a test plan (see TestPlan); generates or reuses every case and returns
+ *                    the paths of their files
+ *   GET  /metrics    request latency and cache hit rate
+ *   POST /shutdown   stops the daemon
+ *
+ * The files live in the daemon's directory, with their TestCaseCache keys as usual. They are bounded
+ * by a disk budget: after each request, the least recently requested cases are deleted until the
+ * rest fit. The cases of the request itself are never deleted, so one big request can exceed the
+ * budget. Cases already on disk when the daemon starts are only counted once they are requested.
+ *
+ * Requests are handled one at a time; the cases of a request run on the configured threads.
+ * While the daemon runs, its URL is in ".daemon" in its directory.
+ */
+class GeneratorDaemon {
+    static final String URL_FILE = ".daemon";
+    private static final int LATENCY_WINDOW = 1024; // requests the latency percentiles are taken over
+
+    private final String tdname;
+    private final int numThreads;
+    private final long budgetBytes;
+    private final TestCaseCache cache;
+
+    // applied to every case, as on the command line
+    boolean compactJson;
+    boolean pipelined;
+    int shardThreads = 1;
+    boolean checksumFs;
+    boolean valuesSidecar;
+    int compressionThreads;
+
+    private final Object generateLock = new Object();
+    // cases on disk by parquet file name, least recently requested first; guarded by generateLock
+    private final LinkedHashMap<String, CachedCase> cases = new LinkedHashMap<String, CachedCase>(16, 0.75f, true);
+    private long cachedBytes;
+
+    // guarded by this
+    private final long startMillis = System.currentTimeMillis();
+    private long requests;
+    private long failedRequests;
+    private long caseHits;
+    private long caseMisses;
+    private long evictions;
+    private long evictedBytes;
+    private int diskCases;   // as of the last request
+    private long diskBytes;
+    private final long[] latencies = new long[LATENCY_WINDOW]; // nanoseconds, ring buffer
+    private long totalLatencyNanos;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private static class CachedCase {
+        final TestFileGenerator.TestCase tc;
+        final long bytes;
+
+        CachedCase(TestFileGenerator.TestCase tc, long bytes){
+            this.tc = tc;
+            this.bytes = bytes;
+        }
+    }
+
+    GeneratorDaemon(String tdname, int numThreads, long budgetBytes, TestCaseCache cache){
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Disk budget must be positive: " + budgetBytes);
+        }
+        this.tdname = tdname;
+        this.numThreads = numThreads;
+        this.budgetBytes = budgetBytes;
+        this.cache = cache;
+    }
+
+    /** Serve on the given port (0: any free one) until a shutdown request */
+    void run(int port) throws IOException, InterruptedException {
+        // the one-time setup every run of the plain generator pays for
+        FileSystem.getLocal(LocalChannelFileSystem.sharedConfiguration());
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/generate", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (expect(exchange, "POST")) {
+                    generate(exchange);
+                }
+            }
+        });
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (expect(exchange, "GET")) {
+                    respond(exchange, 200, metrics());
+                }
+            }
+        });
+        server.createContext("/shutdown", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (expect(exchange, "POST")) {
+                    respond(exchange, 200, message("stopping"));
+                    stopped.countDown();
+                }
+            }
+        });
+        // metrics are answered while a generate request runs
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        File urlFile = new File(tdname, URL_FILE);
+        FileWriter out = new FileWriter(urlFile);
+        try {
+            out.write(url + "\n");
+        } finally {
+            out.close();
+        }
+        System.out.println(String.format("Generator daemon listening on %s, files in %s, disk budget %.1f MB",
+                url, new File(tdname).getAbsolutePath(), budgetBytes / 1e6));
+
+        try {
+            stopped.await();
+        } finally {
+            server.stop(1);
+            executor.shutdown();
+            urlFile.delete();
+        }
+        System.out.println("Generator daemon stopped after " + requests + " request(s)");
+    }
+
+    private void generate(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        ArrayList<TestFileGenerator.TestCase> requested;
+        InputStream in = exchange.getRequestBody();
+        try {
+            requested = dedupe(TestPlan.load(in, tdname));
+        } catch (RuntimeException e) { // JsonException, IllegalArgumentException, ...
+            recordRequest(start, false, 0, 0);
+            respond(exchange, 400, message("Bad test plan: " + e.getMessage()));
+            return;
+        } finally {
+            in.close();
+        }
+        for (TestFileGenerator.TestCase tc : requested) {
+            tc.options.compactJson = compactJson;
+            tc.options.pipelined = pipelined;
+            tc.options.shardThreads = shardThreads;
+            tc.options.checksumFs = checksumFs;
+            tc.options.valuesSidecar |= valuesSidecar;
+            tc.options.compressionThreads = compressionThreads;
+        }
+
+        TestCaseRunner.Summary summary;
+        int evicted;
+        synchronized (generateLock) {
+            summary = new TestCaseRunner(numThreads, cache).run(requested);
+            HashSet<String> pinned = new HashSet<String>();
+            for (TestFileGenerator.TestCase tc : requested) {
+                String name = tc.fileName.getNameParquet();
+                pinned.add(name);
+                CachedCase old = cases.remove(name);
+                if (old != null) {
+                    cachedBytes -= old.bytes;
+                }
+                CachedCase c = new CachedCase(tc, sizeOnDisk(tc));
+                cases.put(name, c);
+                cachedBytes += c.bytes;
+            }
+            evicted = evict(pinned);
+            synchronized (this) {
+                diskCases = cases.size();
+                diskBytes = cachedBytes;
+            }
+        }
+
+        int hits = summary.cacheHits;
+        recordRequest(start, summary.failures.isEmpty(), hits, summary.results.size() - hits);
+        respond(exchange, summary.failures.isEmpty() ? 200 : 500, response(requested, summary, evicted, start));
+    }
+
+    // the same case twice in one request would be written twice at the same time
+    private static ArrayList<TestFileGenerator.TestCase> dedupe(List<TestFileGenerator.TestCase> cases){
+        LinkedHashMap<String, TestFileGenerator.TestCase> byName = new LinkedHashMap<String, TestFileGenerator.TestCase>();
+        for (TestFileGenerator.TestCase tc : cases) {
+            if (!byName.containsKey(tc.fileName.getNameParquet())) {
+                byName.put(tc.fileName.getNameParquet(), tc);
+            }
+        }
+        return new ArrayList<TestFileGenerator.TestCase>(byName.values());
+    }
+
+    // delete the least recently requested cases until the rest fit the budget; returns how many
+    private int evict(HashSet<String> pinned){
+        int evicted = 0;
+        long bytes = 0;
+        Iterator<Map.Entry<String, CachedCase>> it = cases.entrySet().iterator();
+        while (cachedBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<String, CachedCase> e = it.next();
+            if (pinned.contains(e.getKey())) {
+                continue;
+            }
+            delete(e.getValue().tc);
+            it.remove();
+            cachedBytes -= e.getValue().bytes;
+            bytes += e.getValue().bytes;
+            evicted++;
+        }
+        synchronized (this) {
+            evictions += evicted;
+            evictedBytes += bytes;
+        }
+        return evicted;
+    }
+
+    private void delete(TestFileGenerator.TestCase tc){
+        // the key first, so that a partly deleted case is never taken for fresh
+        cache.invalidate(tc);
+        for (File f : TestCaseCache.outputs(tc)) {
+            f.delete();
+        }
+        if (tc.options.dataset != null) {
+            DatasetGenerator.deleteDataset(new File(tc.fileName.getNameDataset()));
+        }
+    }
+
+    private static long sizeOnDisk(TestFileGenerator.TestCase tc){
+        long bytes = TestCaseCache.keyFile(tc).length();
+        for (File f : TestCaseCache.outputs(tc)) {
+            bytes += f.length();
+        }
+        return bytes;
+    }
+
+    private synchronized void recordRequest(long start, boolean ok, int hits, int misses){
+        long nanos = System.nanoTime() - start;
+        latencies[(int) (requests % LATENCY_WINDOW)] = nanos;
+        totalLatencyNanos += nanos;
+        requests++;
+        if (!ok) {
+            failedRequests++;
+        }
+        caseHits += hits;
+        caseMisses += misses;
+    }
+
+    // ---- responses
+
+    private static boolean expect(HttpExchange exchange, String method) throws IOException {
+        if (exchange.getRequestMethod().equals(method)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", method);
+        respond(exchange, 405, message("Use " + method));
+        return false;
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static final JsonGeneratorFactory JSON = Json.createGeneratorFactory(
+            Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+
+    private static byte[] message(String message){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator json = JSON.createGenerator(out);
+        json.writeStartObject().write("message", message).writeEnd();
+        json.close();
+        return out.toByteArray();
+    }
+
+    private byte[] response(List<TestFileGenerator.TestCase> requested, TestCaseRunner.Summary summary,
+                            int evicted, long start){
+        LinkedHashMap<String, TestCaseRunner.Result> results = new LinkedHashMap<String, TestCaseRunner.Result>();
+        for (TestCaseRunner.Result r : summary.results) {
+            results.put(r.name, r);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator json = JSON.createGenerator(out);
+        json.writeStartObject()
+                .write("elapsed_ms", millis(System.nanoTime() - start))
+                .write("evicted_cases", evicted)
+                .writeStartArray("cases");
+        // in the order of the plan
+        for (TestFileGenerator.TestCase tc : requested) {
+            TestCaseRunner.Result r = results.get(tc.fileName.getNameParquet());
+            File parquet = new File(tc.options.dataset != null
+                    ? tc.fileName.getNameDataset() : tc.fileName.getNameParquet());
+            json.writeStartObject()
+                    .write("parquet", parquet.getAbsolutePath())
+                    .write("status", RunReport.status(r))
+                    .write("elapsed_ms", millis(r.elapsedNanos));
+            if (r.error != null) {
+                json.write("error", r.error.toString());
+            } else {
+                json.writeStartArray("files");
+                for (File f : TestCaseCache.outputs(tc)) {
+                    json.write(f.getAbsolutePath());
+                }
+                json.writeEnd();
+            }
+            json.writeEnd();
+        }
+        json.writeEnd().writeEnd();
+        json.close();
+        return out.toByteArray();
+    }
+
+    private byte[] metrics(){
+        long[] window;
+        long numRequests, failed, total;
+        long hits, misses, evictedCases, evicted, bytes;
+        int numCases;
+        synchronized (this) {
+            numRequests = requests;
+            failed = failedRequests;
+            window = Arrays.copyOf(latencies, (int) Math.min(requests, LATENCY_WINDOW));
+            total = totalLatencyNanos;
+            hits = caseHits;
+            misses = caseMisses;
+            evictedCases = evictions;
+            evicted = evictedBytes;
+            numCases = diskCases;
+            bytes = diskBytes;
+        }
+        Arrays.sort(window);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator json = JSON.createGenerator(out);
+        json.writeStartObject()
+                .write("uptime_ms", System.currentTimeMillis() - startMillis)
+                .write("requests", numRequests)
+                .write("failed_requests", failed)
+                .write("cache_hits", hits)
+                .write("cache_misses", misses)
+                .write("cache_hit_rate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0)
+                .writeStartObject("latency_ms")
+                .write("mean", numRequests > 0 ? total / 1e6 / numRequests : 0.0)
+                .write("window", window.length)
+                .write("p50", percentile(window, 0.50))
+                .write("p95", percentile(window, 0.95))
+                .write("p99", percentile(window, 0.99))
+                .write("max", percentile(window, 1.0))
+                .writeEnd()
+                .writeStartObject("disk")
+                .write("cases", numCases)
+                .write("bytes", bytes)
+                .write("budget_bytes", budgetBytes)
+                .write("evicted_cases", evictedCases)
+                .write("evicted_bytes", evicted)
+                .writeEnd();
+        json.writeEnd();
+        json.close();
+        return out.toByteArray();
+    }
+
+    // nearest rank over the sorted window
+    private static double percentile(long[] sorted, double p){
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static long millis(long nanos){
+        return nanos / 1000000;
+    }
+}
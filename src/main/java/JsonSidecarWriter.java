@@ -0,0 +1,239 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+
+/**
+ * Streams the .json sidecar of a test case: one JSON object per record, one record per line,
+ * written straight from a ColumnBatch into a buffered writer.
+ *
+ * The default mode writes what javax.json's JsonObject.toString() would, with every field present.
+ * Compact mode leaves out fields that are null or empty lists.
+ * Strings are escaped the same way javax.json does it in both modes.
+ * Groups become nested objects, except that LIST groups become arrays of their elements and MAP
+ * groups objects of their key/value pairs, the way readers present them.
+ */
+class JsonSidecarWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final boolean compact;
+    private final Prefixes fields;   // "\"name\":" per field, per group
+    private final StringBuilder sb = new StringBuilder();
+
+    // the field name prefixes of a group's fields, and of the fields of its group fields
+    private static class Prefixes {
+        final char[][] names;
+        final Prefixes[] children; // null for primitive fields
+
+        Prefixes(GroupType group){
+            names = new char[group.getFieldCount()][];
+            children = new Prefixes[names.length];
+            for (int i = 0; i < names.length; i++) {
+                StringBuilder prefix = new StringBuilder();
+                appendString(prefix, group.getFieldName(i));
+                names[i] = prefix.append(':').toString().toCharArray();
+                if (!group.getType(i).isPrimitive()) {
+                    children[i] = new Prefixes(group.getType(i).asGroupType());
+                }
+            }
+        }
+    }
+
+    JsonSidecarWriter(File file, MessageType schema, boolean compact) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")),
+                BUFFER_SIZE), schema, compact);
+    }
+
+    JsonSidecarWriter(Writer out, MessageType schema, boolean compact){
+        this.out = out;
+        this.compact = compact;
+        fields = new Prefixes(schema);
+    }
+
+    /** Write every row of the batch */
+    void write(ColumnBatch batch) throws IOException {
+        for (int row = 0; row < batch.getNumRows(); row++) {
+            sb.setLength(0);
+            appendRecord(sb, batch, row);
+            sb.append('\n');
+            out.append(sb);
+        }
+    }
+
+    private void appendRecord(StringBuilder sb, ColumnBatch batch, int row){
+        appendFields(sb, fields, batch.fields, row);
+    }
+
+    // an object of the fields of one group instance (or of the record), each at the given slot
+    private void appendFields(StringBuilder sb, Prefixes prefixes, ColumnBatch.Node[] nodes, int slot){
+        sb.append('{');
+        boolean first = true;
+        for (int i = 0; i < nodes.length; i++) {
+            ColumnBatch.Node n = nodes[i];
+            boolean missing = n.repeated ? n.listLength(slot) == 0 : n.isNull(slot);
+            if (compact && missing) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append(prefixes.names[i]);
+
+            if (!n.repeated) {
+                if (!missing) {
+                    appendNode(sb, prefixes.children[i], n, slot);
+                } else {
+                    sb.append("null");
+                }
+            } else {
+                sb.append('[');
+                int start = n.listStart(slot);
+                int end = start + n.listLength(slot);
+                for (int pos = start; pos < end; pos++) {
+                    if (pos > start) {
+                        sb.append(',');
+                    }
+                    appendNode(sb, prefixes.children[i], n, pos);
+                }
+                sb.append(']');
+            }
+        }
+        sb.append('}');
+    }
+
+    // LIST groups as arrays of their elements, MAP groups as objects, other groups as objects of their fields
+    private void appendNode(StringBuilder sb, Prefixes prefixes, ColumnBatch.Node n, int pos){
+        if (n instanceof ColumnBatch.Column) {
+            appendValue(sb, (ColumnBatch.Column) n, pos);
+            return;
+        }
+        ColumnBatch.Group g = (ColumnBatch.Group) n;
+        if (g.originalType == OriginalType.LIST && isRepeatedGroup(g.children[0], 1)) {
+            ColumnBatch.Group list = (ColumnBatch.Group) g.children[0];
+            ColumnBatch.Node element = list.children[0];
+            sb.append('[');
+            int start = list.listStart(pos);
+            int end = start + list.listLength(pos);
+            for (int e = start; e < end; e++) {
+                if (e > start) {
+                    sb.append(',');
+                }
+                appendItem(sb, prefixes.children[0].children[0], element, e);
+            }
+            sb.append(']');
+        } else if ((g.originalType == OriginalType.MAP || g.originalType == OriginalType.MAP_KEY_VALUE)
+                && isRepeatedGroup(g.children[0], 2)) {
+            ColumnBatch.Group keyValue = (ColumnBatch.Group) g.children[0];
+            ColumnBatch.Column key = (ColumnBatch.Column) keyValue.children[0];
+            ColumnBatch.Node value = keyValue.children[1];
+            sb.append('{');
+            int start = keyValue.listStart(pos);
+            int end = start + keyValue.listLength(pos);
+            for (int e = start; e < end; e++) {
+                if (e > start) {
+                    sb.append(',');
+                }
+                appendString(sb, key.valueToString(e));
+                sb.append(':');
+                appendItem(sb, prefixes.children[0].children[1], value, e);
+            }
+            sb.append('}');
+        } else {
+            appendFields(sb, prefixes, g.children, pos);
+        }
+    }
+
+    // a list element or map value: null, a list of its own if repeated, or the value
+    private void appendItem(StringBuilder sb, Prefixes prefixes, ColumnBatch.Node n, int slot){
+        if (n.isNull(slot)) {
+            sb.append("null");
+        } else if (n.repeated) {
+            sb.append('[');
+            int start = n.listStart(slot);
+            int end = start + n.listLength(slot);
+            for (int pos = start; pos < end; pos++) {
+                if (pos > start) {
+                    sb.append(',');
+                }
+                appendNode(sb, prefixes, n, pos);
+            }
+            sb.append(']');
+        } else {
+            appendNode(sb, prefixes, n, slot);
+        }
+    }
+
+    private static boolean isRepeatedGroup(ColumnBatch.Node n, int numChildren){
+        return n.repeated && n instanceof ColumnBatch.Group && ((ColumnBatch.Group) n).children.length == numChildren;
+    }
+
+    private static void appendValue(StringBuilder sb, ColumnBatch.Column c, int pos){
+        if (!c.format.isPlain()) {
+            // dates and timestamps as strings, decimals as numbers (already in BigDecimal form)
+            if (c.format.isNumber()) {
+                sb.append(c.valueToString(pos));
+            } else {
+                appendString(sb, c.valueToString(pos));
+            }
+            return;
+        }
+        switch (c.type) {
+            case BOOLEAN: sb.append(c.booleans[pos]); break;
+            case INT32:   sb.append(c.ints[pos]); break;
+            case INT64:   sb.append(c.longs[pos]); break;
+            case FLOAT:   appendDecimal(sb, Float.toString(c.floats[pos])); break;
+            case DOUBLE:  appendDecimal(sb, Double.toString(c.doubles[pos])); break;
+            default:      appendString(sb, c.binaries[pos].toStringUsingUTF8()); break;
+        }
+    }
+
+    // javax.json prints numbers as BigDecimals, which differ from Float/Double.toString() only in exponent form
+    private static void appendDecimal(StringBuilder sb, String s){
+        if (s.indexOf('E') < 0) {
+            sb.append(s);
+        } else {
+            sb.append(new BigDecimal(s).toString());
+        }
+    }
+
+    // same escaping as javax.json's JsonGenerator
+    private static void appendString(StringBuilder sb, String s){
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\b': sb.append("\\b"); break;
+                case '\f': sb.append("\\f"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    String hex = "000" + Integer.toHexString(c);
+                    sb.append("\\u").append(hex.substring(hex.length() - 4));
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * Local file system for writing test files fast: no checksums and no .crc side files (unlike the
+ * default LocalFileSystem), and files are written through a FileChannel in large buffered writes.
+ *
+ * It is registered under its own scheme, so paths made by path(File) use it while file: paths keep
+ * the default. Reading is RawLocalFileSystem's.
+ */
+public class LocalChannelFileSystem extends RawLocalFileSystem {
+  public static final String SCHEME = "nio";
+  static final int BUFFER_SIZE = 1 << 20;
+
+  private static final URI NAME = URI.create(SCHEME + ":///");
+
+  // loading the default resources is the slow part of a new Configuration, so all writers and readers share one
+  private static final Configuration CONF = new Configuration();
+  static {
+    CONF.setClass("fs." + SCHEME + ".impl", LocalChannelFileSystem.class, org.apache.hadoop.fs.FileSystem.class);
+  }
+
+  /** The configuration shared by the generator; it knows this file system */
+  public static Configuration sharedConfiguration() {
+    return CONF;
+  }
+
+  /** Path of a local file on this file system */
+  public static Path path(File file) {
+    return new Path(SCHEME, null, file.getAbsoluteFile().toURI().getPath());
+  }
+
+  @Override
+  public URI getUri() {
+    return NAME;
+  }
+
+  @Override
+  public FSDataOutputStream create(Path f, boolean overwrite, int bufferSize, short replication, long blockSize,
+                                   Progressable progress) throws IOException {
+    File file = pathToFile(f);
+    File parent = file.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Can't create directory " + parent);
+    }
+    FileChannel channel = overwrite
+        ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)
+        : FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    return new FSDataOutputStream(new ChannelOutputStream(channel, BUFFER_SIZE), statistics);
+  }
+
+  @Override
+  public FSDataOutputStream create(Path f, FsPermission permission, boolean overwrite, int bufferSize,
+                                   short replication, long blockSize, Progressable progress) throws IOException {
+    return create(f, overwrite, bufferSize, replication, blockSize, progress); // permissions are the umask's
+  }
+
+  /** Collects small writes in a buffer; writes as large as the buffer go to the channel directly */
+  static class ChannelOutputStream extends OutputStream {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean closed;
+
+    ChannelOutputStream(FileChannel channel, int bufferSize) {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len > buffer.remaining()) {
+        drain();
+        if (len >= buffer.capacity()) {
+          writeFully(ByteBuffer.wrap(b, off, len));
+          return;
+        }
+      }
+      buffer.put(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        drain();
+      } finally {
+        channel.close();
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      writeFully(buffer);
+      buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer b) throws IOException {
+      while (b.hasRemaining()) {
+        channel.write(b);
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+import org.apache.parquet.io.api.Binary;
+
+/**
+ * A column whose values are wrapped in levels of LIST, MAP and plain groups, outermost level first,
+ * in parquet's standard layouts:
+ *
+ *   list:   group name (LIST) { repeated group list { optional ... element; } }
+ *   map:    group name (MAP) { repeated group key_value { required binary key (UTF8); optional ... value; } }
+ *   struct: group name { optional ... field; }
+ *
+ * The outermost group has the column's repetition; everything below it is optional. LIST and MAP
+ * groups can't be repeated, so the outermost level of a repeated column is always a plain group.
+ *
+ * The structure follows fixed cycles, like the list sizes of flat repeated columns: list, map and
+ * repeated group sizes cycle through LIST_SIZES, and every NULL_PERIOD-th instance of an optional
+ * group is null. Map keys are "k0", "k1", ... within each map. The leaf values come from an optional
+ * column of the value type, so its value set or distribution carries over.
+ *
+ * A record's number of values depends on where it falls in the cycles of every level, so copyAt()
+ * walks the cycles up to the record, without values, and seeks the leaf column to the slots they hold.
+ */
+class NestedColumn {
+    enum Kind { LIST, MAP, STRUCT }
+
+    static final int[] LIST_SIZES = new int[]{2, 0, 1, 3};
+    static final int NULL_PERIOD = 5;
+    private static final Binary[] KEYS;
+    static{
+        int max = 0;
+        for (int n : LIST_SIZES) {
+            max = Math.max(max, n);
+        }
+        KEYS = new Binary[max];
+        for (int i = 0; i < max; i++) {
+            KEYS[i] = Binary.fromString("k" + i);
+        }
+    }
+
+    final Kind[] levels;
+    final String repetition; // of the outermost group
+    final boolean repeated;
+    final TestFileGenerator.VarProperties leaf;
+
+    // positions in the structure cycles, per level; carried over from batch to batch
+    private final int[] sizeIdx;
+    private final int[] nullIdx;
+
+    NestedColumn(Kind[] levels, String repetition, TestFileGenerator.VarProperties leaf){
+        this.levels = levels.clone();
+        this.repetition = repetition;
+        this.repeated = repetition.equals("repeated");
+        if (repeated) {
+            this.levels[0] = Kind.STRUCT;
+        }
+        this.leaf = leaf;
+        sizeIdx = new int[levels.length];
+        nullIdx = new int[levels.length];
+    }
+
+    static Kind kind(String name){
+        try {
+            return Kind.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown nested layout: " + name + " (list, map or struct)");
+        }
+    }
+
+    // column i's levels: the layouts rotated by i, depth levels of them
+    static Kind[] levelsOf(Kind[] layouts, int depth, int column){
+        Kind[] levels = new Kind[depth];
+        for (int l = 0; l < depth; l++) {
+            levels[l] = layouts[(column + l) % layouts.length];
+        }
+        return levels;
+    }
+
+    // schema declaration of the column, at the indentation of a top-level field
+    void appendSchema(StringBuilder sb, String repetition, String name, String[] declaration){
+        appendLevel(sb, 1, 0, repetition, name, declaration);
+    }
+
+    private void appendLevel(StringBuilder sb, int indent, int level, String repetition, String name,
+                             String[] declaration){
+        if (level == levels.length) {
+            indent(sb, indent).append(repetition).append(' ').append(declaration[0]).append(' ').append(name);
+            if (declaration[1].length() > 0) {
+                sb.append(' ').append(declaration[1]);
+            }
+            sb.append(";\n");
+            return;
+        }
+        indent(sb, indent).append(repetition).append(" group ").append(name);
+        switch (levels[level]) {
+            case LIST:
+                sb.append(" (LIST) {\n");
+                indent(sb, indent + 1).append("repeated group list {\n");
+                appendLevel(sb, indent + 2, level + 1, "optional", "element", declaration);
+                indent(sb, indent + 1).append("}\n");
+                break;
+            case MAP:
+                sb.append(" (MAP) {\n");
+                indent(sb, indent + 1).append("repeated group key_value {\n");
+                indent(sb, indent + 2).append("required binary key (UTF8);\n");
+                appendLevel(sb, indent + 2, level + 1, "optional", "value", declaration);
+                indent(sb, indent + 1).append("}\n");
+                break;
+            default:
+                sb.append(" {\n");
+                appendLevel(sb, indent + 1, level + 1, "optional", "field", declaration);
+        }
+        indent(sb, indent).append("}\n");
+    }
+
+    private static StringBuilder indent(StringBuilder sb, int indent){
+        for (int i = 0; i < indent; i++) {
+            sb.append("  ");
+        }
+        return sb;
+    }
+
+    // average number of leaf values per record
+    double averageLeaves(){
+        double avgSize = (double) TestFileGenerator.sum(LIST_SIZES) / LIST_SIZES.length;
+        double leaves = 1;
+        for (int l = 0; l < levels.length; l++) {
+            if (levels[l] != Kind.STRUCT || l == 0 && repeated) {
+                leaves *= avgSize;
+            }
+        }
+        return leaves;
+    }
+
+    // fill the first numRows rows of the column's top-level field with the next records
+    void fill(ColumnBatch.Node field, int numRows){
+        fill(field, numRows, 0);
+    }
+
+    // fill the given slots of the field at the given level, then its children
+    private void fill(ColumnBatch.Node node, int slots, int level){
+        node.ensureSlots(slots);
+        if (level == levels.length) {
+            leaf.fill((ColumnBatch.Column) node, slots);
+            return;
+        }
+        ColumnBatch.Group group = (ColumnBatch.Group) node;
+        if (group.repeated) {
+            for (int s = 0; s < slots; s++) {
+                group.reserve(nextSize(level));
+                group.endList(s);
+            }
+        } else if (group.optional) {
+            for (int s = 0; s < slots; s++) {
+                if (nextNull(level)) {
+                    group.setNull(s);
+                }
+            }
+        }
+        int instances = group.instances(slots);
+        if (levels[level] == Kind.STRUCT) {
+            fill(group.child(0), instances, level + 1);
+            return;
+        }
+        // the repeated key_value or list group below a MAP or LIST
+        ColumnBatch.Group items = (ColumnBatch.Group) group.child(0);
+        items.ensureSlots(instances);
+        for (int s = 0; s < instances; s++) {
+            items.reserve(group.isNull(s) ? 0 : nextSize(level));
+            items.endList(s);
+        }
+        int numItems = items.instances(instances);
+        if (levels[level] == Kind.MAP) {
+            ColumnBatch.Column keys = (ColumnBatch.Column) items.child(0);
+            keys.ensureSlots(numItems);
+            for (int s = 0; s < instances; s++) {
+                int start = items.listStart(s);
+                for (int i = 0; i < items.listLength(s); i++) {
+                    keys.setBinary(start + i, KEYS[i]);
+                }
+            }
+            fill(items.child(1), numItems, level + 1);
+        } else {
+            fill(items.child(0), numItems, level + 1);
+        }
+    }
+
+    // an independent copy whose next record is the given one
+    NestedColumn copyAt(long record){
+        NestedColumn structure = new NestedColumn(levels, repetition, leaf);
+        long leafSlots = structure.skip(record, 0);
+        NestedColumn copy = new NestedColumn(levels, repetition, leaf.copyAt(leafSlots));
+        System.arraycopy(structure.sizeIdx, 0, copy.sizeIdx, 0, levels.length);
+        System.arraycopy(structure.nullIdx, 0, copy.nullIdx, 0, levels.length);
+        return copy;
+    }
+
+    // advance the cycles as fill() would for the given slots of a level; the number of leaf slots they hold
+    private long skip(long slots, int level){
+        if (level == levels.length) {
+            return slots;
+        }
+        boolean optional = level > 0 || repetition.equals("optional");
+        long instances = repeated && level == 0 ? 0 : slots;
+        long items = 0; // below a LIST or MAP
+        for (long s = 0; s < slots; s++) {
+            if (repeated && level == 0) {
+                instances += nextSize(level);
+            } else if (optional && nextNull(level)) {
+                continue; // a null LIST or MAP has no items
+            }
+            if (levels[level] != Kind.STRUCT) {
+                items += nextSize(level);
+            }
+        }
+        return skip(levels[level] == Kind.STRUCT ? instances : items, level + 1);
+    }
+
+    private int nextSize(int level){
+        int n = LIST_SIZES[sizeIdx[level]];
+        sizeIdx[level] = (sizeIdx[level] + 1) % LIST_SIZES.length;
+        return n;
+    }
+
+    private boolean nextNull(int level){
+        nullIdx[level] = (nullIdx[level] + 1) % NULL_PERIOD;
+        return nullIdx[level] == 0;
+    }
+}
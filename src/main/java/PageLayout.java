@@ -0,0 +1,191 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageWriteStore;
+import org.apache.parquet.column.page.PageWriter;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.format.PageHeader;
+import org.apache.parquet.format.PageType;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Row groups and pages that end where exact StorageDimensions put them, instead of where the
+ * writer's size checks happen to.
+ *
+ * calcNumRecords guesses the records from a record size, and misses by the levels, the encodings
+ * and the intervals of the size checks. plan() shreds the case's records through a column store
+ * once instead, dropping the pages, and ends a page in every column after the first record at
+ * which the store buffers TEST_PAGE_SIZE bytes per column. Every numPagesPerBlock pages make a row
+ * group, and the last page end is the case's number of records. The writer ends its pages and row
+ * groups after the same records (ParallelParquetWriter.setPageEnds), and check() compares the
+ * written file's footer and page headers to them, without reading the pages.
+ */
+class PageLayout {
+    // the writers' page size: high enough that no page ends by the size check
+    static final int PAGE_SIZE_LIMIT = 1024 * 1024;
+
+    /** Records after which the pages of a file with the given storage dimensions end */
+    static long[] plan(TestFileGenerator.StorageDimensions storage, MessageType schema,
+                       ArrayList<TestFileGenerator.VarProperties> propList, WriterVersion writerVersion){
+        int numPages = storage.numBlocks * storage.numPagesPerBlock;
+        if (numPages < 1) {
+            throw new IllegalArgumentException("Exact storage needs at least one row group and page: " +
+                    storage.numBlocks + ", " + storage.numPagesPerBlock);
+        }
+        long pageBytes = ((long) TestFileGenerator.StorageDimensions.TEST_PAGE_SIZE) * schema.getColumns().size();
+
+        DroppingPageStore pageStore = new DroppingPageStore();
+        ColumnWriteStore columnStore = new ParquetProperties(PAGE_SIZE_LIMIT, writerVersion, false)
+                .newColumnWriteStore(schema, pageStore, PAGE_SIZE_LIMIT);
+        ColumnBatchWriteSupport writeSupport = new ColumnBatchWriteSupport(schema);
+        writeSupport.prepareForWrite(new ColumnIOFactory(false).getColumnIO(schema).getRecordWriter(columnStore));
+
+        long[] pageEnds = new long[numPages];
+        int batchRows = TestFileGenerator.batchRows(propList.size());
+        ColumnBatch batch = new ColumnBatch(schema, batchRows);
+        long records = 0;
+        long pageStart = 0; // buffered size of the finished pages
+        int page = 0;
+        while (page < numPages) {
+            TestFileGenerator.fillBatch(batch, propList, batchRows);
+            for (int row = 0; row < batchRows && page < numPages; row++) {
+                writeSupport.write(batch);
+                records++;
+                if (columnStore.getBufferedSize() - pageStart >= pageBytes) {
+                    columnStore.flush();
+                    pageEnds[page++] = records;
+                    pageStart = columnStore.getBufferedSize();
+                }
+            }
+        }
+        for (Map.Entry<ColumnDescriptor, Integer> e : pageStore.pages.entrySet()) {
+            if (e.getValue() != numPages) {
+                throw new IllegalArgumentException("A page of column " + e.getKey() + " outgrew " +
+                        PAGE_SIZE_LIMIT + " bytes; the records are too big for exact storage");
+            }
+        }
+        return pageEnds;
+    }
+
+    /** Check the row groups and pages of a file written with storage.pageEnds */
+    static void check(File parquet, TestFileGenerator.StorageDimensions storage) throws IOException {
+        ParquetMetadata footer = ParquetFileReader.readFooter(LocalChannelFileSystem.sharedConfiguration(),
+                new Path(parquet.toURI()), ParquetMetadataConverter.NO_FILTER);
+        List<BlockMetaData> blocks = footer.getBlocks();
+        if (blocks.size() != storage.numBlocks) {
+            throw new IOException(parquet + " has " + blocks.size() + " row groups instead of " + storage.numBlocks);
+        }
+        MessageType schema = footer.getFileMetaData().getSchema();
+        int pagesPerBlock = storage.numPagesPerBlock;
+        FileInputStream file = new FileInputStream(parquet);
+        try {
+            for (int b = 0; b < blocks.size(); b++) {
+                long rows = recordsBefore(storage, (b + 1) * pagesPerBlock) - recordsBefore(storage, b * pagesPerBlock);
+                if (blocks.get(b).getRowCount() != rows) {
+                    throw new IOException(parquet + ": row group " + b + " has " + blocks.get(b).getRowCount() +
+                            " records instead of " + rows);
+                }
+                for (ColumnChunkMetaData chunk : blocks.get(b).getColumns()) {
+                    // a data page header counts values, which are the records unless the column repeats
+                    boolean flat = schema.getColumnDescription(chunk.getPath().toArray()).getMaxRepetitionLevel() == 0;
+                    ArrayList<PageHeader> pages = new ArrayList<PageHeader>();
+                    for (PageHeader header : CaseMetrics.readPageHeaders(file, chunk)) {
+                        if (header.getType() != PageType.DICTIONARY_PAGE) {
+                            pages.add(header);
+                        }
+                    }
+                    if (pages.size() != pagesPerBlock) {
+                        throw new IOException(parquet + ": column " + chunk.getPath() + " of row group " + b +
+                                " has " + pages.size() + " pages instead of " + pagesPerBlock);
+                    }
+                    for (int i = 0; i < pages.size(); i++) {
+                        int page = b * pagesPerBlock + i;
+                        long expected = recordsBefore(storage, page + 1) - recordsBefore(storage, page);
+                        long actual;
+                        if (pages.get(i).getType() == PageType.DATA_PAGE_V2) {
+                            actual = pages.get(i).getData_page_header_v2().getNum_rows();
+                        } else if (flat) {
+                            actual = pages.get(i).getData_page_header().getNum_values();
+                        } else {
+                            continue;
+                        }
+                        if (actual != expected) {
+                            throw new IOException(parquet + ": page " + i + " of column " + chunk.getPath() +
+                                    " in row group " + b + " has " + actual + " records instead of " + expected);
+                        }
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static long recordsBefore(TestFileGenerator.StorageDimensions storage, int page){
+        return page == 0 ? 0 : storage.pageEnds[page - 1];
+    }
+
+    // counts the pages of each column and drops them
+    private static class DroppingPageStore implements PageWriteStore{
+        final Map<ColumnDescriptor, Integer> pages = new HashMap<ColumnDescriptor, Integer>();
+
+        @Override
+        public PageWriter getPageWriter(final ColumnDescriptor path){
+            pages.put(path, 0);
+            return new PageWriter() {
+                @Override
+                public void writePage(BytesInput bytes, int valueCount, Statistics<?> statistics,
+                                      Encoding rlEncoding, Encoding dlEncoding, Encoding valuesEncoding){
+                    pages.put(path, pages.get(path) + 1);
+                }
+
+                @Override
+                public void writePageV2(int rowCount, int nullCount, int valueCount, BytesInput repetitionLevels,
+                                        BytesInput definitionLevels, Encoding dataEncoding, BytesInput data,
+                                        Statistics<?> statistics){
+                    pages.put(path, pages.get(path) + 1);
+                }
+
+                @Override
+                public long getMemSize(){
+                    return 0;
+                }
+
+                @Override
+                public long allocatedSize(){
+                    return 0;
+                }
+
+                @Override
+                public void writeDictionaryPage(DictionaryPage dictionaryPage){
+                    throw new IllegalStateException("Exact storage needs dictionary encoding off");
+                }
+
+                @Override
+                public String memUsageString(String prefix){
+                    return prefix + " dropped pages";
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,463 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageWriteStore;
+import org.apache.parquet.column.page.PageWriter;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * The pages of one row group, compressed on a worker pool while the column writers go on shredding
+ * records. This is parquet-hadoop's ColumnChunkPageWriteStore, which compresses every page on the
+ * writing thread, with the compression handed off.
+ *
+ * A page is copied and submitted as soon as its column writer is done with it. At the end of the
+ * row group the column chunks are written in schema order, and each chunk's pages in the order they
+ * were written, so the pages and footer are those of ColumnChunkPageWriteStore; only the order of a
+ * chunk's encoding list may differ, as both take it from a HashSet of enums. Workers bounds the
+ * pages being or waiting to be compressed, and with them the uncompressed copies.
+ *
+ * A chunk's buffered size is the size of its compressed pages and their headers, as in
+ * ColumnChunkPageWriteStore, so asking for it waits for the chunk's pending pages. The row group
+ * check asks for it every few hundred records at most, and row group boundaries don't depend on
+ * how fast the pool is. For usage reports, setExactSizes(false) counts pending pages uncompressed
+ * instead of waiting for them.
+ */
+public class ParallelPageWriteStore implements PageWriteStore {
+  // package-private in 1.8.1; the one way to write ready-made pages with their headers
+  private static final Method WRITE_DATA_PAGES;
+  static {
+    try {
+      WRITE_DATA_PAGES = ParquetFileWriter.class.getDeclaredMethod("writeDataPages",
+          BytesInput.class, long.class, long.class, Statistics.class, List.class);
+      WRITE_DATA_PAGES.setAccessible(true);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("Unexpected parquet-hadoop ParquetFileWriter internals", e);
+    }
+  }
+
+  private final Workers workers;
+  private final MessageType schema;
+  private final Map<ColumnDescriptor, ChunkWriter> writers = new HashMap<ColumnDescriptor, ChunkWriter>();
+  private boolean exactSizes = true;
+
+  public ParallelPageWriteStore(Workers workers, MessageType schema) {
+    this.workers = workers;
+    this.schema = schema;
+    for (ColumnDescriptor path : schema.getColumns()) {
+      writers.put(path, new ChunkWriter(path));
+    }
+  }
+
+  @Override
+  public PageWriter getPageWriter(ColumnDescriptor path) {
+    return writers.get(path);
+  }
+
+  /** false: buffered sizes count pending pages with their uncompressed size instead of waiting */
+  public void setExactSizes(boolean exactSizes) {
+    this.exactSizes = exactSizes;
+  }
+
+  /** Write the column chunks of the row group, waiting for their pages as needed */
+  public void flushToFileWriter(ParquetFileWriter writer) throws IOException {
+    for (ColumnDescriptor path : schema.getColumns()) {
+      writers.get(path).writeTo(writer);
+    }
+  }
+
+  /** A compressed data page with its header, ready to be appended to the chunk */
+  private static class Page {
+    final byte[] bytes;
+    final long uncompressedLength; // both with the header
+    final long compressedLength;
+
+    Page(byte[] bytes, long uncompressedLength, long compressedLength) {
+      this.bytes = bytes;
+      this.uncompressedLength = uncompressedLength;
+      this.compressedLength = compressedLength;
+    }
+  }
+
+  private class ChunkWriter implements PageWriter {
+    private final ColumnDescriptor path;
+    private final ArrayList<Future<Page>> pages = new ArrayList<Future<Page>>();
+    private final ArrayList<Long> pendingSizes = new ArrayList<Long>(); // uncompressed, by page
+    private Future<DictionaryPage> dictionaryPage;
+    private final Set<Encoding> encodings = new HashSet<Encoding>();
+    private final Statistics<?> totalStatistics;
+    private long totalValueCount;
+    private int done;     // pages[0, done) are compressed
+    private long doneSize;
+
+    ChunkWriter(ColumnDescriptor path) {
+      this.path = path;
+      this.totalStatistics = Statistics.getStatsBasedOnType(path.getType());
+    }
+
+    @Override
+    public void writePage(BytesInput bytes, final int valueCount, final Statistics<?> statistics,
+                          final Encoding rlEncoding, final Encoding dlEncoding, final Encoding valuesEncoding)
+        throws IOException {
+      final long uncompressedSize = bytes.size();
+      if (uncompressedSize > Integer.MAX_VALUE) {
+        throw new ParquetEncodingException("Cannot write page larger than Integer.MAX_VALUE bytes: " +
+            uncompressedSize);
+      }
+      // the column writer reuses its buffers
+      final BytesInput copy = BytesInput.copy(bytes);
+      submit(new Job<Page>() {
+        @Override
+        Page run(PageCompressor c) throws IOException {
+          BytesInput compressed = c.compress(copy);
+          long compressedSize = compressed.size();
+          if (compressedSize > Integer.MAX_VALUE) {
+            throw new ParquetEncodingException("Cannot write compressed page larger than Integer.MAX_VALUE bytes: " +
+                compressedSize);
+          }
+          ByteArrayOutputStream out = c.pageBuffer();
+          c.converter.writeDataPageHeader((int) uncompressedSize, (int) compressedSize, valueCount, statistics,
+              rlEncoding, dlEncoding, valuesEncoding, out);
+          int headerSize = out.size();
+          compressed.writeAllTo(out);
+          return new Page(out.toByteArray(), uncompressedSize + headerSize, compressedSize + headerSize);
+        }
+      }, uncompressedSize);
+      totalValueCount += valueCount;
+      totalStatistics.mergeStatistics(statistics);
+      encodings.add(rlEncoding);
+      encodings.add(dlEncoding);
+      encodings.add(valuesEncoding);
+    }
+
+    @Override
+    public void writePageV2(final int rowCount, final int nullCount, final int valueCount,
+                            BytesInput repetitionLevels, BytesInput definitionLevels, final Encoding dataEncoding,
+                            BytesInput data, final Statistics<?> statistics) throws IOException {
+      final int rlByteLength = toIntWithCheck(repetitionLevels.size());
+      final int dlByteLength = toIntWithCheck(definitionLevels.size());
+      final int uncompressedSize = toIntWithCheck(data.size() + repetitionLevels.size() + definitionLevels.size());
+      final BytesInput rl = BytesInput.copy(repetitionLevels);
+      final BytesInput dl = BytesInput.copy(definitionLevels);
+      final BytesInput dataCopy = BytesInput.copy(data);
+      submit(new Job<Page>() {
+        @Override
+        Page run(PageCompressor c) throws IOException {
+          BytesInput compressedData = c.compress(dataCopy);
+          int compressedSize = toIntWithCheck(compressedData.size() + rl.size() + dl.size());
+          ByteArrayOutputStream out = c.pageBuffer();
+          c.converter.writeDataPageV2Header(uncompressedSize, compressedSize, valueCount, nullCount, rowCount,
+              statistics, dataEncoding, rlByteLength, dlByteLength, out);
+          int headerSize = out.size();
+          BytesInput.concat(rl, dl, compressedData).writeAllTo(out);
+          return new Page(out.toByteArray(), uncompressedSize + headerSize, compressedSize + headerSize);
+        }
+      }, uncompressedSize);
+      totalValueCount += valueCount;
+      totalStatistics.mergeStatistics(statistics);
+      encodings.add(dataEncoding);
+    }
+
+    private int toIntWithCheck(long size) {
+      if (size > Integer.MAX_VALUE) {
+        throw new ParquetEncodingException("Cannot write page larger than " + Integer.MAX_VALUE + " bytes: " + size);
+      }
+      return (int) size;
+    }
+
+    private void submit(Job<Page> job, long uncompressedSize) throws IOException {
+      pages.add(workers.submit(job));
+      pendingSizes.add(uncompressedSize);
+    }
+
+    @Override
+    public void writeDictionaryPage(DictionaryPage page) throws IOException {
+      if (dictionaryPage != null) {
+        throw new ParquetEncodingException("Only one dictionary page is allowed");
+      }
+      final BytesInput bytes = BytesInput.copy(page.getBytes());
+      final int dictionarySize = page.getDictionarySize();
+      final Encoding encoding = page.getEncoding();
+      dictionaryPage = workers.submit(new Job<DictionaryPage>() {
+        @Override
+        DictionaryPage run(PageCompressor c) throws IOException {
+          return new DictionaryPage(BytesInput.copy(c.compress(bytes)), (int) bytes.size(), dictionarySize, encoding);
+        }
+      });
+    }
+
+    @Override
+    public long getMemSize() {
+      try {
+        return bufferedSize(exactSizes);
+      } catch (IOException e) {
+        throw new ParquetEncodingException("Page compression failed in column " + path, e);
+      }
+    }
+
+    @Override
+    public long allocatedSize() {
+      return getMemSize();
+    }
+
+    @Override
+    public String memUsageString(String prefix) {
+      return prefix + " ParallelPageWriteStore " + path + " " + getMemSize() + " bytes";
+    }
+
+    // compressed size of the done pages, and of the pending ones if wait, else their uncompressed size
+    private long bufferedSize(boolean wait) throws IOException {
+      while (done < pages.size() && (wait || pages.get(done).isDone())) {
+        doneSize += await(pages.get(done)).compressedLength;
+        done++;
+      }
+      long size = doneSize;
+      for (int i = done; i < pages.size(); i++) {
+        size += pendingSizes.get(i);
+      }
+      return size;
+    }
+
+    void writeTo(ParquetFileWriter writer) throws IOException {
+      writer.startColumn(path, totalValueCount, workers.codecName);
+      if (dictionaryPage != null) {
+        DictionaryPage page = await(dictionaryPage);
+        writer.writeDictionaryPage(page);
+        encodings.add(page.getEncoding());
+      }
+      BytesInput[] bytes = new BytesInput[pages.size()];
+      long uncompressedLength = 0;
+      long compressedLength = 0;
+      for (int i = 0; i < bytes.length; i++) {
+        Page page = await(pages.get(i));
+        bytes[i] = BytesInput.from(page.bytes);
+        uncompressedLength += page.uncompressedLength;
+        compressedLength += page.compressedLength;
+      }
+      try {
+        WRITE_DATA_PAGES.invoke(writer, BytesInput.concat(bytes), uncompressedLength, compressedLength,
+            totalStatistics, new ArrayList<Encoding>(encodings));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      } catch (InvocationTargetException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Failed to write column chunk " + path, e.getCause());
+      }
+      writer.endColumn();
+    }
+  }
+
+  private static <V> V await(Future<V> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for page compression");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("Page compression failed", e.getCause());
+    }
+  }
+
+  /** What a worker does with a page, given a compressor of its own */
+  abstract static class Job<V> {
+    abstract V run(PageCompressor c) throws IOException;
+  }
+
+  /**
+   * The codec's compressor and buffers one job uses at a time; parquet-hadoop's
+   * CodecFactory.BytesCompressor, which isn't accessible from here.
+   */
+  static class PageCompressor {
+    final ParquetMetadataConverter converter = new ParquetMetadataConverter();
+    private final CompressionCodec codec;
+    private final Compressor compressor;
+    private final ByteArrayOutputStream compressed;
+    private final ByteArrayOutputStream page = new ByteArrayOutputStream();
+
+    PageCompressor(CompressionCodec codec, int pageSize) {
+      this.codec = codec;
+      this.compressor = codec != null ? CodecPool.getCompressor(codec) : null;
+      this.compressed = new ByteArrayOutputStream(pageSize);
+    }
+
+    // the result is a view of the buffer, valid until the next compress
+    BytesInput compress(BytesInput bytes) throws IOException {
+      if (codec == null) {
+        return bytes;
+      }
+      compressed.reset();
+      if (compressor != null) {
+        compressor.reset();
+      }
+      CompressionOutputStream out = codec.createOutputStream(compressed, compressor);
+      bytes.writeAllTo(out);
+      out.finish();
+      out.close();
+      return BytesInput.from(compressed);
+    }
+
+    ByteArrayOutputStream pageBuffer() {
+      page.reset();
+      return page;
+    }
+
+    void release() {
+      if (compressor != null) {
+        CodecPool.returnCompressor(compressor);
+      }
+    }
+  }
+
+  /**
+   * The compression threads of one writer, shared by its row groups' stores. At most maxInFlight
+   * jobs are queued or running; submitting another blocks the writer until one is done. With no
+   * threads, jobs run on the writing thread as they are submitted.
+   */
+  public static class Workers implements Closeable {
+    final CompressionCodecName codecName;
+    private final CompressionCodec codec;
+    private final int pageSize;
+    private final ExecutorService pool;
+    private final Semaphore inFlight;
+    private final ConcurrentLinkedQueue<PageCompressor> idle = new ConcurrentLinkedQueue<PageCompressor>();
+
+    public Workers(CompressionCodecName codecName, Configuration conf, int pageSize, int numThreads,
+                   int maxInFlight) {
+      if (numThreads < 0 || (numThreads > 0 && maxInFlight < 1)) {
+        throw new IllegalArgumentException("Need no compression threads, or some and a page in flight: " +
+            numThreads + ", " + maxInFlight);
+      }
+      this.codecName = codecName;
+      this.codec = codec(codecName, conf);
+      this.pageSize = pageSize;
+      if (numThreads == 0) {
+        this.inFlight = null;
+        this.pool = null;
+        return;
+      }
+      this.inFlight = new Semaphore(maxInFlight);
+      final String name = "page-compression-" + codecName.name().toLowerCase() + "-";
+      final AtomicInteger threadNumber = new AtomicInteger();
+      this.pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, name + threadNumber.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+
+    private static CompressionCodec codec(CompressionCodecName codecName, Configuration conf) {
+      String className = codecName.getHadoopCompressionCodecClassName();
+      if (className == null) {
+        return null;
+      }
+      try {
+        return (CompressionCodec) ReflectionUtils.newInstance(Class.forName(className), conf);
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException("Codec class " + className + " of " + codecName + " not found", e);
+      }
+    }
+
+    <V> Future<V> submit(final Job<V> job) throws IOException {
+      if (pool == null) {
+        return CompletableFuture.completedFuture(run(job));
+      }
+      try {
+        inFlight.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for page compression");
+      }
+      try {
+        return pool.submit(new Callable<V>() {
+          @Override
+          public V call() throws IOException {
+            try {
+              return run(job);
+            } finally {
+              inFlight.release();
+            }
+          }
+        });
+      } catch (RuntimeException e) {
+        inFlight.release();
+        throw e;
+      }
+    }
+
+    private <V> V run(Job<V> job) throws IOException {
+      PageCompressor c = idle.poll();
+      if (c == null) {
+        c = new PageCompressor(codec, pageSize);
+      }
+      try {
+        return job.run(c);
+      } finally {
+        idle.add(c);
+      }
+    }
+
+    /** Stop the threads, abandoning any pending jobs, and return the compressors to the codec pool */
+    @Override
+    public void close() {
+      if (pool != null) {
+        pool.shutdownNow();
+        try {
+          pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      PageCompressor c;
+      while ((c = idle.poll()) != null) {
+        c.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,213 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * ParquetWriter whose pages are compressed on compressionThreads worker threads, through a
+ * ParallelPageWriteStore, while the writing thread goes on shredding records.
+ *
+ * ParquetWriter's record writer can't be given another page store, so this is its record writer
+ * over the public parts of parquet-hadoop: the same row group size checks, and so the same pages
+ * and row groups as a ParquetWriter with the same settings. Takes any WriteSupport, e.g.
+ * CsvWriteSupport; see ColumnBatchParallelWriter for ColumnBatches. Registers with the global
+ * WriterMemoryManager until closed.
+ *
+ * With no compression threads pages are compressed on the writing thread. setPageEnds takes row
+ * group and page boundaries out of the size checks' hands, see PageLayout.
+ */
+public class ParallelParquetWriter<T> implements Closeable {
+  public static final int DEFAULT_IN_FLIGHT_PAGES_PER_THREAD = 4;
+
+  // as in ParquetWriter's InternalParquetRecordWriter
+  private static final int MINIMUM_RECORD_COUNT_FOR_CHECK = 100;
+  private static final int MAXIMUM_RECORD_COUNT_FOR_CHECK = 10000;
+
+  private final ParquetFileWriter fileWriter;
+  private final WriteSupport<T> writeSupport;
+  private final MessageType schema;
+  private final Map<String, String> extraMetaData;
+  private final int pageSize;
+  private final boolean enableDictionary;
+  private final boolean validating;
+  private final ParquetProperties properties;
+  private final ParallelPageWriteStore.Workers workers;
+
+  private long rowGroupSizeThreshold;
+  private long nextRowGroupSize;
+  private long recordCount;
+  private long recordCountForNextMemCheck = MINIMUM_RECORD_COUNT_FOR_CHECK;
+  private long lastRowGroupEndPos;
+  private ColumnWriteStore columnStore;
+  private ParallelPageWriteStore pageStore;
+
+  private long[] pageEnds; // records after which a page ends in every column; null: the size checks decide
+  private int pagesPerRowGroup;
+  private int nextPageEnd;
+  private long totalRecordCount;
+
+  public ParallelParquetWriter(Path file, WriteSupport<T> writeSupport, CompressionCodecName codecName, int blockSize,
+                               int pageSize, boolean enableDictionary, boolean validating, WriterVersion writerVersion,
+                               Configuration conf, int compressionThreads) throws IOException {
+    this(file, writeSupport, codecName, blockSize, pageSize, enableDictionary, validating, writerVersion, conf,
+        compressionThreads, compressionThreads * DEFAULT_IN_FLIGHT_PAGES_PER_THREAD);
+  }
+
+  /** maxInFlightPages: pages being or waiting to be compressed, beyond which write blocks */
+  public ParallelParquetWriter(Path file, WriteSupport<T> writeSupport, CompressionCodecName codecName, int blockSize,
+                               int pageSize, boolean enableDictionary, boolean validating, WriterVersion writerVersion,
+                               Configuration conf, int compressionThreads, int maxInFlightPages) throws IOException {
+    WriteSupport.WriteContext writeContext = writeSupport.init(conf);
+    this.writeSupport = writeSupport;
+    this.schema = writeContext.getSchema();
+    this.extraMetaData = writeContext.getExtraMetaData();
+    this.pageSize = pageSize;
+    this.enableDictionary = enableDictionary;
+    this.validating = validating;
+    // the dictionary page size is the page size, as ColumnBatchParquetWriter and CsvParquetWriter have it
+    this.properties = new ParquetProperties(pageSize, writerVersion, enableDictionary);
+    this.rowGroupSizeThreshold = blockSize;
+    this.nextRowGroupSize = blockSize;
+    this.workers = new ParallelPageWriteStore.Workers(codecName, conf, pageSize, compressionThreads, maxInFlightPages);
+    try {
+      fileWriter = new ParquetFileWriter(conf, schema, file, ParquetFileWriter.Mode.CREATE, blockSize,
+          ParquetWriter.MAX_PADDING_SIZE_DEFAULT);
+      fileWriter.start();
+    } catch (IOException e) {
+      workers.close();
+      throw e;
+    }
+    initStore();
+    WriterMemoryManager.global().register(this, blockSize);
+  }
+
+  private void initStore() {
+    pageStore = new ParallelPageWriteStore(workers, schema);
+    columnStore = properties.newColumnWriteStore(schema, pageStore, pageSize);
+    MessageColumnIO columnIO = new ColumnIOFactory(validating).getColumnIO(schema);
+    writeSupport.prepareForWrite(columnIO.getRecordWriter(columnStore));
+  }
+
+  /**
+   * End a page in every column after each of the given numbers of records, counted from the start of
+   * the file, and a row group after every pagesPerRowGroup pages; records after the last end go to
+   * one more row group. The page size has to be high enough that the column writers don't end pages
+   * of their own. Ending a page flushes the column writers, which would write a dictionary page each
+   * time, so this needs dictionary encoding off.
+   */
+  public void setPageEnds(long[] pageEnds, int pagesPerRowGroup) {
+    if (enableDictionary) {
+      throw new IllegalStateException("Page ends need dictionary encoding off");
+    }
+    if (totalRecordCount > 0) {
+      throw new IllegalStateException("Page ends have to be set before the first record");
+    }
+    if (pagesPerRowGroup < 1) {
+      throw new IllegalArgumentException("Need at least one page per row group: " + pagesPerRowGroup);
+    }
+    this.pageEnds = pageEnds.clone();
+    this.pagesPerRowGroup = pagesPerRowGroup;
+    WriterMemoryManager.global().exempt(this);
+  }
+
+  public void write(T object) throws IOException {
+    writeSupport.write(object);
+    recordCount++;
+    totalRecordCount++;
+    if (pageEnds == null) {
+      checkBlockSizeReached();
+    } else if (nextPageEnd < pageEnds.length && totalRecordCount == pageEnds[nextPageEnd]) {
+      nextPageEnd++;
+      if (nextPageEnd % pagesPerRowGroup == 0) {
+        endRowGroup();
+      } else {
+        columnStore.flush();
+      }
+    }
+  }
+
+  private void checkBlockSizeReached() throws IOException {
+    if (recordCount >= recordCountForNextMemCheck) {
+      long memSize = columnStore.getBufferedSize();
+      long recordSize = memSize / recordCount;
+      if (memSize > (nextRowGroupSize - 2 * recordSize)) {
+        endRowGroup();
+        recordCountForNextMemCheck = Math.min(Math.max(MINIMUM_RECORD_COUNT_FOR_CHECK, recordCount / 2),
+            MAXIMUM_RECORD_COUNT_FOR_CHECK);
+      } else {
+        recordCountForNextMemCheck = Math.min(
+            Math.max(MINIMUM_RECORD_COUNT_FOR_CHECK,
+                (recordCount + (long) (nextRowGroupSize / ((float) recordSize))) / 2),
+            recordCount + MAXIMUM_RECORD_COUNT_FOR_CHECK);
+      }
+    }
+  }
+
+  private void endRowGroup() throws IOException {
+    flushRowGroupToStore();
+    initStore();
+    lastRowGroupEndPos = fileWriter.getPos();
+  }
+
+  private void flushRowGroupToStore() throws IOException {
+    if (recordCount > 0) {
+      fileWriter.startBlock(recordCount);
+      columnStore.flush();
+      pageStore.flushToFileWriter(fileWriter);
+      recordCount = 0;
+      fileWriter.endBlock();
+      nextRowGroupSize = Math.min(fileWriter.getNextRowGroupSize(), rowGroupSizeThreshold);
+    }
+    columnStore = null;
+    pageStore = null;
+  }
+
+  /** Bytes written so far plus the buffered row group, pending pages counted uncompressed */
+  public long getDataSize() {
+    return lastRowGroupEndPos + estimateBufferedSize();
+  }
+
+  /** Buffered size of the row group without waiting for the compression threads */
+  long estimateBufferedSize() {
+    pageStore.setExactSizes(false);
+    try {
+      return columnStore.getBufferedSize();
+    } finally {
+      pageStore.setExactSizes(true);
+    }
+  }
+
+  // for WriterMemoryManager, on the writing thread; doesn't move set page ends
+  void setRowGroupSizeThreshold(long threshold) {
+    rowGroupSizeThreshold = threshold;
+    nextRowGroupSize = threshold;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flushRowGroupToStore();
+      WriteSupport.FinalizedWriteContext finalWriteContext = writeSupport.finalizeWrite();
+      Map<String, String> finalMetadata = new HashMap<String, String>(extraMetaData);
+      finalMetadata.putAll(finalWriteContext.getExtraMetaData());
+      fileWriter.end(finalMetadata);
+    } finally {
+      workers.close();
+      WriterMemoryManager.global().unregister(this);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.bytes.BytesUtils;
+import org.apache.parquet.format.Util;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Concatenates parquet files of the same schema into one file, row group after row group.
+ *
+ * Column chunks are copied byte for byte (pages are neither decoded nor recompressed); only their
+ * offsets change, and a new footer listing all row groups is written at the end.
+ * (parquet-hadoop 1.8.1 has no ParquetFileWriter.appendFile yet, hence the hand-written footer merge.)
+ */
+public class ParquetFileMerger {
+  private static final int COPY_BUFFER_SIZE = 1 << 20;
+
+  private final Configuration conf;
+
+  public ParquetFileMerger(Configuration conf) {
+    this.conf = conf;
+  }
+
+  public void merge(List<Path> inputs, Path output) throws IOException {
+    if (inputs.isEmpty()) {
+      throw new IllegalArgumentException("Nothing to merge into " + output);
+    }
+    FileSystem fs = output.getFileSystem(conf);
+    FSDataOutputStream out = fs.create(output, true);
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+    try {
+      out.write(ParquetFileWriter.MAGIC);
+
+      MessageType schema = null;
+      Map<String, String> keyValueMetaData = new HashMap<String, String>();
+      String createdBy = null;
+      List<BlockMetaData> blocks = new ArrayList<BlockMetaData>();
+
+      for (Path input : inputs) {
+        ParquetMetadata footer = ParquetFileReader.readFooter(conf, input, ParquetMetadataConverter.NO_FILTER);
+        FileMetaData fileMetaData = footer.getFileMetaData();
+        if (schema == null) {
+          schema = fileMetaData.getSchema();
+          keyValueMetaData.putAll(fileMetaData.getKeyValueMetaData());
+          createdBy = fileMetaData.getCreatedBy();
+        } else if (!schema.equals(fileMetaData.getSchema())) {
+          throw new ParquetEncodingException("Can't merge " + input + ": schema differs from " + inputs.get(0));
+        }
+
+        FSDataInputStream in = input.getFileSystem(conf).open(input);
+        try {
+          for (BlockMetaData block : footer.getBlocks()) {
+            blocks.add(copyBlock(block, in, out, buffer));
+          }
+        } finally {
+          in.close();
+        }
+      }
+
+      ParquetMetadata merged = new ParquetMetadata(new FileMetaData(schema, keyValueMetaData, createdBy), blocks);
+      long footerStart = out.getPos();
+      Util.writeFileMetaData(new ParquetMetadataConverter().toParquetMetadata(
+          ParquetFileWriter.CURRENT_VERSION, merged), out);
+      BytesUtils.writeIntLittleEndian(out, (int) (out.getPos() - footerStart));
+      out.write(ParquetFileWriter.MAGIC);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static BlockMetaData copyBlock(BlockMetaData block, FSDataInputStream in, FSDataOutputStream out,
+                                         byte[] buffer) throws IOException {
+    BlockMetaData copy = new BlockMetaData();
+    copy.setRowCount(block.getRowCount());
+    copy.setTotalByteSize(block.getTotalByteSize());
+
+    for (ColumnChunkMetaData chunk : block.getColumns()) {
+      long start = chunk.getStartingPos();
+      long shift = out.getPos() - start;
+
+      in.seek(start);
+      for (long remaining = chunk.getTotalSize(); remaining > 0; ) {
+        int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (n < 0) {
+          throw new IOException("Unexpected end of file while copying column " + chunk.getPath());
+        }
+        out.write(buffer, 0, n);
+        remaining -= n;
+      }
+
+      long dictionaryPageOffset = chunk.getDictionaryPageOffset() > 0 ? chunk.getDictionaryPageOffset() + shift : 0;
+      copy.addColumn(ColumnChunkMetaData.get(chunk.getPath(), chunk.getType(), chunk.getCodec(),
+          chunk.getEncodings(), chunk.getStatistics(), chunk.getFirstDataPageOffset() + shift,
+          dictionaryPageOffset, chunk.getValueCount(), chunk.getTotalSize(), chunk.getTotalUncompressedSize()));
+    }
+    return copy;
+  }
+}
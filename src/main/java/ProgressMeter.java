@@ -0,0 +1,68 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints the progress of a long running test case at a fixed interval: records written,
+ * records/s and Parquet bytes/s. Writers report into it from any thread.
+ */
+class ProgressMeter {
+    private final String name;
+    private final long totalRecords;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private long resumedRecords;  // written by an earlier run, not counted in the rates
+    private long startNanos;
+    private ScheduledExecutorService timer;
+
+    ProgressMeter(String name, long totalRecords){
+        this.name = name;
+        this.totalRecords = totalRecords;
+    }
+
+    /** Records that were already written before this run started */
+    void resumed(long numRecords){
+        resumedRecords += numRecords;
+    }
+
+    void add(long numRecords, long numBytes){
+        records.addAndGet(numRecords);
+        bytes.addAndGet(numBytes);
+    }
+
+    void start(long intervalMillis){
+        startNanos = System.nanoTime();
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "progress-" + name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                System.out.println(ProgressMeter.this);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop(){
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        System.out.println(this);
+    }
+
+    @Override
+    public String toString(){
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        long done = resumedRecords + records.get();
+        return String.format("%s: %,d of %,d records (%.1f%%), %,.0f rec/s, %.1f MB/s parquet",
+                name, done, totalRecords, totalRecords > 0 ? 100.0 * done / totalRecords : 100.0,
+                records.get() / seconds, bytes.get() / seconds / (1 << 20));
+    }
+}
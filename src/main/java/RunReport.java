@@ -0,0 +1,174 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Collections;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/**
+ * Machine readable report of a generator run: the run's totals plus the CaseMetrics of every
+ * test case, as JSON (one object per run) and CSV (one row per case).
+ */
+class RunReport {
+    private static final String[] CSV_COLUMNS = {
+            "file", "status", "wall_ms", "generate_ms", "parquet_ms", "json_ms", "records",
+            "parquet_bytes", "json_bytes", "schema_bytes", "row_groups", "min_row_group_bytes",
+            "max_row_group_bytes", "data_pages", "dictionary_pages", "min_page_bytes", "max_page_bytes",
+            "avg_page_bytes",
+            "generate_rec_per_s", "generate_wait_ms", "generate_avg_queue_depth", "generate_max_queue_depth",
+            "parquet_rec_per_s", "parquet_wait_ms", "parquet_avg_queue_depth", "parquet_max_queue_depth",
+            "json_rec_per_s", "json_wait_ms", "json_avg_queue_depth", "json_max_queue_depth", "bottleneck"};
+    private static final int STAGE_COLUMNS = 4;
+
+    static void writeJson(File file, TestCaseRunner.Summary summary) throws IOException {
+        JsonGeneratorFactory factory = Json.createGeneratorFactory(
+                Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+        OutputStream out = new FileOutputStream(file);
+        try {
+            JsonGenerator json = factory.createGenerator(out);
+            json.writeStartObject()
+                    .write("threads", summary.numThreads)
+                    .write("wall_ms", millis(summary.wallNanos))
+                    .write("job_ms", millis(summary.jobNanos))
+                    .write("cases", summary.results.size())
+                    .write("failed", summary.failures.size())
+                    .write("cache_hits", summary.cacheHits);
+            WriterMemoryManager.Stats memory = summary.memory;
+            if (memory != null) {
+                json.writeStartObject("writer_memory")
+                        .write("pool_bytes", memory.poolBytes)
+                        .write("peak_writers", memory.peakWriters)
+                        .write("peak_requested_bytes", memory.peakRequestedBytes)
+                        .write("peak_buffered_bytes", memory.peakBufferedBytes)
+                        .write("scale_downs", memory.scaleDowns)
+                        .write("forced_flushes", memory.forcedFlushes)
+                        .writeEnd();
+            }
+            json.writeStartArray("results");
+            for (TestCaseRunner.Result r : summary.results) {
+                json.writeStartObject()
+                        .write("file", new File(r.name).getName())
+                        .write("status", status(r))
+                        .write("wall_ms", millis(r.elapsedNanos));
+                CaseMetrics m = r.metrics;
+                if (m != null) {
+                    if (!r.cached) {
+                        json.write("generate_ms", millis(m.generateNanos))
+                                .write("parquet_ms", millis(m.parquetNanos))
+                                .write("json_ms", millis(m.jsonNanos));
+                    }
+                    json.write("records", m.records)
+                            .write("parquet_bytes", m.parquetBytes)
+                            .write("json_bytes", m.jsonBytes)
+                            .write("schema_bytes", m.schemaBytes)
+                            .write("row_groups", m.rowGroups)
+                            .write("min_row_group_bytes", m.minRowGroupBytes)
+                            .write("max_row_group_bytes", m.maxRowGroupBytes)
+                            .write("data_pages", m.dataPages)
+                            .write("dictionary_pages", m.dictionaryPages)
+                            .write("min_page_bytes", m.minPageBytes)
+                            .write("max_page_bytes", m.maxPageBytes)
+                            .write("avg_page_bytes", avgPageBytes(m));
+                    if (m.pipelined) {
+                        json.writeStartObject("pipeline");
+                        for (GenerationPipeline.StageStats stage : stages(m)) {
+                            json.write(stage.name + "_rec_per_s", Math.round(stage.recordsPerSecond()))
+                                    .write(stage.name + "_wait_ms", millis(stage.waitNanos))
+                                    .write(stage.name + "_avg_queue_depth", avgDepth(stage))
+                                    .write(stage.name + "_max_queue_depth", stage.maxDepth);
+                        }
+                        json.write("bottleneck", m.bottleneck()).writeEnd();
+                    }
+                }
+                if (r.error != null) {
+                    json.write("error", r.error.toString());
+                }
+                json.writeEnd();
+            }
+            json.writeEnd().writeEnd();
+            json.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    static void writeCsv(File file, TestCaseRunner.Summary summary) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            StringBuilder header = new StringBuilder();
+            for (String c : CSV_COLUMNS) {
+                header.append(header.length() > 0 ? "," : "").append(c);
+            }
+            out.println(header);
+            for (TestCaseRunner.Result r : summary.results) {
+                CaseMetrics m = r.metrics;
+                StringBuilder row = new StringBuilder();
+                row.append(new File(r.name).getName()).append(',').append(status(r))
+                        .append(',').append(millis(r.elapsedNanos));
+                if (m == null) {
+                    for (int i = 3; i < CSV_COLUMNS.length; i++) {
+                        row.append(',');
+                    }
+                } else {
+                    if (r.cached) {
+                        row.append(",,,");
+                    } else {
+                        row.append(',').append(millis(m.generateNanos))
+                                .append(',').append(millis(m.parquetNanos))
+                                .append(',').append(millis(m.jsonNanos));
+                    }
+                    row.append(',').append(m.records).append(',').append(m.parquetBytes)
+                            .append(',').append(m.jsonBytes).append(',').append(m.schemaBytes)
+                            .append(',').append(m.rowGroups).append(',').append(m.minRowGroupBytes)
+                            .append(',').append(m.maxRowGroupBytes).append(',').append(m.dataPages)
+                            .append(',').append(m.dictionaryPages).append(',').append(m.minPageBytes)
+                            .append(',').append(m.maxPageBytes).append(',').append(avgPageBytes(m));
+                    for (GenerationPipeline.StageStats stage : stages(m)) {
+                        if (m.pipelined) {
+                            row.append(',').append(Math.round(stage.recordsPerSecond()))
+                                    .append(',').append(millis(stage.waitNanos))
+                                    .append(',').append(avgDepth(stage)).append(',').append(stage.maxDepth);
+                        } else {
+                            for (int i = 0; i < STAGE_COLUMNS; i++) {
+                                row.append(',');
+                            }
+                        }
+                    }
+                    row.append(',');
+                    if (m.pipelined) {
+                        row.append(m.bottleneck());
+                    }
+                }
+                out.println(row);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    static String status(TestCaseRunner.Result r){
+        return r.error != null ? "failed" : r.cached ? "cached" : "generated";
+    }
+
+    private static long avgPageBytes(CaseMetrics m){
+        return m.dataPages > 0 ? m.totalPageBytes / m.dataPages : 0;
+    }
+
+    private static GenerationPipeline.StageStats[] stages(CaseMetrics m){
+        return new GenerationPipeline.StageStats[]{m.generateStage, m.parquetStage, m.jsonStage};
+    }
+
+    // two decimals are plenty for a queue of RING_SIZE slots
+    private static double avgDepth(GenerationPipeline.StageStats stage){
+        return Math.round(stage.avgDepth() * 100) / 100.0;
+    }
+
+    private static long millis(long nanos){
+        return nanos / 1000000;
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Writes one test case with several threads: the records are cut into row-group sized shards,
+ * each shard is generated into its own temporary .parquet/.json pair (plus .values, if the case has
+ * one), and the pairs are then stitched together in order. Every shard starts its value cycles at its first record, so the
+ * result holds the same records as a serial run (only the row group boundaries may differ).
+ *
+ * A resumable run records every finished shard in a journal next to the output and keeps the
+ * shards when it fails, so running the same case again only writes the missing shards.
+ */
+class ShardedGenerator {
+    private static final String PART_SUFFIX = ".part-";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final int numThreads;
+    private final boolean resumable;
+    private final ProgressMeter progress; // may be null
+
+    ShardedGenerator(int numThreads){
+        this(numThreads, false, null);
+    }
+
+    ShardedGenerator(int numThreads, boolean resumable, ProgressMeter progress){
+        this.numThreads = numThreads;
+        this.resumable = resumable;
+        this.progress = progress;
+    }
+
+    void generate(TestFileGenerator.TestFileName tfn, final MessageType schema, final TestFileGenerator.TestOptions options,
+                  final ArrayList<TestFileGenerator.VarProperties> propList, long shardRecords,
+                  final CaseMetrics metrics) throws IOException {
+        int numShards = (int) ((options.numRecords + shardRecords - 1) / shardRecords);
+        final ArrayList<File> parquetParts = new ArrayList<File>(numShards);
+        final ArrayList<File> jsonParts = new ArrayList<File>(numShards);
+        final ArrayList<File> valuesParts = new ArrayList<File>(numShards);
+        final boolean values = TestFileGenerator.writesValuesSidecar(options, propList);
+        for (int s = 0; s < numShards; s++) {
+            parquetParts.add(new File(String.format("%s%s%05d", tfn.getNameParquet(), PART_SUFFIX, s)));
+            jsonParts.add(new File(String.format("%s%s%05d", tfn.getNameJSON(), PART_SUFFIX, s)));
+            valuesParts.add(new File(String.format("%s%s%05d", tfn.getNameValues(), PART_SUFFIX, s)));
+        }
+
+        final File journal = new File(tfn.getNameParquet() + JOURNAL_SUFFIX);
+        final String header = "key " + TestCaseCache.computeKey(options, propList) + " shard-records " + shardRecords;
+        HashSet<Integer> done = new HashSet<Integer>();
+        if (resumable) {
+            done = readJournal(journal, header, parquetParts, jsonParts, valuesParts);
+            if (done.isEmpty()) {
+                appendLine(journal, header, false);
+            } else {
+                System.out.println("Resuming " + tfn.getNameParquet() + ": " + done.size() + " of " + numShards +
+                        " shards already written");
+            }
+        }
+
+        boolean succeeded = false;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, numShards));
+        try {
+            ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(numShards);
+            for (int s = 0; s < numShards; s++) {
+                final int shard = s;
+                final long first = s * shardRecords;
+                final long count = Math.min(shardRecords, options.numRecords - first);
+                if (done.contains(shard)) {
+                    if (progress != null) {
+                        progress.resumed(count);
+                    }
+                    continue;
+                }
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        // left over from an interrupted run, the writer won't overwrite it
+                        deleteWithChecksum(parquetParts.get(shard));
+                        jsonParts.get(shard).delete();
+                        valuesParts.get(shard).delete();
+                        ArrayList<TestFileGenerator.VarProperties> shardProps =
+                                new ArrayList<TestFileGenerator.VarProperties>(propList.size());
+                        for (TestFileGenerator.VarProperties vp : propList) {
+                            shardProps.add(vp.copyAt(first));
+                        }
+                        TestFileGenerator.writeRecords(parquetParts.get(shard), jsonParts.get(shard),
+                                values ? valuesParts.get(shard) : null, schema, options, shardProps, count,
+                                progress, metrics);
+                        if (resumable) {
+                            appendLine(journal, String.format("shard %d %d %d %d", shard,
+                                    parquetParts.get(shard).length(), jsonParts.get(shard).length(),
+                                    valuesParts.get(shard).length()), true);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+
+            long t0 = System.nanoTime();
+            ArrayList<Path> parts = new ArrayList<Path>(numShards);
+            for (File f : parquetParts) {
+                parts.add(TestFileGenerator.outputPath(f, options));
+            }
+            new ParquetFileMerger(LocalChannelFileSystem.sharedConfiguration()).merge(parts,
+                    TestFileGenerator.outputPath(new File(tfn.getNameParquet()), options));
+            long t1 = System.nanoTime();
+            concatenate(jsonParts, new File(tfn.getNameJSON()));
+            if (values) {
+                ValuesSidecarWriter.concatenate(valuesParts, new File(tfn.getNameValues()));
+            }
+            metrics.addStageTimes(0, t1 - t0, System.nanoTime() - t1);
+            succeeded = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing shards of " + tfn.getNameParquet(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to write a shard of " + tfn.getNameParquet(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+            // keep what was written for the next attempt
+            if (succeeded || !resumable) {
+                for (int s = 0; s < numShards; s++) {
+                    deleteWithChecksum(parquetParts.get(s));
+                    jsonParts.get(s).delete();
+                    valuesParts.get(s).delete();
+                }
+                journal.delete();
+            }
+        }
+    }
+
+    // shards the journal lists as finished, provided it belongs to the same case and their files are intact
+    private static HashSet<Integer> readJournal(File journal, String header, ArrayList<File> parquetParts,
+                                                ArrayList<File> jsonParts, ArrayList<File> valuesParts)
+            throws IOException {
+        HashSet<Integer> done = new HashSet<Integer>();
+        if (!journal.isFile()) {
+            return done;
+        }
+        BufferedReader in = new BufferedReader(new FileReader(journal));
+        try {
+            if (!header.equals(in.readLine())) {
+                return done; // written for other parameters, start over
+            }
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] fields = line.split(" ");
+                if (fields.length != 5 || !fields[0].equals("shard")) {
+                    break; // torn last line
+                }
+                int shard = Integer.parseInt(fields[1]);
+                if (shard < parquetParts.size()
+                        && parquetParts.get(shard).length() == Long.parseLong(fields[2])
+                        && jsonParts.get(shard).length() == Long.parseLong(fields[3])
+                        && valuesParts.get(shard).length() == Long.parseLong(fields[4])) {
+                    done.add(shard);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return done;
+    }
+
+    // one line per finished shard, forced to disk so a crash can't lose a shard the journal claims
+    private static synchronized void appendLine(File journal, String line, boolean append) throws IOException {
+        FileOutputStream out = new FileOutputStream(journal, append);
+        try {
+            out.write((line + "\n").getBytes("UTF-8"));
+            out.getChannel().force(false);
+        } finally {
+            out.close();
+        }
+    }
+
+    static void concatenate(ArrayList<File> parts, File target) throws IOException {
+        FileChannel out = new FileOutputStream(target).getChannel();
+        try {
+            for (File part : parts) {
+                FileChannel in = new FileInputStream(part).getChannel();
+                try {
+                    long size = in.size();
+                    for (long pos = 0; pos < size; ) {
+                        pos += in.transferTo(pos, size - pos, out);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // with --checksum-fs, the local hadoop file system leaves a .crc file next to everything it writes
+    private static void deleteWithChecksum(File f){
+        f.delete();
+        new File(f.getParentFile(), "." + f.getName() + ".crc").delete();
+    }
+}
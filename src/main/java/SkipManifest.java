@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * The expected outcome of predicate pushdown on a test file with ordered (sorted, clustered or
+ * range-partitioned) columns, for checking that a reader skips what it can.
+ *
+ * For every such required or optional column and every target selectivity s, the predicate is
+ * "column < v" with v the value below which about a fraction s of the values lie. The manifest
+ * holds the number of records that match, and the row groups a reader can skip from the column
+ * chunk statistics alone: those whose min is at least v, and those holding nulls only. It is read
+ * back from the written file's footer, so it describes the row groups the writer actually made.
+ * Parquet 1.8 has no page index, so there is nothing to say about pages.
+ *
+ * Written next to the test files as "<name>.skip.json".
+ */
+class SkipManifest {
+
+    /** Write the manifest of a freshly generated test case */
+    static void write(TestFileGenerator.TestFileName tfn, TestFileGenerator.TestOptions options,
+                      ArrayList<TestFileGenerator.VarProperties> propList) throws IOException {
+        File parquet = new File(tfn.getNameParquet());
+        ParquetMetadata footer = ParquetFileReader.readFooter(LocalChannelFileSystem.sharedConfiguration(),
+                new Path(parquet.toURI()), ParquetMetadataConverter.NO_FILTER);
+        List<BlockMetaData> blocks = footer.getBlocks();
+
+        JsonGeneratorFactory factory = Json.createGeneratorFactory(
+                Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+        OutputStream out = new FileOutputStream(tfn.getNameSkipManifest());
+        try {
+            JsonGenerator json = factory.createGenerator(out);
+            json.writeStartObject()
+                    .write("file", parquet.getName())
+                    .write("records", options.numRecords)
+                    .write("row_groups", blocks.size())
+                    .writeStartArray("predicates");
+            for (int col = 0; col < propList.size(); col++) {
+                TestFileGenerator.VarProperties vp = propList.get(col);
+                if (!covers(vp)) {
+                    continue;
+                }
+                boolean optional = vp.repetition.equals("optional");
+                PrimitiveTypeName type = TestFileGenerator.primitiveType(vp.type).getPrimitiveTypeName();
+                for (double selectivity : options.skipSelectivities) {
+                    long k = vp.distribution.quantile(selectivity);
+                    Comparable<?> threshold = vp.distribution.value(type, k);
+                    ArrayList<Integer> skipped = new ArrayList<Integer>();
+                    for (int b = 0; b < blocks.size(); b++) {
+                        if (canSkip(blocks.get(b).getColumns().get(col), threshold)) {
+                            skipped.add(b);
+                        }
+                    }
+
+                    json.writeStartObject()
+                            .write("column", TestFileGenerator.VAR_NAME_PREFIX + col)
+                            .write("type", type.name())
+                            .write("op", "lt");
+                    writeValue(json, threshold);
+                    json.write("target_selectivity", selectivity)
+                            .write("matching_records", vp.distribution.countBelow(optional, options.numRecords, k))
+                            .write("skippable_row_groups", skipped.size())
+                            .writeStartArray("skipped_row_group_indexes");
+                    for (int b : skipped) {
+                        json.write(b);
+                    }
+                    json.writeEnd().writeEnd();
+                }
+            }
+            json.writeEnd().writeEnd();
+            json.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeValue(JsonGenerator json, Comparable<?> value){
+        if (value instanceof Integer || value instanceof Long) {
+            json.write("value", ((Number) value).longValue());
+        } else if (value instanceof Float || value instanceof Double) {
+            json.write("value", ((Number) value).doubleValue());
+        } else {
+            json.write("value", ((Binary) value).toStringUsingUTF8());
+        }
+    }
+
+    // ordered columns only: with other distributions every row group spans about the whole value range.
+    // int96 and fixed_len_byte_array statistics compare signed bytes in 1.8, which isn't their value order
+    private static boolean covers(TestFileGenerator.VarProperties vp){
+        if (vp.distribution == null || !vp.distribution.isOrdered() || vp.repetition.equals("repeated")) {
+            return false;
+        }
+        switch (TestFileGenerator.primitiveType(vp.type).getPrimitiveTypeName()) {
+            case BOOLEAN:
+            case INT96:
+            case FIXED_LEN_BYTE_ARRAY:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // no value of the chunk can be below the threshold
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static boolean canSkip(ColumnChunkMetaData chunk, Comparable threshold){
+        Statistics stats = chunk.getStatistics();
+        if (stats == null || stats.isEmpty()) {
+            return false;
+        }
+        if (!stats.hasNonNullValue()) {
+            return stats.getNumNulls() == chunk.getValueCount();
+        }
+        return stats.genericGetMin().compareTo(threshold) >= 0;
+    }
+}
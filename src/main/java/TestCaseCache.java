@@ -0,0 +1,183 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Skips regenerating test cases whose files are already up to date.
+ *
+ * Every case gets a key: a SHA-256 over everything its output depends on (options, schema,
+ * value sets and GENERATOR_VERSION). After a case is written, the key is stored next to its
+ * files as ".<name>.key", together with the length and CRC32 of each file. A later run reuses
+ * the files only if the stored key matches and all of them (the triplet, plus the skip manifest
+ * and .values sidecar if the case has them, or every file of a dataset) are still intact.
+ */
+class TestCaseCache {
+    /** Bump whenever a change to the generator changes the files it writes */
+    static final String GENERATOR_VERSION = "2";
+
+    private static final String KEY_PREFIX = "key ";
+
+    private final boolean force;
+
+    /** With force, every case counts as stale but the keys are still recorded for the next run */
+    TestCaseCache(boolean force){
+        this.force = force;
+    }
+
+    /** True if the case's files were written for the same key and have not been touched since */
+    boolean isFresh(TestFileGenerator.TestCase tc){
+        File keyFile = keyFile(tc);
+        if (force || !keyFile.isFile()) {
+            return false;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(keyFile));
+            try {
+                String line = in.readLine();
+                if (line == null || !line.equals(KEY_PREFIX + computeKey(tc))) {
+                    return false;
+                }
+                for (File f : outputs(tc)) {
+                    line = in.readLine();
+                    if (line == null || !f.isFile() || !line.equals(fingerprint(f))) {
+                        return false;
+                    }
+                }
+                return in.readLine() == null; // a dataset may have lost files
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false; // unreadable, just regenerate
+        }
+    }
+
+    /** Forget the case before it is regenerated, so a failed run can't leave a stale key behind */
+    void invalidate(TestFileGenerator.TestCase tc){
+        keyFile(tc).delete();
+    }
+
+    /** Record the key of a freshly generated case */
+    void store(TestFileGenerator.TestCase tc) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(KEY_PREFIX).append(computeKey(tc)).append('\n');
+        for (File f : outputs(tc)) {
+            sb.append(fingerprint(f)).append('\n');
+        }
+        FileWriter out = new FileWriter(keyFile(tc));
+        try {
+            out.write(sb.toString());
+        } finally {
+            out.close();
+        }
+    }
+
+    static String computeKey(TestFileGenerator.TestCase tc){
+        return computeKey(tc.options, tc.propList);
+    }
+
+    static String computeKey(TestFileGenerator.TestOptions o, ArrayList<TestFileGenerator.VarProperties> propList){
+        StringBuilder sb = new StringBuilder();
+        sb.append("generator=").append(GENERATOR_VERSION).append('\n');
+        sb.append("records=").append(o.numRecords).append('\n');
+        sb.append("compactJson=").append(o.compactJson).append('\n');
+        // row group boundaries depend on whether the file was written in shards
+        sb.append("sharded=").append(o.shardThreads > 1).append('\n');
+        sb.append("codec=").append(o.codec).append('\n');
+        sb.append("dictionary=").append(o.enableDictionary).append('\n');
+        sb.append("writerVersion=").append(o.writerVersion).append('\n');
+        sb.append("validating=").append(o.validating).append('\n');
+        sb.append("heapBudget=").append(o.heapBudget).append('\n'); // sets the row group size
+        if (o.storage != null) {
+            sb.append("storage=").append(o.storage.numColumns).append(',').append(o.storage.numBlocks)
+                    .append(',').append(o.storage.numPagesPerBlock)
+                    .append(o.storage.pageEnds != null ? ",exact" : "").append('\n');
+        }
+        if (o.skipSelectivities != null) {
+            sb.append("skip=").append(Arrays.toString(o.skipSelectivities)).append('\n');
+        }
+        if (o.dataset != null) {
+            sb.append("dataset=").append(Arrays.toString(o.dataset.partitionColumns)).append(',')
+                    .append(o.dataset.numFiles).append(',').append(o.dataset.sizeSkew).append('\n');
+        }
+        if (TestFileGenerator.writesValuesSidecar(o, propList)) {
+            sb.append("valuesSidecar=true\n");
+        }
+        sb.append(TestFileGenerator.emitFlatSchemaString(propList)).append('\n');
+        for (TestFileGenerator.VarProperties vp : propList) {
+            sb.append(vp.type).append(':');
+            if (vp.distribution != null) {
+                sb.append(vp.distribution);
+            }
+            for (String v : vp.valueSet) {
+                sb.append(v.length()).append('#').append(v); // length-prefixed, values may contain anything
+            }
+            sb.append('\n');
+        }
+        return sha256(sb.toString());
+    }
+
+    /** Every file the case writes, except the key file */
+    static ArrayList<File> outputs(TestFileGenerator.TestCase tc){
+        ArrayList<File> files = new ArrayList<File>(4);
+        files.addAll(TestFileGenerator.parquetFiles(tc.fileName, tc.options));
+        if (tc.options.dataset != null) {
+            files.addAll(DatasetGenerator.summaryFiles(new File(tc.fileName.getNameDataset())));
+        }
+        files.add(new File(tc.fileName.getNameSchema()));
+        files.add(new File(tc.fileName.getNameJSON()));
+        if (tc.options.skipSelectivities != null) {
+            files.add(new File(tc.fileName.getNameSkipManifest()));
+        }
+        if (TestFileGenerator.writesValuesSidecar(tc.options, tc.propList)) {
+            files.add(new File(tc.fileName.getNameValues()));
+        }
+        return files;
+    }
+
+    // the local hadoop file system names its checksum files the same way
+    static File keyFile(TestFileGenerator.TestCase tc){
+        File parquet = new File(tc.fileName.getNameParquet());
+        String name = parquet.getName();
+        return new File(parquet.getParentFile(), "." + name.substring(0, name.length() - ".parquet".length()) + ".key");
+    }
+
+    private static String fingerprint(File f) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        InputStream in = new FileInputStream(f);
+        try {
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                crc.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return f.getName() + " " + f.length() + " " + Long.toHexString(crc.getValue());
+    }
+
+    private static String sha256(String s){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE has SHA-256
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
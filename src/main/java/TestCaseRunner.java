@@ -0,0 +1,223 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs test case generation jobs, either one at a time or on a bounded pool of worker threads.
+ * The most expensive cases are started first so they don't end up as the long tail.
+ * With a cache, cases whose files are still up to date are skipped.
+ */
+public class TestCaseRunner {
+
+    /** Outcome of a single test case */
+    static class Result{
+        String name;
+        long elapsedNanos;
+        Throwable error;    // null on success
+        boolean cached;     // files were up to date, nothing was generated
+        CaseMetrics metrics; // null on failure
+
+        Result(String name, long elapsedNanos, Throwable error){
+            this.name = name;
+            this.elapsedNanos = elapsedNanos;
+            this.error = error;
+        }
+    }
+
+    /** Outcome of a whole run */
+    static class Summary{
+        int numThreads;
+        long wallNanos;
+        long jobNanos;      // sum of per-job times, i.e. roughly what a serial run would take
+        ArrayList<Result> results = new ArrayList<Result>();
+        ArrayList<Result> failures = new ArrayList<Result>();
+        int cacheHits;
+        boolean cacheEnabled;
+        WriterMemoryManager.Stats memory;
+
+        void print(PrintStream out){
+            for (Result r : failures) {
+                out.println("FAILED " + r.name + ": " + r.error);
+                r.error.printStackTrace(System.err);
+            }
+            out.println(String.format("Generated %d test cases (%d failed) on %d thread(s): wall %.2fs, " +
+                            "sum of job times %.2fs (serial estimate), effective parallelism %.2fx",
+                    results.size(), failures.size(), numThreads, wallNanos / 1e9, jobNanos / 1e9,
+                    wallNanos > 0 ? (double) jobNanos / wallNanos : 0.0));
+            if (cacheEnabled) {
+                out.println(String.format("Cache: %d hit(s), %d miss(es)", cacheHits, results.size() - cacheHits));
+            }
+            if (memory != null) {
+                out.println("Writer memory: " + memory);
+            }
+        }
+    }
+
+    /** One of several balanced subsets of the cases, with the estimated costs it was balanced by */
+    static class Shard{
+        int index;          // 1-based
+        int count;
+        ArrayList<TestFileGenerator.TestCase> cases = new ArrayList<TestFileGenerator.TestCase>();
+        int totalCases;
+        long cost;
+        long totalCost;
+
+        @Override
+        public String toString(){
+            return String.format("Shard %d/%d: %d of %d test cases, estimated cost %,d of %,d",
+                    index, count, cases.size(), totalCases, cost, totalCost);
+        }
+    }
+
+    private final int numThreads;
+    private final TestCaseCache cache; // null: always regenerate
+
+    TestCaseRunner(int numThreads){
+        this(numThreads, null);
+    }
+
+    TestCaseRunner(int numThreads, TestCaseCache cache){
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + numThreads);
+        }
+        this.numThreads = numThreads;
+        this.cache = cache;
+    }
+
+    Summary run(List<TestFileGenerator.TestCase> cases){
+        // biggest jobs first
+        ArrayList<TestFileGenerator.TestCase> ordered = new ArrayList<TestFileGenerator.TestCase>(cases);
+        Collections.sort(ordered, new Comparator<TestFileGenerator.TestCase>() {
+            @Override
+            public int compare(TestFileGenerator.TestCase a, TestFileGenerator.TestCase b) {
+                return Long.compare(b.estimateCost(), a.estimateCost());
+            }
+        });
+
+        Summary summary = new Summary();
+        summary.numThreads = numThreads;
+        summary.cacheEnabled = cache != null;
+        long start = System.nanoTime();
+
+        if (numThreads == 1) {
+            for (TestFileGenerator.TestCase tc : ordered) {
+                summary.results.add(runOne(tc));
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+            try {
+                ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>(ordered.size());
+                for (final TestFileGenerator.TestCase tc : ordered) {
+                    futures.add(pool.submit(new Callable<Result>() {
+                        @Override
+                        public Result call() {
+                            return runOne(tc);
+                        }
+                    }));
+                }
+                for (Future<Result> f : futures) {
+                    summary.results.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for test cases", e);
+            } catch (ExecutionException e) {
+                // runOne catches everything, so this is a bug
+                throw new RuntimeException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        summary.wallNanos = System.nanoTime() - start;
+        summary.memory = WriterMemoryManager.global().stats();
+        for (Result r : summary.results) {
+            summary.jobNanos += r.elapsedNanos;
+            if (r.error != null) {
+                summary.failures.add(r);
+            }
+            if (r.cached) {
+                summary.cacheHits++;
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * The index-th (1-based) of count subsets of the cases with about the same total estimated cost,
+     * e.g. for one of several CI jobs. Biggest cases go first, each to the currently cheapest subset,
+     * so every job computes the same split.
+     */
+    static Shard selectShard(List<TestFileGenerator.TestCase> cases, int index, int count){
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard must be i/K with 1 <= i <= K, got " + index + "/" + count);
+        }
+        ArrayList<TestFileGenerator.TestCase> ordered = new ArrayList<TestFileGenerator.TestCase>(cases);
+        Collections.sort(ordered, new Comparator<TestFileGenerator.TestCase>() {
+            @Override
+            public int compare(TestFileGenerator.TestCase a, TestFileGenerator.TestCase b) {
+                int c = Long.compare(b.estimateCost(), a.estimateCost());
+                // ties by name, so the split doesn't depend on the plan's order
+                return c != 0 ? c : a.fileName.getNameParquet().compareTo(b.fileName.getNameParquet());
+            }
+        });
+
+        long[] load = new long[count];
+        Shard shard = new Shard();
+        shard.index = index;
+        shard.count = count;
+        shard.totalCases = ordered.size();
+        for (TestFileGenerator.TestCase tc : ordered) {
+            int cheapest = 0;
+            for (int s = 1; s < count; s++) {
+                if (load[s] < load[cheapest]) {
+                    cheapest = s;
+                }
+            }
+            load[cheapest] += tc.estimateCost();
+            shard.totalCost += tc.estimateCost();
+            if (cheapest == index - 1) {
+                shard.cases.add(tc);
+            }
+        }
+        shard.cost = load[index - 1];
+        return shard;
+    }
+
+    private Result runOne(TestFileGenerator.TestCase tc){
+        long start = System.nanoTime();
+        Throwable error = null;
+        boolean cached = false;
+        CaseMetrics metrics = null;
+        try {
+            if (cache != null && cache.isFresh(tc)) {
+                cached = true;
+                metrics = new CaseMetrics();
+                metrics.readFiles(tc.fileName, tc.options);
+            } else {
+                if (cache != null) {
+                    cache.invalidate(tc);
+                }
+                metrics = tc.generate();
+                if (cache != null) {
+                    cache.store(tc);
+                }
+            }
+        } catch (Throwable e) {
+            // e.g. an OutOfMemoryError of one big case shouldn't take down the whole run
+            error = e;
+            metrics = null;
+        }
+        Result result = new Result(tc.fileName.getNameParquet(), System.nanoTime() - start, error);
+        result.cached = cached;
+        result.metrics = metrics;
+        return result;
+    }
+}
@@ -2,22 +2,26 @@
  * Created by liza on 7/6/16.
  */
 
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.apache.parquet.schema.MessageType;       // schema definition
 import org.apache.parquet.schema.MessageTypeParser; // convert string to schema
+import org.apache.parquet.schema.PrimitiveType;
 import org.apache.hadoop.fs.Path;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 /*import java.nio.file.Files;
 import java.nio.file.FileSystems;*/
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import javax.json.Json;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.JsonWriter;
-import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 public class TestFileGenerator {
@@ -28,9 +32,31 @@ public class TestFileGenerator {
         int numColumns;
         long numRecords;
         RepetitionPattern repMask;
+        boolean compactJson; // leave null fields out of the .json sidecar
+        boolean pipelined;   // generate, encode and write JSON on separate threads
+        int shardThreads = 1; // write row-group sized shards of the file concurrently
+        boolean checksumFs;  // write through hadoop's LocalFileSystem (with .crc files) instead of a FileChannel
+        boolean valuesSidecar; // also write the binary .values sidecar, if the schema is flat
+        int compressionThreads; // > 0: compress pages on this many threads besides the writing thread
+
+        // compression and encodings
+        CompressionCodecName codec = CompressionCodecName.UNCOMPRESSED;
+        boolean enableDictionary = false; // plain encoding
+        WriterVersion writerVersion = WriterVersion.PARQUET_1_0;
+        boolean validating = false;
+
+        // bytes of heap the writers may use; > 0 turns on the resumable, bounded-memory scale mode
+        long heapBudget;
+
+        // seeded random values; null to cycle through the value sets in valueMap
+        ValueDistribution distribution;
+
+        // target selectivities of the predicates in the .skip.json manifest; null for none
+        double[] skipSelectivities;
+
+        // a partitioned directory of files instead of a single .parquet; null for a single file
+        DatasetLayout dataset;
 
-        // compression;
-        // encodings;
         StorageDimensions storage;
 
         TestOptions(String ft, boolean rt, int nc, long nr, RepetitionPattern rp, StorageDimensions sd){
@@ -45,6 +71,34 @@ public class TestFileGenerator {
         TestOptions(String ft, boolean rt, int nc, long nr, RepetitionPattern rp){
             this(ft, rt, nc, nr, rp,  null);
         }
+
+    }
+
+    // One unit of work: a test case file triplet and the parameters to generate it from
+    static class TestCase{
+        TestFileName fileName;
+        TestOptions options;
+        ArrayList<VarProperties> propList;
+
+        TestCase(TestFileName tfn, TestOptions to, ArrayList<VarProperties> pl){
+            fileName = tfn;
+            options = to;
+            propList = pl;
+        }
+
+        CaseMetrics generate() throws IOException {
+            return generateTestCase(fileName, options, propList);
+        }
+
+        // rough amount of work: records x bytes per record, where each column contributes its type
+        // width times its average list length; used to schedule and balance the cases
+        long estimateCost(){
+            long recordSize = 0;
+            for (VarProperties vp : propList) {
+                recordSize += vp.estimateSize();
+            }
+            return options.numRecords * Math.max(1, recordSize);
+        }
     }
 
     static class StorageDimensions{
@@ -53,6 +107,8 @@ public class TestFileGenerator {
         int numColumns;
         int numBlocks;
         int numPagesPerBlock;
+        // exact dimensions: records after which the pages end, see PageLayout; null to estimate
+        long[] pageEnds;
 
         StorageDimensions(int columns, int blocks, int pages){
             numColumns = columns;
@@ -70,18 +126,69 @@ public class TestFileGenerator {
         }
     }
 
+    // how DatasetGenerator lays a case out
+    static class DatasetLayout{
+        int[] partitionColumns; // positions in the property list, outermost directory level first
+        int numFiles;           // at least one per partition
+        double sizeSkew;        // 0: files of a partition get equal shares, > 0: the i-th gets 1/i^sizeSkew
+
+        DatasetLayout(int[] columns, int files, double skew){
+            partitionColumns = columns;
+            numFiles = files;
+            sizeSkew = skew;
+        }
+    }
+
     /** --------- Lists of parameter values for the test cases ---------- */
 
     /** Schema parameters */
-    // Property definitions: type
-    // TODO: add "group" for nested types
-    // TODO: map logical types to raw parquet types (int94, date, time, etc.)
+    // Property definitions: type; see NestedColumn for nested columns
     private static final ArrayList<String> rawTypeOptions = new ArrayList<String>(
             Arrays.asList("boolean", "int32", "int64", "float", "double", "binary")
     );
+    // logical types, rotated through separately so that the raw type cases stay as they are
+    private static final ArrayList<String> logicalTypeOptions = new ArrayList<String>(
+            Arrays.asList("date", "timestamp_millis", "timestamp_micros", "int96",
+                    "decimal32", "decimal64", "decimal", "utf8", "enum")
+    );
+    // schema declaration of each type: physical type, then the annotation if any.
+    // parquet 1.8 has no TIMESTAMP_MICROS annotation, so those are plain int64 microseconds
+    private static final HashMap<String, String[]> typeDeclarations;
+    private static final HashMap<String, PrimitiveType> primitiveTypes;
+    static{
+        typeDeclarations = new HashMap<String, String[]>();
+        for (String type : rawTypeOptions) {
+            typeDeclarations.put(type, new String[]{type, ""});
+        }
+        typeDeclarations.put("date", new String[]{"int32", "(DATE)"});
+        typeDeclarations.put("timestamp_millis", new String[]{"int64", "(TIMESTAMP_MILLIS)"});
+        typeDeclarations.put("timestamp_micros", new String[]{"int64", ""});
+        typeDeclarations.put("int96", new String[]{"int96", ""});
+        typeDeclarations.put("decimal32", new String[]{"int32", "(DECIMAL(9,2))"});
+        typeDeclarations.put("decimal64", new String[]{"int64", "(DECIMAL(18,4))"});
+        typeDeclarations.put("decimal", new String[]{"fixed_len_byte_array(16)", "(DECIMAL(38,9))"});
+        typeDeclarations.put("utf8", new String[]{"binary", "(UTF8)"});
+        typeDeclarations.put("enum", new String[]{"binary", "(ENUM)"});
+
+        primitiveTypes = new HashMap<String, PrimitiveType>();
+        for (Map.Entry<String, String[]> e : typeDeclarations.entrySet()) {
+            String[] d = e.getValue();
+            primitiveTypes.put(e.getKey(), MessageTypeParser.parseMessageType(
+                    "message m { required " + d[0] + " v " + d[1] + "; }").getType(0).asPrimitiveType());
+        }
+    }
+
+    // the parquet type a column of the given type is declared with
+    static PrimitiveType primitiveType(String type){
+        PrimitiveType primitive = primitiveTypes.get(type);
+        if (primitive == null) {
+            throw new IllegalArgumentException("Unsupported value type: " + type);
+        }
+        return primitive;
+    }
 
      // Property definitions: repetition
-    private enum RepetitionPattern {
+    enum RepetitionPattern {
         ALL_REQUIRED, ALL_OPTIONAL, ALL_REPEATED, MIX_REQUIRED_OPTIONAL, MIX_REPEATED_REQUIRED, MIX_OPTIONAL_REPEATED
     }
     private static final HashMap<RepetitionPattern, String[]> repetitionMasks;
@@ -100,7 +207,7 @@ public class TestFileGenerator {
     // TODO: look up edge values
     // List of sample values (pool) for each data type. Last element is always a Null-value.
     // any test set must be annotated with its type first, followed by a dash "binary-bigString"
-    private static final HashMap<String, String[]> valueMap;
+    static final HashMap<String, String[]> valueMap;
     static{
         valueMap = new HashMap<String, String[]>();
         valueMap.put("boolean", new String[]{"true", "false", ""});
@@ -110,35 +217,140 @@ public class TestFileGenerator {
         valueMap.put("double", new String[]{"0.0", "-1.12", "71234.56", "-5.00000000011", ""});
         valueMap.put("binary", new String[]{"@","cow says \'Mooo\'", "12345", "true", ""});
         valueMap.put("binary-bigString", new String[]{"This is a pretty big string to try get a split across a page boundary", ""});
+        // logical types, in the text form of ValueFormat
+        valueMap.put("date", new String[]{"2016-07-06", "1970-01-01", "1969-12-31", "9999-12-31", ""});
+        valueMap.put("timestamp_millis", new String[]{"2016-07-06T12:34:56.789", "1970-01-01T00:00:00.000",
+                "1969-12-31T23:59:59.999", ""});
+        valueMap.put("timestamp_micros", new String[]{"1467808496789012", "0", "-1", ""});
+        valueMap.put("int96", new String[]{"2016-07-06T12:34:56.123456789", "1970-01-01T00:00:00.000000000",
+                "1899-12-31T23:59:59.999999999", ""});
+        valueMap.put("decimal32", new String[]{"0.00", "1234567.89", "-9999999.99", ""});
+        valueMap.put("decimal64", new String[]{"0.0000", "12345678901234.5678", "-0.0001", ""});
+        valueMap.put("decimal", new String[]{"1.000000000", "-0.500000000", "12345678901234567890.123456789",
+                "-99999999999999999999999999999.999999999", ""});
+        valueMap.put("utf8", new String[]{"caf\u00e9", "\u65e5\u672c\u8a9e", "A\u0308", "plain", ""});
+        valueMap.put("enum", new String[]{"RED", "GREEN", "BLUE", ""});
     }
 
     // convert value set name to a parquet type
-    private static String extractType(String valueSetName){
+    static String extractType(String valueSetName){
         String[] parts = valueSetName.split("-");
         return parts[0];
     }
 
     private static final int[] repeatedTypeSizes = new int[]{1, 3, 20, 0}; // test a very large size separately
+    private static final int REPEATED_CYCLE_VALUES = sum(repeatedTypeSizes); // values per cycle of list sizes
+    private static final int AVG_REPEATED_SIZE = REPEATED_CYCLE_VALUES / repeatedTypeSizes.length;
+
+    static int sum(int[] values){
+        int total = 0;
+        for (int v : values) {
+            total += v;
+        }
+        return total;
+    }
+
+    // number of records generated and written at a time
+    static final int BATCH_SIZE = 1024;
+    // values per batch over all columns: wide schemas get fewer rows, so batch memory doesn't grow with the width
+    static final int BATCH_VALUES = 1 << 20;
+
+    // wide schemas
+    private static final int WIDE_RECORDS = 128; // of the wide-schema mode
+    private static final int WIDE_COLUMNS = 1024;
+    private static final int MIN_WIDE_PAGE_SIZE = 1024;
+    // held on to, so that a level set on it sticks
+    private static final Logger COLUMN_CHUNK_LOG = Logger.getLogger("org.apache.parquet.hadoop.ColumnChunkPageWriteStore");
+
+    // row groups of the scale mode
+    private static final long MIN_ROW_GROUP_SIZE = 1 << 20;
+    private static final long PROGRESS_INTERVAL_MILLIS = 10000;
 
 
     /** ------------ Generative Routines ----------- */
 
     /** Setup test parameter sets and generate test case files */
-    // TODO: support nested types
     public static void main(String args[]){
 
         // Class.forName("org.codehaus.jackson.type.JavaType"); // used this to debug maven dependencies
 
-        // test Primitive Types
-        ArrayList<TestOptions> options = new ArrayList<TestOptions>();
-        // TODO: 5 == maximum number of values in any range - generalize
-        for (int i = 0; i < rawTypeOptions.size(); i++) {
-            options.add(new TestOptions(rawTypeOptions.get(i), false, 1, 1, RepetitionPattern.ALL_REQUIRED));
-            options.add(new TestOptions(rawTypeOptions.get(i), false, 1, 5, RepetitionPattern.ALL_OPTIONAL));
-            options.add(new TestOptions(rawTypeOptions.get(i), false, 2, 5, RepetitionPattern.MIX_REQUIRED_OPTIONAL));
+        int numThreads = 1; // serial by default
+        boolean compactJson = false;
+        boolean pipelined = false;
+        int shardThreads = 1;
+        boolean checksumFs = false;
+        boolean valuesSidecar = false;
+        int compressionThreads = 0; // compress pages on the writing thread
+        boolean codecMatrix = false;
+        int codecRepeats = 5;   // timed passes of the codec matrix, after one warm-up pass
+        boolean force = false; // regenerate even if the files are up to date
+        long scaleRecords = 0; // > 0: generate a single big file of this many records instead
+        int wideColumns = 0;   // > 0: generate a single file with this many columns instead
+        long heapBudget = Runtime.getRuntime().maxMemory() / 2;
+        float memoryPoolRatio = WriterMemoryManager.DEFAULT_POOL_RATIO; // of the heap, for all parquet writers together
+        boolean verify = false; // read every file back and compare it to its sidecar
+        int maxMismatches = 10; // reported per file
+        String planFile = null; // default: the built-in plan
+        int shardIndex = 1;     // generate the shardIndex-th of shardCount balanced subsets of the cases
+        int shardCount = 1;
+        int daemonPort = -1;    // >= 0: serve generation requests on this port instead (0: any free port)
+        long cacheBudget = 1L << 30; // disk budget of the daemon's files
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                numThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--json-compact")) {
+                compactJson = true;
+            } else if (args[i].equals("--pipeline")) {
+                pipelined = true;
+            } else if (args[i].equals("--shard-threads") && i + 1 < args.length) {
+                shardThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--checksum-fs")) {
+                checksumFs = true;
+            } else if (args[i].equals("--values-sidecar")) {
+                valuesSidecar = true;
+            } else if (args[i].equals("--compression-threads") && i + 1 < args.length) {
+                compressionThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--codec-matrix")) {
+                codecMatrix = true;
+            } else if (args[i].equals("--codec-repeats") && i + 1 < args.length) {
+                codecRepeats = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--force")) {
+                force = true;
+            } else if (args[i].equals("--scale") && i + 1 < args.length) {
+                scaleRecords = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--wide") && i + 1 < args.length) {
+                wideColumns = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--heap-budget-mb") && i + 1 < args.length) {
+                heapBudget = Long.parseLong(args[++i]) << 20;
+            } else if (args[i].equals("--memory-pool-ratio") && i + 1 < args.length) {
+                memoryPoolRatio = Float.parseFloat(args[++i]);
+            } else if (args[i].equals("--verify")) {
+                verify = true;
+            } else if (args[i].equals("--verify-mismatches") && i + 1 < args.length) {
+                maxMismatches = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--plan") && i + 1 < args.length) {
+                planFile = args[++i];
+            } else if (args[i].equals("--daemon") && i + 1 < args.length) {
+                daemonPort = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache-budget-mb") && i + 1 < args.length) {
+                cacheBudget = Long.parseLong(args[++i]) << 20;
+            } else if (args[i].equals("--shard") && i + 1 < args.length) {
+                String[] shard = args[++i].split("/");
+                if (shard.length != 2) {
+                    throw new IllegalArgumentException("--shard takes i/K, e.g. 2/4: " + args[i]);
+                }
+                shardIndex = Integer.parseInt(shard[0]);
+                shardCount = Integer.parseInt(shard[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        if (codecMatrix && numThreads > 1) {
+            // concurrent cases would share the CPUs and skew each other's write times
+            throw new IllegalArgumentException("--codec-matrix times its writes and runs serially; drop --threads " +
+                    numThreads);
         }
-        options.add(new TestOptions("int64", true, rawTypeOptions.size(), 1, RepetitionPattern.ALL_OPTIONAL));
-        options.add(new TestOptions("float", true, rawTypeOptions.size(), 5, RepetitionPattern.MIX_REQUIRED_OPTIONAL));
 
         // if directory does not exist, make it
         String tdname = "testcases";
@@ -147,120 +359,190 @@ public class TestFileGenerator {
             td.mkdir();
         }
 
-        //repeat for every set of variables
-        for (int i = 0; i < options.size(); i++) {
-            // build file name
-            TestFileName tfn = new TestFileName("TestPrimitives", tdname + "/");
-            TestOptions paramSet = options.get(i);
-            if (paramSet.rotateType){
-                tfn.addVariation("multi-type");
-            } else {
-                tfn.addVariation("single-type");
+        if (daemonPort >= 0) {
+            WriterMemoryManager.global().setPoolRatio(memoryPoolRatio);
+            GeneratorDaemon daemon = new GeneratorDaemon(tdname, numThreads, cacheBudget, new TestCaseCache(force));
+            daemon.compactJson = compactJson;
+            daemon.pipelined = pipelined;
+            daemon.shardThreads = shardThreads;
+            daemon.checksumFs = checksumFs;
+            daemon.valuesSidecar = valuesSidecar;
+            daemon.compressionThreads = compressionThreads;
+            try {
+                daemon.run(daemonPort);
+            } catch (IOException e) {
+                throw new RuntimeException("Generator daemon failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            tfn.appendTail(paramSet);
-
-            ArrayList<VarProperties> propList = makePropertyList( valueMap,
-                    buildRawTypeSequence(paramSet.numColumns, paramSet.firstType, paramSet.rotateType),
-                    paramSet.repMask);
-            generateTestCase(tfn, paramSet, propList);
-        }
-
-        // --------------------------------------
-        // test Repeated Types (same test options work, with different test masks
-        options = new ArrayList<TestOptions>();
-        for (int i = 0; i < rawTypeOptions.size(); i++) {
-            options.add(new TestOptions(rawTypeOptions.get(i), false, 1, 1, RepetitionPattern.ALL_REPEATED));
-            options.add(new TestOptions(rawTypeOptions.get(i), false, 1, 5, RepetitionPattern.ALL_REPEATED));
-            options.add(new TestOptions(rawTypeOptions.get(i), false, 2, 5, RepetitionPattern.MIX_REPEATED_REQUIRED));
-        }
-        options.add(new TestOptions("int64", true, rawTypeOptions.size(), 1, RepetitionPattern.MIX_OPTIONAL_REPEATED));
-        options.add(new TestOptions("float", true, rawTypeOptions.size(), 5, RepetitionPattern.MIX_OPTIONAL_REPEATED));
-
-        //repeat for every set of variables
-        for (int i = 0; i < options.size(); i++) {
-            // build file name
-            TestFileName tfn = new TestFileName("TestRepeated", tdname + "/");
-            TestOptions paramSet = options.get(i);
-            if (paramSet.rotateType){
-                tfn.addVariation("multi-type");
-            } else {
-                tfn.addVariation("single-type");
+            return;
+        }
+
+        ArrayList<TestCase> cases;
+        if (scaleRecords > 0) {
+            cases = buildScaleCases(tdname, scaleRecords, heapBudget);
+        } else if (wideColumns > 0) {
+            cases = buildWideCases(tdname, wideColumns);
+            // parquet logs every column chunk it writes
+            COLUMN_CHUNK_LOG.setLevel(Level.WARNING);
+        } else if (codecMatrix) {
+            cases = buildCodecMatrixCases(tdname);
+        } else if (planFile != null) {
+            try {
+                cases = TestPlan.load(new File(planFile), tdname);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read the test plan " + planFile, e);
             }
-            tfn.appendTail(paramSet);
-            ArrayList<VarProperties> propList = makePropertyList(valueMap,
-                    buildRawTypeSequence(paramSet.numColumns, paramSet.firstType, paramSet.rotateType),
-                    paramSet.repMask);
-            generateTestCase(tfn, paramSet, propList);
-        }
-
-        /* --------------------------------------
-         Test Block and Page size boundary writes
-
-         Storage size parameters : data-block-page dimensions
-         Goal of this set is to test proper reading block at page/block boundaries;
-         (This assumes that all columns are of the same type int32; pageSize is set in StorageDimensions.TEST_PAGE_SIZE)
-         */
-        // page borders
-        StorageDimensions sd = new StorageDimensions(rawTypeOptions.size(), 1, 4);
-        options = new ArrayList<TestOptions>();
-        options.add( new TestOptions("float", true, sd.numColumns, sd.calcNumRecords(8),
-                RepetitionPattern.MIX_OPTIONAL_REPEATED, sd));
-        options.add( new TestOptions("int64", true, sd.numColumns, sd.calcNumRecords(8),
-                RepetitionPattern.MIX_OPTIONAL_REPEATED, sd));
-
-        //repeat for every set of variables
-        for (int i = 0; i < options.size(); i++) {
-            // build file name
-            TestFileName tfn = new TestFileName("TestPageBorder", tdname + "/");
-            TestOptions paramSet = options.get(i);
-            tfn.appendTail(paramSet);
-            ArrayList<VarProperties> propList = makePropertyList( valueMap,
-                    buildRawTypeSequence(paramSet.numColumns, paramSet.firstType, paramSet.rotateType),
-                    paramSet.repMask);
-            generateTestCase(tfn, paramSet, propList);
-        }
-
-        //page borders with big strings
-        sd = new StorageDimensions(2, 1, 128);
-        TestOptions set = new TestOptions("binary-bigString", false, sd.numColumns, sd.calcNumRecords(69),
-                RepetitionPattern.MIX_OPTIONAL_REPEATED, sd);
-        ArrayList<String> typeSeq = new ArrayList<String>();
-        typeSeq.add("binary-bigString");
-        typeSeq.add("binary-bigString");
-
-        //repeat for every set of variables
-        // build file name
-        TestFileName tfn = new TestFileName("TestPageBorder", tdname + "/");
-        tfn.appendTail(set);
+        } else {
+            cases = buildTestCases(tdname);
+        }
+        if (shardCount > 1) {
+            TestCaseRunner.Shard shard = TestCaseRunner.selectShard(cases, shardIndex, shardCount);
+            System.out.println(shard);
+            cases = shard.cases;
+        }
+        for (TestCase tc : cases) {
+            tc.options.compactJson = compactJson;
+            tc.options.pipelined = pipelined;
+            tc.options.shardThreads = shardThreads;
+            tc.options.checksumFs = checksumFs;
+            tc.options.valuesSidecar |= valuesSidecar;
+            tc.options.compressionThreads = compressionThreads;
+        }
 
-        ArrayList<VarProperties> propList = makePropertyList( valueMap,
-                typeSeq, set.repMask);
-        generateTestCase(tfn, set, propList);
+        WriterMemoryManager.global().setPoolRatio(memoryPoolRatio);
+        TestCaseRunner.Summary summary;
+        if (codecMatrix) {
+            File report = new File(tdname, "codec-report.csv");
+            try {
+                summary = CodecMatrixReport.run(report, cases, codecRepeats);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write the codec report", e);
+            }
+            summary.print(System.out);
+            System.out.println("Codec report written to " + report);
+        } else {
+            TestCaseRunner runner = new TestCaseRunner(numThreads, new TestCaseCache(force));
+            summary = runner.run(cases);
+            summary.print(System.out);
+        }
+        try {
+            // hidden, so they aren't taken for test case files
+            File jsonReport = new File(tdname, ".run-report.json");
+            File csvReport = new File(tdname, ".run-report.csv");
+            RunReport.writeJson(jsonReport, summary);
+            RunReport.writeCsv(csvReport, summary);
+            System.out.println("Run report written to " + jsonReport + " and " + csvReport);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write the run report", e);
+        }
+        if (!summary.failures.isEmpty()) {
+            throw new RuntimeException(summary.failures.size() + " test case(s) failed");
+        }
+
+        if (verify) {
+            ArrayList<File> files = new ArrayList<File>(cases.size());
+            for (TestCase tc : cases) {
+                // the verifier reads a dataset directory as a whole
+                files.add(new File(tc.options.dataset != null
+                        ? tc.fileName.getNameDataset() : tc.fileName.getNameParquet()));
+            }
+            int verifyThreads = Math.max(numThreads, Runtime.getRuntime().availableProcessors());
+            try {
+                List<TestFileVerifier.FileResult> results =
+                        new TestFileVerifier(verifyThreads, maxMismatches).verify(files);
+                if (!TestFileVerifier.print(results, System.out)) {
+                    throw new RuntimeException("Verification failed");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while verifying", e);
+            }
+        }
+    }
+
+    /** Build the full list of test cases of the default plan, one per parameter set */
+    static ArrayList<TestCase> buildTestCases(String tdname){
+        return TestPlan.loadDefault(tdname);
+    }
 
-        // ------------------------------------
-        // test a big file, default page/block sizes
-        set = new TestOptions("float", true, rawTypeOptions.size(), 128*1024,
+    /** One file of numColumns columns of rotating types and WIDE_RECORDS records, for readers of wide schemas */
+    static ArrayList<TestCase> buildWideCases(String tdname, int numColumns){
+        ArrayList<TestCase> cases = new ArrayList<TestCase>();
+        TestOptions set = new TestOptions("boolean", true, numColumns, WIDE_RECORDS,
+                RepetitionPattern.MIX_REQUIRED_OPTIONAL);
+
+        TestFileName tfn = new TestFileName("TestWide", tdname + "/");
+        tfn.appendTail(set);
+        ArrayList<VarProperties> propList = makePropertyList(valueMap,
+                buildRawTypeSequence(set.numColumns, set.firstType, set.rotateType),
+                set.repMask);
+        cases.add(new TestCase(tfn, set, propList));
+        return cases;
+    }
+
+    /**
+     * One file of the mixed-type big file's shape with any number of records, written in the
+     * bounded-memory scale mode
+     */
+    static ArrayList<TestCase> buildScaleCases(String tdname, long numRecords, long heapBudget){
+        ArrayList<TestCase> cases = new ArrayList<TestCase>();
+        TestOptions set = new TestOptions("float", true, rawTypeOptions.size(), numRecords,
                 RepetitionPattern.MIX_OPTIONAL_REPEATED);
+        set.heapBudget = heapBudget;
 
-        // build file name
-        tfn = new TestFileName("TestBigFile", tdname + "/");
+        TestFileName tfn = new TestFileName("TestScale", tdname + "/");
         tfn.appendTail(set);
-        propList = makePropertyList( valueMap,
+        ArrayList<VarProperties> propList = makePropertyList( valueMap,
                 buildRawTypeSequence(set.numColumns, set.firstType, set.rotateType),
                 set.repMask);
-        generateTestCase(tfn, set, propList);
+        cases.add(new TestCase(tfn, set, propList));
+        return cases;
+    }
 
+    /**
+     * Every locally available compression codec, crossed with dictionary encoding on/off and
+     * writer version v1/v2, on the mixed-type big file (default page/block sizes)
+     */
+    static ArrayList<TestCase> buildCodecMatrixCases(String tdname){
+        ArrayList<TestCase> cases = new ArrayList<TestCase>();
+        for (CompressionCodecName codec : CodecMatrixReport.availableCodecs()) {
+            for (boolean dictionary : new boolean[]{false, true}) {
+                for (WriterVersion version : WriterVersion.values()) {
+                    TestOptions set = new TestOptions("float", true, rawTypeOptions.size(), 128*1024,
+                            RepetitionPattern.MIX_OPTIONAL_REPEATED);
+                    set.codec = codec;
+                    set.enableDictionary = dictionary;
+                    set.writerVersion = version;
+
+                    TestFileName tfn = new TestFileName("TestCodecs", tdname + "/");
+                    tfn.addVariation(codec.name().toLowerCase())
+                            .addVariation(dictionary ? "dictionary" : "plain")
+                            .addVariation(version == WriterVersion.PARQUET_1_0 ? "v1" : "v2")
+                            .appendTail(set);
+                    ArrayList<VarProperties> propList = makePropertyList( valueMap,
+                            buildRawTypeSequence(set.numColumns, set.firstType, set.rotateType),
+                            set.repMask);
+                    cases.add(new TestCase(tfn, set, propList));
+                }
+            }
+        }
+        return cases;
     }
 
     /**
      * Create a triplet of .parquet, .schema and .json files corresponding to a set of test parameter options
      */
 
-    public static void generateTestCase(TestFileName tfn, TestOptions options, ArrayList<VarProperties> propList){
+    public static CaseMetrics generateTestCase(TestFileName tfn, TestOptions options, ArrayList<VarProperties> propList)
+            throws IOException {
+        CaseMetrics metrics = new CaseMetrics();
 
         // make files, open for writing
         File outParquetFile = new File(tfn.getNameParquet());
         deleteFileIfExists(outParquetFile);
+        // a .crc left by a --checksum-fs run wouldn't match the new file, and readers would check it
+        deleteFileIfExists(new File(outParquetFile.getParentFile(), "." + outParquetFile.getName() + ".crc"));
 
         File outSchemaFile = new File(tfn.getNameSchema());
         deleteFileIfExists(outSchemaFile);
@@ -268,55 +550,248 @@ public class TestFileGenerator {
         File outJsonFile = new File(tfn.getNameJSON());
         deleteFileIfExists(outJsonFile);
 
+        deleteFileIfExists(new File(tfn.getNameSkipManifest()));
+        deleteFileIfExists(new File(tfn.getNameValues()));
+        DatasetGenerator.deleteDataset(new File(tfn.getNameDataset()));
+
         // create schema, along with corresponding property list
 
         String rawSchema = emitFlatSchemaString(propList);
         MessageType schema = MessageTypeParser.parseMessageType(rawSchema);
 
-        // file i/o
-        try {
-            // write schema
-            FileWriter schemaWriter = new FileWriter(outSchemaFile);
-            schemaWriter.write(rawSchema);
-            schemaWriter.close();
+        // file i/o; errors are reported per test case by the caller
+        // write schema
+        FileWriter schemaWriter = new FileWriter(outSchemaFile);
+        schemaWriter.write(rawSchema);
+        schemaWriter.close();
+
+        // generate and write data
+        if (options.dataset != null) {
+            int threads = Math.max(options.shardThreads, Runtime.getRuntime().availableProcessors());
+            new DatasetGenerator(threads).generate(tfn, schema, options, propList, metrics);
+        } else if (hasPageEnds(options)) {
+            // shards would end row groups of their own
+            writeRecords(outParquetFile, outJsonFile,
+                    writesValuesSidecar(options, propList) ? new File(tfn.getNameValues()) : null,
+                    schema, options, propList, options.numRecords, null, metrics);
+        } else if (options.heapBudget > 0) {
+            // one row group per shard, so an interrupted run resumes at the last finished row group
+            ProgressMeter progress = new ProgressMeter(outParquetFile.getName(), options.numRecords);
+            progress.start(PROGRESS_INTERVAL_MILLIS);
+            try {
+                new ShardedGenerator(Math.max(1, options.shardThreads), true, progress).generate(tfn, schema,
+                        options, propList, estimateShardRecords(options, propList), metrics);
+            } finally {
+                progress.stop();
+            }
+        } else if (options.shardThreads > 1 && options.numRecords > estimateShardRecords(options, propList)) {
+            new ShardedGenerator(options.shardThreads).generate(tfn, schema, options, propList,
+                    estimateShardRecords(options, propList), metrics);
+        } else {
+            writeRecords(outParquetFile, outJsonFile,
+                    writesValuesSidecar(options, propList) ? new File(tfn.getNameValues()) : null,
+                    schema, options, propList, options.numRecords, null, metrics);
+        }
 
-            // generate and write data
-            Path path = new Path(outParquetFile.toURI());
+        if (hasPageEnds(options)) {
+            PageLayout.check(outParquetFile, options.storage);
+        }
+        if (options.skipSelectivities != null) {
+            SkipManifest.write(tfn, options, propList);
+        }
 
-            CsvParquetWriter pWriter;
-            if (options.storage == null) {
-                pWriter = new CsvParquetWriter(path, schema, false); // enableDictionary: false - plain encoding
-            } else {
-                pWriter = new CsvParquetWriter(path, schema, false,
-                        (int) options.storage.estimateBlockSize(), StorageDimensions.TEST_PAGE_SIZE);
-            }
+        metrics.readFiles(tfn, options);
+        return metrics;
+    }
 
-            //JsonWriter jsonWriter = Json.createWriter(new FileWriter(outJsonFile));
-            FileWriter jsonWriter =  new FileWriter(outJsonFile);
+    /**
+     * Write the next numRecords records of propList to a parquet file, its .json sidecar and, unless
+     * outValuesFile is null, its .values sidecar
+     */
+    static void writeRecords(File outParquetFile, File outJsonFile, File outValuesFile, MessageType schema,
+                             TestOptions options, ArrayList<VarProperties> propList, long numRecords,
+                             final ProgressMeter progress, CaseMetrics metrics) throws IOException {
+        ColumnBatchSink pWriter = openParquetWriter(outParquetFile, schema, options);
 
-            for (int j = 0; j < options.numRecords; j++) {
+        JsonSidecarWriter jsonWriter = new JsonSidecarWriter(outJsonFile, schema, options.compactJson);
+        ValuesSidecarWriter valuesWriter = outValuesFile != null ? new ValuesSidecarWriter(outValuesFile, schema) : null;
 
-                // create a record that fits the schema
-                String[] record = new String[propList.size()];
-                for (int i = 0; i < propList.size(); i++) {
-                    record[i] = propList.get(i).getNextValue();
-                }
+        try {
+            if (options.pipelined) {
+                final ColumnBatchSink parquetSink = pWriter;
+                final JsonSidecarWriter jsonSink = jsonWriter;
+                final ValuesSidecarWriter valuesSink = valuesWriter;
+                GenerationPipeline.Stats stats = new GenerationPipeline(schema, propList).run(numRecords,
+                        new GenerationPipeline.Sink() {
+                            private long dataSize;
+
+                            @Override
+                            public void write(ColumnBatch batch) throws IOException {
+                                parquetSink.write(batch);
+                                if (progress != null) {
+                                    long size = parquetSink.getDataSize();
+                                    progress.add(batch.getNumRows(), size - dataSize);
+                                    dataSize = size;
+                                }
+                            }
+                        },
+                        new GenerationPipeline.Sink() {
+                            @Override
+                            public void write(ColumnBatch batch) throws IOException {
+                                jsonSink.write(batch);
+                                if (valuesSink != null) {
+                                    valuesSink.write(batch);
+                                }
+                            }
+                        });
+                metrics.addStageTimes(stats.produce.busyNanos, stats.parquet.busyNanos, stats.json.busyNanos);
+                metrics.addPipelineStats(stats);
+            } else {
+                int batchRows = batchRows(propList.size());
+                ColumnBatch batch = new ColumnBatch(schema, batchRows);
+                long dataSize = 0;
+                long generateNanos = 0, parquetNanos = 0, jsonNanos = 0;
+                for (long j = 0; j < numRecords; j += batch.getNumRows()) {
+                    long t0 = System.nanoTime();
+
+                    // create a batch of records that fit the schema
+                    fillBatch(batch, propList, (int) Math.min(batchRows, numRecords - j));
+                    long t1 = System.nanoTime();
+
+                    // write data to parquet file
+                    pWriter.write(batch);
+                    if (progress != null) {
+                        long size = pWriter.getDataSize();
+                        progress.add(batch.getNumRows(), size - dataSize);
+                        dataSize = size;
+                    }
+                    long t2 = System.nanoTime();
 
-                // write data to parquet file
-                pWriter.write(Arrays.asList(record));
+                    // stream a JSON per record to the sidecar file
+                    jsonWriter.write(batch);
+                    if (valuesWriter != null) {
+                        valuesWriter.write(batch);
+                    }
+                    long t3 = System.nanoTime();
 
-                // build a JSON, write it to file
-                JsonObject jo = convertRecordToJSON(record, propList);
-                jsonWriter.write(jo.toString() + "\n");
-                //jsonWriter.writeObject(jo);
+                    generateNanos += t1 - t0;
+                    parquetNanos += t2 - t1;
+                    jsonNanos += t3 - t2;
+                }
+                metrics.addStageTimes(generateNanos, parquetNanos, jsonNanos);
             }
-
+        } finally {
+            // closing flushes the last row group and the footer, and the rest of the sidecar
+            long t0 = System.nanoTime();
             jsonWriter.close();
+            if (valuesWriter != null) {
+                valuesWriter.close();
+            }
+            long t1 = System.nanoTime();
             pWriter.close();
-        } catch (java.io.IOException e){
-            System.err.println("error: " + e.getMessage());
+            metrics.addStageTimes(0, System.nanoTime() - t1, t1 - t0);
+        }
+    }
+
+    /**
+     * The parquet writer of a case's file: pages are compressed on options.compressionThreads threads
+     * if that's > 0, else on the writing thread. Both write the same pages and row groups, so
+     * uncompressed files, with nothing to hand off, are always written on the writing thread.
+     * Exact storage dimensions end pages and row groups after their page ends instead.
+     */
+    static ColumnBatchSink openParquetWriter(File f, MessageType schema, TestOptions options) throws IOException {
+        if (hasPageEnds(options)) {
+            int threads = options.codec != CompressionCodecName.UNCOMPRESSED ? options.compressionThreads : 0;
+            ColumnBatchParallelWriter writer = new ColumnBatchParallelWriter(outputPath(f, options), schema,
+                    options.codec, (int) rowGroupSize(options), pageSize(options), options.enableDictionary,
+                    options.validating, options.writerVersion, LocalChannelFileSystem.sharedConfiguration(), threads);
+            writer.setPageEnds(options.storage.pageEnds, options.storage.numPagesPerBlock);
+            return writer;
+        }
+        if (options.compressionThreads > 0 && options.codec != CompressionCodecName.UNCOMPRESSED) {
+            return new ColumnBatchParallelWriter(outputPath(f, options), schema, options.codec,
+                    (int) rowGroupSize(options), pageSize(options), options.enableDictionary, options.validating,
+                    options.writerVersion, LocalChannelFileSystem.sharedConfiguration(), options.compressionThreads);
+        }
+        return new ColumnBatchParquetWriter(outputPath(f, options), schema, options.codec,
+                (int) rowGroupSize(options), pageSize(options), options.enableDictionary, options.validating,
+                options.writerVersion, LocalChannelFileSystem.sharedConfiguration());
+    }
+
+    static boolean hasPageEnds(TestOptions options){
+        return options.storage != null && options.storage.pageEnds != null;
+    }
+
+    // the .values sidecar is column-major and flat; datasets lay their records out by partition instead
+    static boolean writesValuesSidecar(TestOptions options, ArrayList<VarProperties> propList){
+        return options.valuesSidecar && options.dataset == null && !isNested(propList);
+    }
+
+    /** The .parquet files of a case: the single file, or the data files of a dataset in file number order */
+    static List<File> parquetFiles(TestFileName tfn, TestOptions options){
+        if (options.dataset != null) {
+            return DatasetGenerator.dataFiles(new File(tfn.getNameDataset()));
+        }
+        return Collections.singletonList(new File(tfn.getNameParquet()));
+    }
+
+    // where the writers put a local file: straight through a FileChannel, unless checksums were asked for
+    static Path outputPath(File f, TestOptions options){
+        return options.checksumFs ? new Path(f.toURI()) : LocalChannelFileSystem.path(f);
+    }
+
+    // row group size the writer is configured with
+    static long rowGroupSize(TestOptions options){
+        if (options.storage != null) {
+            return options.storage.estimateBlockSize();
+        }
+        if (options.heapBudget > 0) {
+            // a writer buffers a whole row group, and holds about as much again in finished pages
+            // while flushing it; keep a third of the budget as headroom for everything else
+            long perWriter = options.heapBudget / Math.max(1, options.shardThreads);
+            return Math.max(MIN_ROW_GROUP_SIZE, Math.min(ColumnBatchParquetWriter.DEFAULT_BLOCK_SIZE, perWriter / 3));
+        }
+        return ColumnBatchParquetWriter.DEFAULT_BLOCK_SIZE;
+    }
+
+    // page size the writer is configured with; the writer's buffers per column grow with it, so from
+    // WIDE_COLUMNS columns on pages are sized to a column's share of the row group instead
+    static int pageSize(TestOptions options){
+        if (hasPageEnds(options)) {
+            return PageLayout.PAGE_SIZE_LIMIT;
+        }
+        if (options.storage != null) {
+            return StorageDimensions.TEST_PAGE_SIZE;
+        }
+        if (options.numColumns >= WIDE_COLUMNS) {
+            long share = rowGroupSize(options) / options.numColumns;
+            return (int) Math.max(MIN_WIDE_PAGE_SIZE, Math.min(ColumnBatchParquetWriter.DEFAULT_PAGE_SIZE, share));
+        }
+        return ColumnBatchParquetWriter.DEFAULT_PAGE_SIZE;
+    }
+
+    // number of records that should roughly fill one row group
+    static long estimateShardRecords(TestOptions options, ArrayList<VarProperties> propList){
+        long blockSize = rowGroupSize(options);
+        long recordSize = 0;
+        for (VarProperties vp : propList) {
+            recordSize += vp.estimateSize();
         }
+        return Math.max(BATCH_SIZE, blockSize / Math.max(1, recordSize));
+    }
+
+    // rows per batch for a schema of numColumns columns
+    static int batchRows(int numColumns){
+        return Math.max(1, Math.min(BATCH_SIZE, BATCH_VALUES / Math.max(1, numColumns)));
+    }
 
+    // refill a batch with the next numRows records, one column at a time
+    static void fillBatch(ColumnBatch batch, ArrayList<VarProperties> propList, int numRows){
+        batch.reset();
+        for (int i = 0; i < propList.size(); i++) {
+            propList.get(i).fill(batch.field(i), numRows);
+        }
+        batch.setNumRows(numRows);
     }
 
 
@@ -327,31 +802,116 @@ public class TestFileGenerator {
     static class VarProperties{
         String repetition;
         String type; // TODO: refactor type -> value set
-        String[] valueSet;  // set of values, last must be null ("")
+        String[] valueSet;  // set of values, last must be null (""); empty with a distribution
+        ValuePool pool;     // valueSet, pre-parsed
+        ValueDistribution distribution; // replaces the value set if not null
+        NestedColumn nested; // wraps the values in groups if not null
 
         private int idx;        // position of next value in this.values
         private int repSizeIdx; // position in repetition mask
+        private ValueDistribution.Cursor cursor;
 
         VarProperties(String repetition, String type, String[] values){
+            this(repetition, type, values, new ValuePool(type, values));
+        }
+
+        VarProperties(String repetition, String type, ValueDistribution distribution){
+            this(repetition, type, new String[0], null);
+            this.distribution = distribution;
+            cursor = distribution.cursor(repetition.equals("optional"), repetition.equals("repeated"), 0);
+        }
+
+        private VarProperties(String repetition, String type, String[] values, ValuePool pool){
             this.repetition = repetition;
             this.type = type;
             this.valueSet = values;
+            this.pool = pool;
 
             idx = 0;
             repSizeIdx = 0;
         }
 
-        private String getNextPrimitive(){
-            String value = valueSet[idx];
+        // an independent copy whose next value is the one of the given record
+        VarProperties copyAt(long record){
+            VarProperties copy;
+            if (distribution != null) {
+                copy = new VarProperties(repetition, type, distribution);
+                copy.cursor = distribution.cursor(repetition.equals("optional"), repetition.equals("repeated"), record);
+            } else {
+                copy = new VarProperties(repetition, type, valueSet, pool);
+                copy.seek(record);
+            }
+            if (nested != null) {
+                copy.nested = nested.copyAt(record);
+            }
+            return copy;
+        }
+
+        // jump to the given record in O(1): the value sequence is a fixed cycle,
+        // and so is the sequence of list sizes for repeated fields
+        private void seek(long record){
+            long cycle = repetition.equals("optional") ? valueSet.length : valueSet.length - 1;
+            long consumed = record;
+            if (repetition.equals("repeated")) {
+                int rounds = repeatedTypeSizes.length;
+                consumed = (record / rounds) * REPEATED_CYCLE_VALUES;
+                for (int i = 0; i < record % rounds; i++) {
+                    consumed += repeatedTypeSizes[i];
+                }
+                repSizeIdx = (int) (record % rounds);
+            }
+            idx = (int) (consumed % cycle);
+        }
+
+        // rough number of bytes one record adds to this column
+        int estimateSize(){
+            if (nested != null) {
+                return (int) (nested.leaf.estimateSize() * nested.averageLeaves());
+            }
+            if (distribution != null) {
+                int valueSize = distribution.estimateValueSize(type);
+                return repetition.equals("repeated") ? (int) (valueSize * distribution.averageListLength()) : valueSize;
+            }
+            int valueSize;
+            PrimitiveType primitive = primitiveType(type);
+            switch (primitive.getPrimitiveTypeName()) {
+                case BOOLEAN: valueSize = 1; break;
+                case INT32:
+                case FLOAT:   valueSize = 4; break;
+                case INT64:
+                case DOUBLE:  valueSize = 8; break;
+                case INT96:   valueSize = ValueFormat.INT96_LENGTH; break;
+                case FIXED_LEN_BYTE_ARRAY: valueSize = primitive.getTypeLength(); break;
+                default:
+                    int total = 0;
+                    for (String v : valueSet) {
+                        total += 4 + v.length(); // length prefix + bytes
+                    }
+                    valueSize = total / valueSet.length;
+            }
+            return repetition.equals("repeated") ? valueSize * AVG_REPEATED_SIZE : valueSize;
+        }
+
+        private int getNextIndex(){
+            int i = idx;
             if(repetition.equals("optional")){
                 idx = (idx + 1) % valueSet.length;
             } else {
                 idx = (idx + 1) % (valueSet.length - 1); // skip over the null-value
             }
-            return value;
+            return i;
+        }
+
+        private String getNextPrimitive(){
+            return valueSet[getNextIndex()];
         }
 
+        // value set columns only
         String getNextValue(){
+            if (distribution != null || nested != null) {
+                throw new UnsupportedOperationException("Only flat value set columns have a next value as text; " +
+                        "columns with a distribution or nesting are filled by batch");
+            }
             if (repetition.equals("repeated")) {
                 String values = "";
                 if (repeatedTypeSizes[repSizeIdx] > 0) {
@@ -366,53 +926,125 @@ public class TestFileGenerator {
 
             return getNextPrimitive();
         }
+
+        // fill the first numRows rows of a batch field with the next values;
+        // for a flat column, yields the same sequence as calling getNextValue() numRows times
+        void fill(ColumnBatch.Node field, int numRows){
+            if (nested != null) {
+                nested.fill(field, numRows);
+                return;
+            }
+            ColumnBatch.Column column = (ColumnBatch.Column) field;
+            if (cursor != null) {
+                cursor.fill(column, numRows);
+            } else if (repetition.equals("repeated")) {
+                for (int row = 0; row < numRows; row++) {
+                    for (int i = 0; i < repeatedTypeSizes[repSizeIdx]; i++) {
+                        pool.add(column, getNextIndex());
+                    }
+                    column.endList(row);
+                    repSizeIdx = (repSizeIdx + 1) % repeatedTypeSizes.length;
+                }
+            } else {
+                for (int row = 0; row < numRows; row++) {
+                    pool.set(column, row, getNextIndex());
+                }
+            }
+        }
     }
 
     // build a list of variable properties for a flat schema
-    private static ArrayList<VarProperties> makePropertyList(HashMap<String, String[]> valueSets, ArrayList<String> typeSequence, RepetitionPattern rp){
+    static ArrayList<VarProperties> makePropertyList(HashMap<String, String[]> valueSets, ArrayList<String> typeSequence, RepetitionPattern rp){
         ArrayList<VarProperties> propertyList = new ArrayList<VarProperties>(typeSequence.size());
+        String[] mask = repetitionMasks.get(rp);
         int rmi = 0; // index for RepetitionMasks
 
         for (int i = 0; i < typeSequence.size(); i++) {
-            propertyList.add(new VarProperties(repetitionMasks.get(rp)[rmi], extractType(typeSequence.get(i)),
+            propertyList.add(new VarProperties(mask[rmi], extractType(typeSequence.get(i)),
                     valueSets.get(typeSequence.get(i))));
 
             // advance indexes
-            rmi = (rmi + 1) % repetitionMasks.get(rp).length;
+            rmi = (rmi + 1) % mask.length;
+        }
+        return propertyList;
+    }
+
+    // build a list of variable properties whose values are drawn from a distribution, seeded per column
+    static ArrayList<VarProperties> makePropertyList(ValueDistribution distribution, ArrayList<String> typeSequence, RepetitionPattern rp){
+        ArrayList<VarProperties> propertyList = new ArrayList<VarProperties>(typeSequence.size());
+        String[] mask = repetitionMasks.get(rp);
+        for (int i = 0; i < typeSequence.size(); i++) {
+            propertyList.add(new VarProperties(mask[i % mask.length], extractType(typeSequence.get(i)),
+                    distribution.forColumn(i)));
         }
         return propertyList;
     }
 
+    // wrap every column of the list in depth levels of the given layouts, rotated by the column's position
+    static void nest(ArrayList<VarProperties> propList, NestedColumn.Kind[] layouts, int depth){
+        for (int i = 0; i < propList.size(); i++) {
+            VarProperties vp = propList.get(i);
+            VarProperties leaf = vp.distribution != null
+                    ? new VarProperties("optional", vp.type, vp.distribution)
+                    : new VarProperties("optional", vp.type, vp.valueSet);
+            vp.nested = new NestedColumn(NestedColumn.levelsOf(layouts, depth, i), vp.repetition, leaf);
+        }
+    }
+
+    static boolean isNested(ArrayList<VarProperties> propList){
+        for (VarProperties vp : propList) {
+            if (vp.nested != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // build simple type sequence out of raw rypes
-    private static ArrayList<String> buildRawTypeSequence(int size, String firstType, boolean rotateTypes){
+    static ArrayList<String> buildRawTypeSequence(int size, String firstType, boolean rotateTypes){
         ArrayList<String> typeSequence = new ArrayList<String>(size);
-        int ti = rawTypeOptions.indexOf(firstType); // index for types
+        ArrayList<String> options = logicalTypeOptions.contains(firstType) ? logicalTypeOptions : rawTypeOptions;
+        int ti = options.indexOf(firstType); // index for types
 
         for (int i = 0; i < size; i++) {
-            typeSequence.add(rawTypeOptions.get(ti));
+            typeSequence.add(options.get(ti));
 
             // advance indexes
             if (rotateTypes) {
-                ti = (ti + 1) % rawTypeOptions.size();
+                ti = (ti + 1) % options.size();
             }
         }
         return typeSequence;
     }
 
-    // construct a string representation of a flat schema
+    // construct a string representation of the schema, one top-level field per column
 
     public static final String VAR_NAME_PREFIX = "var_";
 
-    private static String emitFlatSchemaString(ArrayList<VarProperties> propertyList){
-        String rawSchema = "message m {\n";
+    static String emitFlatSchemaString(ArrayList<VarProperties> propertyList){
+        // one builder for the whole schema, so wide schemas take linear time
+        StringBuilder rawSchema = new StringBuilder(16 + 32 * propertyList.size()).append("message m {\n");
         for (int count = 0; count < propertyList.size(); count++) {
-            rawSchema += "  " + propertyList.get(count).repetition +
-                    " " + extractType(propertyList.get(count).type)+
-                    " " + VAR_NAME_PREFIX + count + ";\n";
+            VarProperties vp = propertyList.get(count);
+            String[] declaration = typeDeclarations.get(extractType(vp.type));
+            if (declaration == null) {
+                throw new IllegalArgumentException("Unsupported value type: " + vp.type);
+            }
+            if (vp.nested != null) {
+                vp.nested.appendSchema(rawSchema, vp.repetition, VAR_NAME_PREFIX + count, declaration);
+                continue;
+            }
+            rawSchema.append("  ").append(vp.repetition)
+                    .append(' ').append(declaration[0])
+                    .append(' ').append(VAR_NAME_PREFIX).append(count);
+            if (declaration[1].length() > 0) {
+                rawSchema.append(' ').append(declaration[1]);
+            }
+            rawSchema.append(";\n");
         }
-        rawSchema += "}";
+        rawSchema.append('}');
 
-        return rawSchema;
+        return rawSchema.toString();
     }
 
     /** Generate descriptive filenames */
@@ -442,6 +1074,19 @@ public class TestFileGenerator {
             return path+ name +".schema";
         }
 
+        // directory of a DatasetGenerator case
+        String getNameDataset(){
+            return path+ name;
+        }
+
+        String getNameSkipManifest(){
+            return path+ name +".skip.json";
+        }
+
+        String getNameValues(){
+            return path+ name +".values";
+        }
+
         void appendTail(TestOptions paramSet){
             this.addVariation(paramSet.firstType)
                     .addVariation("r-" + paramSet.numRecords)
@@ -471,51 +1116,4 @@ public class TestFileGenerator {
             }
         }
     }
-
-    // TODO: use builder or parse a string representation ??
-    private static JsonObject convertRecordToJSON(String[] record, ArrayList<VarProperties> propList){
-        // build a string representation of JSON
-        String joString = "{";
-            for(int i=0; i < propList.size(); i++){
-                joString += "\"" + VAR_NAME_PREFIX + i + "\": ";
-                if(!propList.get(i).repetition.equals("repeated")){
-                    joString += formatValueForJson(record[i], propList.get(i).type , (i < propList.size() - 1));
-                } else {
-                    if (record[i].length() == 0) {
-                        joString += "[]";
-                    } else {
-                        String[] items = record[i].split("\\|");
-                        joString += "[";
-
-                        for (int j = 0; j < items.length; j++) {
-                            joString += formatValueForJson(items[j], propList.get(i).type, (j < items.length - 1));
-                        }
-                        joString += "]";
-                    }
-                    if (i < propList.size() - 1) {
-                        joString += ", ";
-                    }
-                }
-            }
-        joString += "}";
-
-        // read it into an object
-        JsonReader jsonReader = Json.createReader(new StringReader(joString));
-        JsonObject jo = jsonReader.readObject();
-        jsonReader.close();
-
-        return jo;
-    }
-
-    private static String formatValueForJson(String val, String type, boolean notLast){
-        if (type.equals("binary")) {
-            val = "\"" + val + "\"";
-        } else if (val.equals("")) {
-            val = "null";
-        }
-        if (notLast) {
-            val += ", ";
-        }
-        return val;
-    }
 }
@@ -0,0 +1,646 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Reads generated .parquet files back with parquet-hadoop and checks every record against the
+ * matching line of the .json sidecar. A DatasetGenerator directory is checked as a whole: its data
+ * files in file number order against one sidecar, with the partition columns taken from the paths.
+ *
+ * Work is split by row group: the sidecar is scanned once for the byte offsets of the lines where
+ * row groups start, then all row groups of all files are compared on a shared pool of threads,
+ * each streaming its rows and lines. Memory is bounded by one row group's pages per thread plus
+ * the first maxMismatches mismatches per row group.
+ *
+ * A single file with a binary .values sidecar next to it is checked against that instead: it is
+ * mapped once and read in place by all row groups, without parsing the JSON, and floating point
+ * values are compared bit for bit.
+ */
+class TestFileVerifier {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A record whose Parquet and JSON forms differ */
+    static class Mismatch{
+        final long row;
+        final String message;
+
+        Mismatch(long row, String message){
+            this.row = row;
+            this.message = message;
+        }
+
+        @Override
+        public String toString(){
+            return "row " + row + ": " + message;
+        }
+    }
+
+    /** Outcome of verifying one file */
+    static class FileResult{
+        final String name;
+        long rows;
+        long mismatchCount;
+        ArrayList<Mismatch> mismatches = new ArrayList<Mismatch>();   // the first ones, in row order
+        Throwable error;
+
+        FileResult(String name){
+            this.name = name;
+        }
+
+        boolean ok(){
+            return error == null && mismatchCount == 0;
+        }
+    }
+
+    // one row group of a file and the sidecar lines (or .values rows) that belong to it
+    private static class RowGroupTask{
+        final File parquet;
+        final File json;
+        final ValuesSidecar values; // compared against instead of the JSON if not null
+        final ParquetMetadata footer;
+        final BlockMetaData block;
+        final long firstRow;
+        final long jsonOffset;
+        final Map<String, String> partitionValues; // of a dataset's data file, by column name
+
+        RowGroupTask(File parquet, File json, ValuesSidecar values, ParquetMetadata footer, BlockMetaData block,
+                     long firstRow, long jsonOffset, Map<String, String> partitionValues){
+            this.parquet = parquet;
+            this.json = json;
+            this.values = values;
+            this.footer = footer;
+            this.block = block;
+            this.firstRow = firstRow;
+            this.jsonOffset = jsonOffset;
+            this.partitionValues = partitionValues;
+        }
+    }
+
+    private static class RowGroupResult{
+        long mismatchCount;
+        ArrayList<Mismatch> mismatches = new ArrayList<Mismatch>();
+    }
+
+    private final int numThreads;
+    private final int maxMismatches;
+    private final Configuration conf = LocalChannelFileSystem.sharedConfiguration();
+
+    TestFileVerifier(int numThreads, int maxMismatches){
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + numThreads);
+        }
+        this.numThreads = numThreads;
+        this.maxMismatches = maxMismatches;
+    }
+
+    /** Verify the .parquet files (or dataset directories) against the .json files next to them */
+    List<FileResult> verify(List<File> parquetFiles) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            // plan: footers and sidecar line offsets, one file per job
+            ArrayList<FileResult> results = new ArrayList<FileResult>(parquetFiles.size());
+            ArrayList<Future<List<RowGroupTask>>> plans = new ArrayList<Future<List<RowGroupTask>>>();
+            for (final File parquet : parquetFiles) {
+                results.add(new FileResult(parquet.getPath()));
+                plans.add(pool.submit(new Callable<List<RowGroupTask>>() {
+                    @Override
+                    public List<RowGroupTask> call() throws IOException {
+                        return plan(parquet);
+                    }
+                }));
+            }
+
+            // compare: every row group of every file
+            ArrayList<List<Future<RowGroupResult>>> compares = new ArrayList<List<Future<RowGroupResult>>>();
+            for (int i = 0; i < parquetFiles.size(); i++) {
+                ArrayList<Future<RowGroupResult>> futures = new ArrayList<Future<RowGroupResult>>();
+                compares.add(futures);
+                List<RowGroupTask> tasks;
+                try {
+                    tasks = plans.get(i).get();
+                } catch (ExecutionException e) {
+                    results.get(i).error = e.getCause();
+                    continue;
+                }
+                for (final RowGroupTask task : tasks) {
+                    results.get(i).rows += task.block.getRowCount();
+                    futures.add(pool.submit(new Callable<RowGroupResult>() {
+                        @Override
+                        public RowGroupResult call() throws IOException {
+                            return compare(task);
+                        }
+                    }));
+                }
+            }
+
+            for (int i = 0; i < parquetFiles.size(); i++) {
+                FileResult result = results.get(i);
+                for (Future<RowGroupResult> f : compares.get(i)) {
+                    try {
+                        RowGroupResult rg = f.get();
+                        result.mismatchCount += rg.mismatchCount;
+                        result.mismatches.addAll(rg.mismatches);
+                    } catch (ExecutionException e) {
+                        if (result.error == null) {
+                            result.error = e.getCause();
+                        }
+                    }
+                }
+                Collections.sort(result.mismatches, new Comparator<Mismatch>() {
+                    @Override
+                    public int compare(Mismatch a, Mismatch b) {
+                        return Long.compare(a.row, b.row);
+                    }
+                });
+                while (result.mismatches.size() > maxMismatches) {
+                    result.mismatches.remove(result.mismatches.size() - 1);
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static boolean print(List<FileResult> results, PrintStream out){
+        int failed = 0;
+        long rows = 0;
+        for (FileResult r : results) {
+            rows += r.rows;
+            if (r.ok()) {
+                continue;
+            }
+            failed++;
+            if (r.error != null) {
+                out.println("VERIFY FAILED " + r.name + ": " + r.error);
+            } else {
+                out.println("VERIFY FAILED " + r.name + ": " + r.mismatchCount + " mismatching record(s)");
+            }
+            for (Mismatch m : r.mismatches) {
+                out.println("    " + m);
+            }
+        }
+        out.println(String.format("Verified %d file(s), %,d records: %d failed", results.size(), rows, failed));
+        return failed == 0;
+    }
+
+    private static File sidecarOf(File target){
+        String name = target.getPath();
+        if (target.isDirectory()) {
+            return new File(name + ".json");
+        }
+        return new File(name.substring(0, name.length() - ".parquet".length()) + ".json");
+    }
+
+    private static File valuesOf(File target){
+        String name = target.getPath();
+        return new File(name.substring(0, name.length() - ".parquet".length()) + ".values");
+    }
+
+    private List<RowGroupTask> plan(File target) throws IOException {
+        File json = sidecarOf(target);
+        List<File> files = target.isDirectory()
+                ? DatasetGenerator.dataFiles(target) : Collections.singletonList(target);
+        ArrayList<File> blockFiles = new ArrayList<File>();
+        ArrayList<ParquetMetadata> blockFooters = new ArrayList<ParquetMetadata>();
+        ArrayList<BlockMetaData> blocks = new ArrayList<BlockMetaData>();
+        for (File parquet : files) {
+            ParquetMetadata footer = ParquetFileReader.readFooter(conf, new Path(parquet.toURI()),
+                    ParquetMetadataConverter.NO_FILTER);
+            for (BlockMetaData block : footer.getBlocks()) {
+                blockFiles.add(parquet);
+                blockFooters.add(footer);
+                blocks.add(block);
+            }
+        }
+
+        // line numbers where row groups start, plus the total, which must be the number of lines
+        long[] firstRows = new long[blocks.size() + 1];
+        for (int b = 0; b < blocks.size(); b++) {
+            firstRows[b + 1] = firstRows[b] + blocks.get(b).getRowCount();
+        }
+        ValuesSidecar values = null;
+        long[] offsets;
+        if (!target.isDirectory() && valuesOf(target).isFile()) {
+            values = ValuesSidecar.open(valuesOf(target));
+            checkColumns(values, files.get(0), blockFooters.isEmpty() ? null : blockFooters.get(0),
+                    firstRows[blocks.size()]);
+            offsets = new long[firstRows.length];
+        } else {
+            offsets = lineOffsets(json, firstRows);
+        }
+
+        ArrayList<RowGroupTask> tasks = new ArrayList<RowGroupTask>(blocks.size());
+        for (int b = 0; b < blocks.size(); b++) {
+            Map<String, String> partitionValues = target.isDirectory()
+                    ? DatasetGenerator.partitionValues(target, blockFiles.get(b))
+                    : Collections.<String, String>emptyMap();
+            tasks.add(new RowGroupTask(blockFiles.get(b), json, values, blockFooters.get(b), blocks.get(b),
+                    firstRows[b], offsets[b], partitionValues));
+        }
+        return tasks;
+    }
+
+    // the .values sidecar must hold the file's rows, and a column per field of the same name and type
+    private static void checkColumns(ValuesSidecar values, File parquet, ParquetMetadata footer, long rows)
+            throws IOException {
+        if (values.numRows != rows) {
+            throw new IOException(valuesOf(parquet) + " has " + values.numRows + " rows, the parquet file " +
+                    rows + " records");
+        }
+        if (footer == null) {
+            return;
+        }
+        MessageType schema = footer.getFileMetaData().getSchema();
+        if (values.numColumns() != schema.getFieldCount()) {
+            throw new IOException(valuesOf(parquet) + " has " + values.numColumns() + " columns, the schema " +
+                    schema.getFieldCount() + " fields");
+        }
+        for (int i = 0; i < schema.getFieldCount(); i++) {
+            Type field = schema.getType(i);
+            ValuesSidecar.Column c = values.column(i);
+            if (!field.isPrimitive() || !c.name.equals(field.getName())
+                    || c.type != field.asPrimitiveType().getPrimitiveTypeName()
+                    || c.repeated != field.isRepetition(Type.Repetition.REPEATED)) {
+                throw new IOException(valuesOf(parquet) + ": column " + c.name + " " + c.type +
+                        " doesn't match field " + field);
+            }
+        }
+    }
+
+    // byte offsets of the given (ascending) line numbers; the last one must be the line count
+    private static long[] lineOffsets(File json, long[] lines) throws IOException {
+        long[] offsets = new long[lines.length];
+        int next = 0;
+        while (next < lines.length && lines[next] == 0) {
+            offsets[next++] = 0;
+        }
+        long line = 0;
+        long pos = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(json);
+        try {
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        line++;
+                        while (next < lines.length && lines[next] == line) {
+                            offsets[next++] = pos + i + 1;
+                        }
+                    }
+                }
+                pos += n;
+            }
+        } finally {
+            in.close();
+        }
+        if (line != lines[lines.length - 1]) {
+            throw new IOException(json + " has " + line + " lines, the parquet file " +
+                    lines[lines.length - 1] + " records");
+        }
+        return offsets;
+    }
+
+    private RowGroupResult compare(RowGroupTask task) throws IOException {
+        RowGroupResult result = new RowGroupResult();
+        MessageType schema = task.footer.getFileMetaData().getSchema();
+
+        ParquetFileReader reader = new ParquetFileReader(conf, task.footer.getFileMetaData(),
+                new Path(task.parquet.toURI()), Collections.singletonList(task.block), schema.getColumns());
+        if (task.values != null) {
+            try {
+                PageReadStore pages = reader.readNextRowGroup();
+                RecordReader<Group> records = new ColumnIOFactory().getColumnIO(schema)
+                        .getRecordReader(pages, new GroupRecordConverter(schema));
+                for (long r = 0; r < pages.getRowCount(); r++) {
+                    String problem = compareRecord(schema, records.read(), task.values, (int) (task.firstRow + r));
+                    if (problem != null) {
+                        result.mismatchCount++;
+                        if (result.mismatches.size() < maxMismatches) {
+                            result.mismatches.add(new Mismatch(task.firstRow + r, problem));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return result;
+        }
+        InputStream jsonIn = new FileInputStream(task.json);
+        try {
+            long skip = task.jsonOffset;
+            while (skip > 0) {
+                long n = jsonIn.skip(skip);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of " + task.json);
+                }
+                skip -= n;
+            }
+            BufferedReader lines = new BufferedReader(new InputStreamReader(jsonIn, UTF8), BUFFER_SIZE);
+
+            PageReadStore pages = reader.readNextRowGroup();
+            RecordReader<Group> records = new ColumnIOFactory().getColumnIO(schema)
+                    .getRecordReader(pages, new GroupRecordConverter(schema));
+            for (long r = 0; r < pages.getRowCount(); r++) {
+                Group record = records.read();
+                String line = lines.readLine();
+                String problem = compareRecord(schema, task.partitionValues, record, line);
+                if (problem != null) {
+                    result.mismatchCount++;
+                    if (result.mismatches.size() < maxMismatches) {
+                        result.mismatches.add(new Mismatch(task.firstRow + r, problem));
+                    }
+                }
+            }
+        } finally {
+            jsonIn.close();
+            reader.close();
+        }
+        return result;
+    }
+
+    // null if the record and the JSON line hold the same values, otherwise what differs;
+    // the partition columns of a dataset's data file are in its path instead of the record
+    static String compareRecord(MessageType schema, Map<String, String> partitionValues, Group record, String line){
+        if (line == null) {
+            return "missing JSON line";
+        }
+        JsonObject json;
+        try {
+            JsonReader reader = Json.createReader(new StringReader(line));
+            json = reader.readObject();
+            reader.close();
+        } catch (RuntimeException e) {
+            // JsonException, or a NumberFormatException from a broken number
+            return "unparseable JSON line: " + e;
+        }
+
+        // javax.json's get() scans the whole object, which is quadratic on wide schemas
+        HashMap<String, JsonValue> fields = new HashMap<String, JsonValue>(json);
+        for (Map.Entry<String, String> p : partitionValues.entrySet()) {
+            JsonValue value = fields.remove(p.getKey());
+            if (!samePartitionValue(p.getValue(), value)) {
+                return p.getKey() + ": partition " + p.getValue() + ", JSON " + value;
+            }
+        }
+        return compareFields(schema, record, fields, "");
+    }
+
+    // null if the fields of a group instance (or record) hold the values of its JSON object, otherwise
+    // what differs; path is the dotted path of the group
+    private static String compareFields(GroupType schema, Group group, Map<String, JsonValue> fields, String path){
+        for (String key : fields.keySet()) {
+            if (!schema.containsField(key)) {
+                return "JSON field " + path + key + " is not in the schema";
+            }
+        }
+        for (int i = 0; i < schema.getFieldCount(); i++) {
+            Type field = schema.getType(i);
+            String problem = compareField(field, group, i, fields.get(field.getName()), path + field.getName());
+            if (problem != null) {
+                return problem;
+            }
+        }
+        return null;
+    }
+
+    // compare the i-th field of a group instance; a missing JSON value (null) stands for null or an empty list
+    private static String compareField(Type field, Group group, int i, JsonValue value, String name){
+        int count = group.getFieldRepetitionCount(i);
+        if (field.isRepetition(Type.Repetition.REPEATED)) {
+            // compact sidecars leave out empty lists
+            int jsonCount = value == null ? 0 : value instanceof JsonArray ? ((JsonArray) value).size() : -1;
+            if (jsonCount != count) {
+                return name + ": parquet has " + count + " value(s), JSON " + value;
+            }
+            for (int j = 0; j < count; j++) {
+                String problem = compareValue(field, group, i, j, ((JsonArray) value).get(j), name + "[" + j + "]");
+                if (problem != null) {
+                    return problem;
+                }
+            }
+            return null;
+        } else if (count == 0) {
+            // compact sidecars leave out nulls
+            if (value != null && value != JsonValue.NULL) {
+                return name + ": parquet null, JSON " + value;
+            }
+            return null;
+        } else if (value == null) {
+            return name + ": parquet " + describe(field, group, i) + ", JSON " + value;
+        }
+        return compareValue(field, group, i, 0, value, name);
+    }
+
+    // compare one value of a field: a primitive, or a LIST, MAP or other group
+    private static String compareValue(Type field, Group group, int i, int j, JsonValue value, String name){
+        if (field.isPrimitive()) {
+            PrimitiveType primitive = field.asPrimitiveType();
+            if (!sameValue(primitive.getPrimitiveTypeName(), ValueFormat.of(primitive), group, i, j, value)) {
+                return name + ": parquet " + group.getValueToString(i, j) + ", JSON " + value;
+            }
+            return null;
+        }
+        GroupType type = field.asGroupType();
+        Group g = group.getGroup(i, j);
+        OriginalType original = type.getOriginalType();
+        if (original == OriginalType.LIST && isRepeatedGroup(type.getType(0), 1)) {
+            int count = g.getFieldRepetitionCount(0);
+            if (!(value instanceof JsonArray) || ((JsonArray) value).size() != count) {
+                return name + ": parquet has " + count + " element(s), JSON " + value;
+            }
+            Type element = type.getType(0).asGroupType().getType(0);
+            for (int k = 0; k < count; k++) {
+                String problem = compareField(element, g.getGroup(0, k), 0, ((JsonArray) value).get(k),
+                        name + "[" + k + "]");
+                if (problem != null) {
+                    return problem;
+                }
+            }
+            return null;
+        } else if ((original == OriginalType.MAP || original == OriginalType.MAP_KEY_VALUE)
+                && isRepeatedGroup(type.getType(0), 2)) {
+            int count = g.getFieldRepetitionCount(0);
+            if (!(value instanceof JsonObject) || ((JsonObject) value).size() != count) {
+                return name + ": parquet has " + count + " entries, JSON " + value;
+            }
+            Type mapValue = type.getType(0).asGroupType().getType(1);
+            for (int k = 0; k < count; k++) {
+                Group keyValue = g.getGroup(0, k);
+                String key = keyValue.getValueToString(0, 0);
+                if (!((JsonObject) value).containsKey(key)) {
+                    return name + ": parquet has key " + key + ", JSON " + value;
+                }
+                String problem = compareField(mapValue, keyValue, 1, ((JsonObject) value).get(key),
+                        name + "[" + key + "]");
+                if (problem != null) {
+                    return problem;
+                }
+            }
+            return null;
+        }
+        if (!(value instanceof JsonObject)) {
+            return name + ": parquet group, JSON " + value;
+        }
+        return compareFields(type, g, new HashMap<String, JsonValue>((JsonObject) value), name + ".");
+    }
+
+    private static boolean isRepeatedGroup(Type field, int numFields){
+        return field.isRepetition(Type.Repetition.REPEATED) && !field.isPrimitive()
+                && field.asGroupType().getFieldCount() == numFields;
+    }
+
+    private static String describe(Type field, Group group, int i){
+        return field.isPrimitive() ? group.getValueToString(i, 0) : "group";
+    }
+
+    // null if the record holds row `row` of the .values sidecar, otherwise what differs
+    static String compareRecord(MessageType schema, Group record, ValuesSidecar values, int row){
+        for (int i = 0; i < schema.getFieldCount(); i++) {
+            ValuesSidecar.Column c = values.column(i);
+            int count = record.getFieldRepetitionCount(i);
+            if (c.repeated) {
+                if (c.listLength(row) != count) {
+                    return c.name + ": parquet has " + count + " value(s), sidecar " + c.listLength(row);
+                }
+                int start = c.listStart(row);
+                for (int j = 0; j < count; j++) {
+                    if (!sameValue(c, start + j, record, i, j)) {
+                        return c.name + "[" + j + "]: parquet " + record.getValueToString(i, j) +
+                                ", sidecar " + c.valueToString(start + j);
+                    }
+                }
+            } else if (c.isNull(row) || count == 0) {
+                if (!c.isNull(row) || count != 0) {
+                    return c.name + ": parquet " + (count == 0 ? "null" : record.getValueToString(i, 0)) +
+                            ", sidecar " + (c.isNull(row) ? "null" : c.valueToString(row));
+                }
+            } else if (!sameValue(c, row, record, i, 0)) {
+                return c.name + ": parquet " + record.getValueToString(i, 0) + ", sidecar " + c.valueToString(row);
+            }
+        }
+        return null;
+    }
+
+    // floating point values bit for bit
+    private static boolean sameValue(ValuesSidecar.Column c, int pos, Group record, int field, int index){
+        switch (c.type) {
+            case BOOLEAN: return c.getBoolean(pos) == record.getBoolean(field, index);
+            case INT32:   return c.getInt(pos) == record.getInteger(field, index);
+            case INT64:   return c.getLong(pos) == record.getLong(field, index);
+            case FLOAT:
+                return c.getInt(pos) == Float.floatToRawIntBits(record.getFloat(field, index));
+            case DOUBLE:
+                return c.getLong(pos) == Double.doubleToRawLongBits(record.getDouble(field, index));
+            case INT96:
+                return c.getBytes(pos).equals(record.getInt96(field, index).toByteBuffer());
+            default:
+                return c.getBytes(pos).equals(record.getBinary(field, index).toByteBuffer());
+        }
+    }
+
+    // the path holds the value's text form, so numbers compare as decimals
+    private static boolean samePartitionValue(String pathValue, JsonValue value){
+        if (pathValue.equals(DatasetGenerator.DEFAULT_PARTITION)) {
+            return value == null || value == JsonValue.NULL;
+        } else if (value instanceof JsonString) {
+            return ((JsonString) value).getString().equals(pathValue);
+        } else if (value instanceof JsonNumber) {
+            try {
+                return new BigDecimal(pathValue).compareTo(((JsonNumber) value).bigDecimalValue()) == 0;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return value != null && value.toString().equals(pathValue); // true, false
+    }
+
+    private static boolean sameValue(PrimitiveTypeName type, ValueFormat format, Group record, int field, int index,
+                                     JsonValue value){
+        if (!format.isPlain()) {
+            return sameLogicalValue(type, format, record, field, index, value);
+        }
+        switch (type) {
+            case BOOLEAN:
+                return value == (record.getBoolean(field, index) ? JsonValue.TRUE : JsonValue.FALSE);
+            case INT32:
+                return value instanceof JsonNumber && ((JsonNumber) value).isIntegral()
+                        && ((JsonNumber) value).longValue() == record.getInteger(field, index);
+            case INT64:
+                return value instanceof JsonNumber && ((JsonNumber) value).isIntegral()
+                        && ((JsonNumber) value).longValue() == record.getLong(field, index);
+            case FLOAT:
+                return value instanceof JsonNumber
+                        && Float.compare(Float.parseFloat(value.toString()), record.getFloat(field, index)) == 0;
+            case DOUBLE:
+                return value instanceof JsonNumber
+                        && Double.compare(Double.parseDouble(value.toString()), record.getDouble(field, index)) == 0;
+            default:
+                return value instanceof JsonString
+                        && ((JsonString) value).getString().equals(record.getBinary(field, index).toStringUsingUTF8());
+        }
+    }
+
+    // dates and timestamps compare in their text form, decimals as numbers
+    private static boolean sameLogicalValue(PrimitiveTypeName type, ValueFormat format, Group record, int field,
+                                            int index, JsonValue value){
+        String text;
+        switch (type) {
+            case INT32: text = format.format(record.getInteger(field, index)); break;
+            case INT64: text = format.format(record.getLong(field, index)); break;
+            case INT96: text = format.format(record.getInt96(field, index)); break;
+            default:    text = format.format(record.getBinary(field, index)); break;
+        }
+        if (format.isNumber()) {
+            return value instanceof JsonNumber
+                    && new BigDecimal(text).compareTo(((JsonNumber) value).bigDecimalValue()) == 0;
+        }
+        return value instanceof JsonString && ((JsonString) value).getString().equals(text);
+    }
+}
@@ -0,0 +1,355 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+import org.apache.parquet.column.ParquetProperties.WriterVersion;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageTypeParser;
+
+/**
+ * Test cases described in a JSON file instead of code.
+ *
+ * The file holds an optional "valueSets" object (value set name to list of literals, the last one
+ * the null-value; added to or replacing the built-in sets) and a "cases" array. A case is named
+ * group + variations + the usual tail, and sets the TestOptions fields:
+ *
+ *   group, variations        file name; "${distribution}" in a variation is replaced by the distribution
+ *   firstType, rotateTypes, columns   type sequence, or "types": explicit list of value set names
+ *   records                  or "recordSize" with "storage": records that fill the storage dimensions;
+ *                             neither with exact storage, whose pages decide the records
+ *   repetition               a RepetitionPattern
+ *   storage                  {"columns", "blocks", "pagesPerBlock", "exact"}; exact: true ends every
+ *                             column chunk after pagesPerBlock pages and the file after "blocks" row
+ *                             groups (see PageLayout); needs dictionary encoding off, and no
+ *                             distribution or dataset
+ *   distribution             {"kind": uniform|zipf|sequential|sorted|clustered|range, "cardinality",
+ *                             "exponent", "partitions", "nullRatio", "listLength": [min, max], "seed"}
+ *   skipManifest             [target selectivities]: write a SkipManifest for the ordered columns
+ *   dataset                  {"partitionBy": [column names], "files", "sizeSkew"}: a DatasetGenerator
+ *                             directory instead of a single file
+ *   nested                   {"layouts": [list|map|struct], "depth"}: wrap each column in depth levels of
+ *                             the layouts, rotated by the column's position (see NestedColumn)
+ *   valuesSidecar            true: also write the binary .values sidecar (see ValuesSidecar); flat
+ *                             single-file cases only
+ *   codec, dictionary, writerVersion, validating
+ *   forEach                  {"field": [values]}: one case per value (per combination, for several fields)
+ *
+ * A "comment" on a case and a "description" of the plan are ignored.
+ */
+class TestPlan {
+    /** Classpath resource with the default test cases */
+    static final String DEFAULT_PLAN = "testplan.json";
+
+    private static final HashSet<String> CASE_FIELDS = new HashSet<String>(Arrays.asList(
+            "group", "variations", "firstType", "rotateTypes", "columns", "types", "records", "recordSize",
+            "repetition", "storage", "distribution", "codec", "dictionary", "writerVersion", "validating",
+            "skipManifest", "dataset", "nested", "valuesSidecar", "forEach", "comment"));
+
+    static ArrayList<TestFileGenerator.TestCase> loadDefault(String tdname){
+        InputStream in = TestPlan.class.getClassLoader().getResourceAsStream(DEFAULT_PLAN);
+        if (in == null) {
+            throw new IllegalStateException("Default test plan " + DEFAULT_PLAN + " is not on the classpath");
+        }
+        try {
+            return load(in, tdname);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    static ArrayList<TestFileGenerator.TestCase> load(File plan, String tdname) throws IOException {
+        InputStream in = new FileInputStream(plan);
+        try {
+            return load(in, tdname);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Bad test plan " + plan + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    static ArrayList<TestFileGenerator.TestCase> load(InputStream in, String tdname){
+        JsonReader reader = Json.createReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+        JsonObject plan = reader.readObject();
+        reader.close();
+
+        HashMap<String, String[]> valueSets = new HashMap<String, String[]>(TestFileGenerator.valueMap);
+        JsonObject sets = plan.getJsonObject("valueSets");
+        if (sets != null) {
+            for (String name : sets.keySet()) {
+                valueSets.put(name, strings(sets.getJsonArray(name)));
+            }
+        }
+
+        ArrayList<TestFileGenerator.TestCase> cases = new ArrayList<TestFileGenerator.TestCase>();
+        JsonArray entries = plan.getJsonArray("cases");
+        if (entries == null) {
+            throw new IllegalArgumentException("Test plan has no \"cases\"");
+        }
+        for (JsonValue entry : entries) {
+            for (JsonObject c : expand((JsonObject) entry)) {
+                cases.add(makeCase(c, valueSets, tdname));
+            }
+        }
+        return cases;
+    }
+
+    // one object per combination of the forEach values, with the field set to the value
+    private static List<JsonObject> expand(JsonObject c){
+        ArrayList<JsonObject> expanded = new ArrayList<JsonObject>();
+        JsonObject forEach = c.getJsonObject("forEach");
+        if (forEach == null) {
+            expanded.add(c);
+            return expanded;
+        }
+        expanded.add(copyWithout(c, "forEach"));
+        for (String field : forEach.keySet()) {
+            ArrayList<JsonObject> next = new ArrayList<JsonObject>();
+            for (JsonObject partial : expanded) {
+                for (JsonValue value : forEach.getJsonArray(field)) {
+                    next.add(with(partial, field, value));
+                }
+            }
+            expanded = next;
+        }
+        return expanded;
+    }
+
+    private static TestFileGenerator.TestCase makeCase(JsonObject c, HashMap<String, String[]> valueSets,
+                                                       String tdname){
+        for (String key : c.keySet()) {
+            if (!CASE_FIELDS.contains(key)) {
+                throw new IllegalArgumentException("Unknown test case field \"" + key + "\" in " + c);
+            }
+        }
+        String group = c.getString("group");
+        TestFileGenerator.RepetitionPattern repetition =
+                TestFileGenerator.RepetitionPattern.valueOf(c.getString("repetition"));
+
+        ArrayList<String> types = null;
+        String firstType;
+        int columns;
+        if (c.containsKey("types")) {
+            types = new ArrayList<String>(Arrays.asList(strings(c.getJsonArray("types"))));
+            firstType = types.get(0);
+            columns = types.size();
+        } else {
+            firstType = c.getString("firstType");
+            columns = c.getInt("columns");
+        }
+        boolean rotateTypes = c.getBoolean("rotateTypes", false);
+
+        TestFileGenerator.StorageDimensions storage = null;
+        JsonObject sd = c.getJsonObject("storage");
+        if (sd != null) {
+            storage = new TestFileGenerator.StorageDimensions(sd.getInt("columns"), sd.getInt("blocks"),
+                    sd.getInt("pagesPerBlock"));
+        }
+        boolean exact = sd != null && sd.getBoolean("exact", false);
+        long records;
+        if (exact) {
+            if (c.containsKey("records") || c.containsKey("recordSize")) {
+                throw new IllegalArgumentException("Exact storage decides the records itself: " + c);
+            }
+            // a distribution is laid out over the records, which are what the page ends find out
+            if (c.containsKey("distribution") || c.containsKey("dataset")) {
+                throw new IllegalArgumentException("Exact storage needs value sets and a single file: " + c);
+            }
+            records = 0; // until the page ends are planned, below
+        } else if (c.containsKey("records")) {
+            records = c.getJsonNumber("records").longValueExact();
+        } else if (storage != null && c.containsKey("recordSize")) {
+            records = storage.calcNumRecords(c.getInt("recordSize"));
+        } else {
+            throw new IllegalArgumentException("Test case needs \"records\", or \"storage\" and \"recordSize\": " + c);
+        }
+
+        TestFileGenerator.TestOptions options = new TestFileGenerator.TestOptions(firstType, rotateTypes, columns,
+                records, repetition, storage);
+        if (c.containsKey("codec")) {
+            options.codec = CompressionCodecName.valueOf(c.getString("codec"));
+        }
+        options.enableDictionary = c.getBoolean("dictionary", options.enableDictionary);
+        if (c.containsKey("writerVersion")) {
+            options.writerVersion = WriterVersion.valueOf(c.getString("writerVersion"));
+        }
+        options.validating = c.getBoolean("validating", options.validating);
+        if (c.containsKey("distribution")) {
+            options.distribution = distribution(c.getJsonObject("distribution"), records);
+        }
+        if (c.containsKey("skipManifest")) {
+            JsonArray selectivities = c.getJsonArray("skipManifest");
+            options.skipSelectivities = new double[selectivities.size()];
+            for (int i = 0; i < selectivities.size(); i++) {
+                options.skipSelectivities[i] = selectivities.getJsonNumber(i).doubleValue();
+            }
+        }
+
+        TestFileGenerator.TestFileName tfn = new TestFileGenerator.TestFileName(group, tdname + "/");
+        if (c.containsKey("variations")) {
+            for (String variation : strings(c.getJsonArray("variations"))) {
+                if (variation.equals("${distribution}")) {
+                    if (options.distribution == null) {
+                        throw new IllegalArgumentException("${distribution} in a case without distribution: " + c);
+                    }
+                    variation = options.distribution.describe();
+                }
+                tfn.addVariation(variation);
+            }
+        }
+
+        if (types == null) {
+            types = TestFileGenerator.buildRawTypeSequence(columns, firstType, rotateTypes);
+        }
+        for (String type : types) {
+            if (options.distribution == null && !valueSets.containsKey(type)) {
+                throw new IllegalArgumentException("Unknown value set \"" + type + "\" in " + c);
+            }
+        }
+        ArrayList<TestFileGenerator.VarProperties> propList = options.distribution == null
+                ? TestFileGenerator.makePropertyList(valueSets, types, repetition)
+                : TestFileGenerator.makePropertyList(options.distribution, types, repetition);
+        ArrayList<TestFileGenerator.VarProperties> planned = null;
+        if (exact) {
+            if (options.enableDictionary) {
+                throw new IllegalArgumentException("Exact storage needs dictionary encoding off: " + c);
+            }
+            planned = TestFileGenerator.makePropertyList(valueSets, types, repetition);
+        }
+        if (c.containsKey("dataset")) {
+            if (options.skipSelectivities != null) {
+                throw new IllegalArgumentException("A dataset can't have a skip manifest: " + c);
+            }
+            options.dataset = dataset(c.getJsonObject("dataset"), propList);
+        }
+        if (c.containsKey("nested")) {
+            if (options.skipSelectivities != null || options.dataset != null) {
+                throw new IllegalArgumentException("Nested columns can't have a skip manifest or a dataset: " + c);
+            }
+            JsonObject n = c.getJsonObject("nested");
+            String[] names = strings(n.getJsonArray("layouts"));
+            NestedColumn.Kind[] layouts = new NestedColumn.Kind[names.length];
+            for (int i = 0; i < names.length; i++) {
+                layouts[i] = NestedColumn.kind(names[i]);
+            }
+            int depth = n.getInt("depth", 1);
+            if (layouts.length == 0 || depth < 1) {
+                throw new IllegalArgumentException("Nesting needs layouts and a depth of at least 1: " + c);
+            }
+            TestFileGenerator.nest(propList, layouts, depth);
+            if (exact) {
+                TestFileGenerator.nest(planned, layouts, depth);
+            }
+        }
+        options.valuesSidecar = c.getBoolean("valuesSidecar", false);
+        if (options.valuesSidecar && !TestFileGenerator.writesValuesSidecar(options, propList)) {
+            throw new IllegalArgumentException("A .values sidecar needs a flat, single-file case: " + c);
+        }
+        if (exact) {
+            // shred a copy of the records, the case's own generators have to start at the first one
+            storage.pageEnds = PageLayout.plan(storage,
+                    MessageTypeParser.parseMessageType(TestFileGenerator.emitFlatSchemaString(planned)), planned,
+                    options.writerVersion);
+            options.numRecords = storage.pageEnds[storage.pageEnds.length - 1];
+        }
+        tfn.appendTail(options);
+        return new TestFileGenerator.TestCase(tfn, options, propList);
+    }
+
+    private static ValueDistribution distribution(JsonObject d, long records){
+        String kind = d.getString("kind");
+        long cardinality = d.getJsonNumber("cardinality").longValueExact();
+        double nullRatio = d.containsKey("nullRatio") ? d.getJsonNumber("nullRatio").doubleValue() : 0.0;
+        int minList = 0;
+        int maxList = 0;
+        if (d.containsKey("listLength")) {
+            JsonArray range = d.getJsonArray("listLength");
+            minList = range.getInt(0);
+            maxList = range.getInt(1);
+        }
+        long seed = d.containsKey("seed") ? d.getJsonNumber("seed").longValueExact() : 0;
+        double exponent = d.containsKey("exponent") ? d.getJsonNumber("exponent").doubleValue() : 0;
+        int partitions = d.getInt("partitions", 1);
+        return new ValueDistribution(ValueDistribution.Kind.valueOf(kind.toUpperCase()), cardinality, exponent,
+                nullRatio, minList, maxList, seed, records, partitions);
+    }
+
+    private static TestFileGenerator.DatasetLayout dataset(JsonObject d,
+                                                           ArrayList<TestFileGenerator.VarProperties> propList){
+        String[] names = strings(d.getJsonArray("partitionBy"));
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            int col = -1;
+            if (names[i].startsWith(TestFileGenerator.VAR_NAME_PREFIX)) {
+                try {
+                    col = Integer.parseInt(names[i].substring(TestFileGenerator.VAR_NAME_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    // reported below
+                }
+            }
+            if (col < 0 || col >= propList.size()) {
+                throw new IllegalArgumentException("Unknown partition column \"" + names[i] + "\"");
+            }
+            if (propList.get(col).repetition.equals("repeated")) {
+                throw new IllegalArgumentException("Can't partition by repeated column \"" + names[i] + "\"");
+            }
+            columns[i] = col;
+        }
+        if (columns.length == 0 || columns.length == propList.size()) {
+            throw new IllegalArgumentException("A dataset needs partition columns and data columns");
+        }
+        double skew = d.containsKey("sizeSkew") ? d.getJsonNumber("sizeSkew").doubleValue() : 0;
+        return new TestFileGenerator.DatasetLayout(columns, d.getInt("files", 1), skew);
+    }
+
+    private static String[] strings(JsonArray array){
+        String[] s = new String[array.size()];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = array.getString(i);
+        }
+        return s;
+    }
+
+    private static JsonObject copyWithout(JsonObject o, String skip){
+        JsonObjectBuilder b = Json.createObjectBuilder();
+        for (Map.Entry<String, JsonValue> e : o.entrySet()) {
+            if (!e.getKey().equals(skip)) {
+                b.add(e.getKey(), e.getValue());
+            }
+        }
+        return b.build();
+    }
+
+    private static JsonObject with(JsonObject o, String field, JsonValue value){
+        JsonObjectBuilder b = Json.createObjectBuilder();
+        for (Map.Entry<String, JsonValue> e : o.entrySet()) {
+            b.add(e.getKey(), e.getValue());
+        }
+        b.add(field, value);
+        return b.build();
+    }
+
+    private static void closeQuietly(InputStream in){
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing was written
+        }
+    }
+}
@@ -0,0 +1,419 @@
+import java.util.SplittableRandom;
+
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * Seeded generator of column values, as an alternative to cycling through a fixed value set.
+ *
+ * Each value slot gets one of cardinality distinct values, drawn uniformly, Zipf-distributed
+ * (value 0 the most frequent) or sequentially (record number + list position, wrapping around).
+ * Optional values are null with probability nullRatio; lists get a uniformly distributed length
+ * between minListLength and maxListLength. Distinct value k is k for integer types, k/4 for
+ * floating point types, true for odd k and "v<k>" for binaries, so value order follows k.
+ *
+ * The ordered kinds lay the value range out over the file's records, so that row groups get
+ * narrow, distinct min/max statistics: SORTED values grow with the record number; RANGE splits the
+ * records into partitions in order and draws each partition's values uniformly from its own slice
+ * of the value range; CLUSTERED does the same with the slices in shuffled order. Their binaries are
+ * zero-padded ("v007"), so that string order follows k as well.
+ *
+ * The random draws come from a SplittableRandom that is re-seeded at the start of every block of
+ * BLOCK_RECORDS records, from the column seed and the block number. Any record can be reached by
+ * replaying at most one block, so shards written by different threads hold exactly the values a
+ * serial run would.
+ */
+class ValueDistribution {
+    enum Kind { UNIFORM, ZIPF, SEQUENTIAL, SORTED, CLUSTERED, RANGE }
+
+    static final int BLOCK_RECORDS = 1024;
+
+    final Kind kind;
+    final long cardinality;
+    final double zipfExponent;  // ZIPF only
+    final double nullRatio;
+    final int minListLength;
+    final int maxListLength;
+    final long seed;
+    final long records;     // ordered kinds: number of records the value range is laid out over
+    final int partitions;   // CLUSTERED, RANGE
+
+    private final int[] clusterSlices; // CLUSTERED: slice of the value range of each partition
+    private final int binaryDigits;    // of the largest value
+
+    ValueDistribution(Kind kind, long cardinality, double zipfExponent, double nullRatio,
+                      int minListLength, int maxListLength, long seed){
+        this(kind, cardinality, zipfExponent, nullRatio, minListLength, maxListLength, seed, 0, 1);
+    }
+
+    ValueDistribution(Kind kind, long cardinality, double zipfExponent, double nullRatio,
+                      int minListLength, int maxListLength, long seed, long records, int partitions){
+        if (cardinality < 1) {
+            throw new IllegalArgumentException("Cardinality must be positive: " + cardinality);
+        }
+        if (nullRatio < 0 || nullRatio > 1) {
+            throw new IllegalArgumentException("Null ratio must be within [0, 1]: " + nullRatio);
+        }
+        if (minListLength < 0 || maxListLength < minListLength) {
+            throw new IllegalArgumentException("Bad list length range: " + minListLength + ".." + maxListLength);
+        }
+        if (kind == Kind.ZIPF && zipfExponent <= 0) {
+            throw new IllegalArgumentException("Zipf exponent must be positive: " + zipfExponent);
+        }
+        if (isOrdered(kind) && records < 1) {
+            throw new IllegalArgumentException(kind + " needs the number of records: " + records);
+        }
+        if (partitions < 1 || partitions > cardinality) {
+            throw new IllegalArgumentException("Partitions must be within [1, cardinality]: " + partitions);
+        }
+        this.kind = kind;
+        this.cardinality = cardinality;
+        this.zipfExponent = zipfExponent;
+        this.nullRatio = nullRatio;
+        this.minListLength = minListLength;
+        this.maxListLength = maxListLength;
+        this.seed = seed;
+        this.records = records;
+        this.partitions = partitions;
+        this.clusterSlices = kind == Kind.CLUSTERED ? shuffledSlices(partitions, seed) : null;
+        this.binaryDigits = Long.toString(cardinality - 1).length();
+    }
+
+    static ValueDistribution uniform(long cardinality, double nullRatio, int minList, int maxList, long seed){
+        return new ValueDistribution(Kind.UNIFORM, cardinality, 0, nullRatio, minList, maxList, seed);
+    }
+
+    static ValueDistribution zipf(long cardinality, double exponent, double nullRatio, int minList, int maxList,
+                                  long seed){
+        return new ValueDistribution(Kind.ZIPF, cardinality, exponent, nullRatio, minList, maxList, seed);
+    }
+
+    static ValueDistribution sequential(long cardinality, double nullRatio, int minList, int maxList, long seed){
+        return new ValueDistribution(Kind.SEQUENTIAL, cardinality, 0, nullRatio, minList, maxList, seed);
+    }
+
+    static ValueDistribution sorted(long cardinality, double nullRatio, int minList, int maxList, long records,
+                                    long seed){
+        return new ValueDistribution(Kind.SORTED, cardinality, 0, nullRatio, minList, maxList, seed, records, 1);
+    }
+
+    static ValueDistribution range(long cardinality, int partitions, double nullRatio, int minList, int maxList,
+                                   long records, long seed){
+        return new ValueDistribution(Kind.RANGE, cardinality, 0, nullRatio, minList, maxList, seed, records,
+                partitions);
+    }
+
+    static ValueDistribution clustered(long cardinality, int partitions, double nullRatio, int minList, int maxList,
+                                       long records, long seed){
+        return new ValueDistribution(Kind.CLUSTERED, cardinality, 0, nullRatio, minList, maxList, seed, records,
+                partitions);
+    }
+
+    /** The same distribution for another column: the seed is mixed with the column number */
+    ValueDistribution forColumn(int column){
+        return new ValueDistribution(kind, cardinality, zipfExponent, nullRatio, minListLength, maxListLength,
+                mix(seed + column), records, partitions);
+    }
+
+    /** Whether value order follows the record number (per partition), for row groups of distinct ranges */
+    boolean isOrdered(){
+        return isOrdered(kind);
+    }
+
+    private static boolean isOrdered(Kind kind){
+        return kind == Kind.SORTED || kind == Kind.CLUSTERED || kind == Kind.RANGE;
+    }
+
+    double averageListLength(){
+        return (minListLength + maxListLength) / 2.0;
+    }
+
+    /** Short description for test case file names */
+    String describe(){
+        String s = kind.name().toLowerCase();
+        if (kind == Kind.ZIPF) {
+            s += "-" + zipfExponent;
+        } else if (kind == Kind.CLUSTERED || kind == Kind.RANGE) {
+            s += "-" + partitions;
+        }
+        return s + "-card-" + cardinality + "-null-" + nullRatio + "-list-" + minListLength + "-" + maxListLength;
+    }
+
+    @Override
+    public String toString(){
+        return describe() + (isOrdered() ? "-records-" + records : "") + "-seed-" + seed;
+    }
+
+    /** Generator state of one column, positioned at the given record */
+    Cursor cursor(boolean optional, boolean repeated, long record){
+        return new Cursor(optional, repeated, record);
+    }
+
+    class Cursor{
+        private final boolean optional;
+        private final boolean repeated;
+        private final ZipfSampler zipf;
+        private SplittableRandom random;
+        private long record;    // next record to generate
+
+        private Cursor(boolean optional, boolean repeated, long record){
+            this.optional = optional;
+            this.repeated = repeated;
+            this.zipf = kind == Kind.ZIPF ? new ZipfSampler(cardinality, zipfExponent) : null;
+
+            // replay the start of the record's block
+            this.record = record - record % BLOCK_RECORDS;
+            while (this.record < record) {
+                next(null, 0);
+            }
+        }
+
+        /** Fill the first numRows rows of a batch column */
+        void fill(ColumnBatch.Column c, int numRows){
+            for (int row = 0; row < numRows; row++) {
+                next(c, row);
+            }
+        }
+
+        // generate one record; with a null column only the random draws are made
+        private void next(ColumnBatch.Column c, int row){
+            if (!repeated) {
+                long k = nextKey();
+                if (c != null) {
+                    if (k < 0) {
+                        c.setNull(row);
+                    } else {
+                        set(c, row, k);
+                    }
+                }
+                return;
+            }
+            startRecord();
+            int length = minListLength + random.nextInt(maxListLength - minListLength + 1);
+            for (int i = 0; i < length; i++) {
+                long k = draw(i);
+                if (c != null) {
+                    add(c, k);
+                }
+            }
+            if (c != null) {
+                c.endList(row);
+            }
+            record++;
+        }
+
+        /** The distinct value of the next record of a required or optional column; -1 for null */
+        long nextKey(){
+            startRecord();
+            long k = optional && nullRatio > 0 && random.nextDouble() < nullRatio ? -1 : draw(0);
+            record++;
+            return k;
+        }
+
+        private void startRecord(){
+            if (record % BLOCK_RECORDS == 0) {
+                random = new SplittableRandom(mix(seed ^ mix(record / BLOCK_RECORDS)));
+            }
+        }
+
+        private long draw(int listPosition){
+            switch (kind) {
+                case UNIFORM:    return random.nextLong(cardinality);
+                case ZIPF:       return zipf.sample(random) - 1;
+                case SORTED:     return Math.min(cardinality - 1, (long) (record * ((double) cardinality / records)));
+                case RANGE:      return drawFromSlice(partition());
+                case CLUSTERED:  return drawFromSlice(clusterSlices[partition()]);
+                default:         return (record + listPosition) % cardinality;
+            }
+        }
+
+        private int partition(){
+            return (int) Math.min(partitions - 1, (long) (record * ((double) partitions / records)));
+        }
+
+        private long drawFromSlice(int slice){
+            long start = sliceStart(slice);
+            return start + random.nextLong(sliceStart(slice + 1) - start);
+        }
+    }
+
+    // first value of the slice-th of partitions equal slices of the value range
+    private long sliceStart(int slice){
+        return slice * (cardinality / partitions) + Math.min(slice, cardinality % partitions);
+    }
+
+    // a seeded permutation of the slices: Fisher-Yates
+    private static int[] shuffledSlices(int partitions, long seed){
+        int[] slices = new int[partitions];
+        for (int i = 0; i < partitions; i++) {
+            slices[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(mix(seed ^ 0x5ca1ab1eL));
+        for (int i = partitions - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = slices[i];
+            slices[i] = slices[j];
+            slices[j] = t;
+        }
+        return slices;
+    }
+
+    /** The smallest distinct value of which about a fraction selectivity of the non-null values are smaller */
+    long quantile(double selectivity){
+        return Math.max(0, Math.min(cardinality, Math.round(selectivity * cardinality)));
+    }
+
+    /** Number of the first numRecords records of a required or optional column with a value below k */
+    long countBelow(boolean optional, long numRecords, long k){
+        Cursor cursor = new Cursor(optional, false, 0);
+        long count = 0;
+        for (long r = 0; r < numRecords; r++) {
+            long key = cursor.nextKey();
+            if (key >= 0 && key < k) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Distinct value k as the column type's value: Integer, Long, Float, Double, Boolean or Binary */
+    Comparable<?> value(PrimitiveTypeName type, long k){
+        switch (type) {
+            case BOOLEAN: return (k & 1) == 1;
+            case INT32:   return (int) k;
+            case INT64:   return k;
+            case FLOAT:   return k / 4f;
+            case DOUBLE:  return k / 4.0;
+            default:      return binary(k);
+        }
+    }
+
+    private void set(ColumnBatch.Column c, int row, long k){
+        switch (c.type) {
+            case BOOLEAN: c.setBoolean(row, (k & 1) == 1); break;
+            case INT32:   c.setInt(row, (int) k); break;
+            case INT64:   c.setLong(row, k); break;
+            case FLOAT:   c.setFloat(row, k / 4f); break;
+            case DOUBLE:  c.setDouble(row, k / 4.0); break;
+            case INT96:   c.setBinary(row, int96(k)); break;
+            case FIXED_LEN_BYTE_ARRAY: c.setBinary(row, ValueFormat.fixed(k, c.typeLength)); break;
+            default:      c.setBinary(row, binary(k)); break;
+        }
+    }
+
+    private void add(ColumnBatch.Column c, long k){
+        switch (c.type) {
+            case BOOLEAN: c.addBoolean((k & 1) == 1); break;
+            case INT32:   c.addInt((int) k); break;
+            case INT64:   c.addLong(k); break;
+            case FLOAT:   c.addFloat(k / 4f); break;
+            case DOUBLE:  c.addDouble(k / 4.0); break;
+            case INT96:   c.addBinary(int96(k)); break;
+            case FIXED_LEN_BYTE_ARRAY: c.addBinary(ValueFormat.fixed(k, c.typeLength)); break;
+            default:      c.addBinary(binary(k)); break;
+        }
+    }
+
+    private Binary binary(long k){
+        if (!isOrdered()) {
+            return Binary.fromString("v" + k);
+        }
+        String digits = Long.toString(k);
+        StringBuilder sb = new StringBuilder(1 + binaryDigits).append('v');
+        for (int i = digits.length(); i < binaryDigits; i++) {
+            sb.append('0');
+        }
+        return Binary.fromString(sb.append(digits).toString());
+    }
+
+    // int96 timestamp k seconds after the epoch
+    private static Binary int96(long k){
+        return ValueFormat.int96(Math.floorDiv(k, 86400L), Math.floorMod(k, 86400L) * 1000000000L);
+    }
+
+    // rough size in bytes of one value of the given type
+    int estimateValueSize(String type){
+        PrimitiveType primitive = TestFileGenerator.primitiveType(type);
+        switch (primitive.getPrimitiveTypeName()) {
+            case BOOLEAN: return 1;
+            case INT32:
+            case FLOAT:   return 4;
+            case INT64:
+            case DOUBLE:  return 8;
+            case INT96:   return ValueFormat.INT96_LENGTH;
+            case FIXED_LEN_BYTE_ARRAY: return primitive.getTypeLength();
+            default:      return 4 + 1 + binaryDigits; // length prefix + "v<k>"
+        }
+    }
+
+    // murmur3's 64 bit finalizer: spreads nearby seeds over unrelated random streams
+    private static long mix(long z){
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Zipf distribution over 1..n by rejection-inversion (W. Hoermann, G. Derflinger: "Rejection-inversion
+     * to generate variates from monotone discrete distributions"), constant time and memory for any n.
+     */
+    static class ZipfSampler{
+        private final long n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        ZipfSampler(long n, double exponent){
+            this.n = n;
+            this.exponent = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralN = hIntegral(n + 0.5);
+            s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        long sample(SplittableRandom random){
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                long k = (long) (x + 0.5);
+                if (k < 1) {
+                    k = 1;
+                } else if (k > n) {
+                    k = n;
+                }
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x){
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x){
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x){
+            double t = x * (1 - exponent);
+            if (t < -1) {
+                t = -1; // numerical safety, t can't really be below -1
+            }
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log(1 + x) / x, also near 0
+        private static double helper1(double x){
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // (exp(x) - 1) / x, also near 0
+        private static double helper2(double x){
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
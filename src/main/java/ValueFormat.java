@@ -0,0 +1,181 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * The text form of a column's values, as they appear in the generator's value sets and the .json
+ * sidecar, and its conversion to and from the physical form the column stores.
+ *
+ * Plain columns use the Java text form of their primitive (UTF-8 for binaries). The logical types:
+ *  - DATE (int32): "2016-07-06", days since the epoch
+ *  - TIMESTAMP_MILLIS (int64): "2016-07-06T12:34:56.789" in UTC, milliseconds since the epoch
+ *  - int96: "2016-07-06T12:34:56.123456789" in UTC, stored the way Impala and Hive do it:
+ *    nanoseconds of the day as a little-endian int64, then the Julian day as a little-endian int32
+ *  - DECIMAL (int32, int64 or fixed_len_byte_array): the number as BigDecimal.toString() prints it,
+ *    stored as the unscaled value (big-endian two's complement for fixed_len_byte_array)
+ *
+ * Parsing is meant for value sets, which are converted once; formatting runs per value.
+ */
+public final class ValueFormat {
+  enum Kind { PLAIN, DATE, TIMESTAMP_MILLIS, INT96_TIMESTAMP, DECIMAL }
+
+  private static final ValueFormat PLAIN = new ValueFormat(Kind.PLAIN, 0, 0);
+
+  static final int INT96_LENGTH = 12;
+  private static final long JULIAN_DAY_OF_EPOCH = 2440588;
+  private static final long NANOS_PER_DAY = 86400L * 1000000000L;
+  private static final DateTimeFormatter MILLIS = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS");
+  private static final DateTimeFormatter NANOS = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSSSSSSSS");
+
+  final Kind kind;
+  final int scale;       // DECIMAL only
+  final int typeLength;  // fixed_len_byte_array only
+
+  private ValueFormat(Kind kind, int scale, int typeLength) {
+    this.kind = kind;
+    this.scale = scale;
+    this.typeLength = typeLength;
+  }
+
+  public static ValueFormat of(PrimitiveType type) {
+    if (type.getPrimitiveTypeName() == PrimitiveTypeName.INT96) {
+      return new ValueFormat(Kind.INT96_TIMESTAMP, 0, INT96_LENGTH);
+    }
+    OriginalType original = type.getOriginalType();
+    if (original == OriginalType.DATE) {
+      return new ValueFormat(Kind.DATE, 0, 0);
+    } else if (original == OriginalType.TIMESTAMP_MILLIS) {
+      return new ValueFormat(Kind.TIMESTAMP_MILLIS, 0, 0);
+    } else if (original == OriginalType.DECIMAL) {
+      return new ValueFormat(Kind.DECIMAL, type.getDecimalMetadata().getScale(), type.getTypeLength());
+    }
+    return PLAIN;
+  }
+
+  public boolean isPlain() {
+    return kind == Kind.PLAIN;
+  }
+
+  /** Whether the text form is a JSON number rather than a string */
+  public boolean isNumber() {
+    return kind == Kind.DECIMAL;
+  }
+
+  // ---- text form -> physical value
+
+  public int parseInt(String s) {
+    switch (kind) {
+      case DATE:    return Math.toIntExact(LocalDate.parse(s).toEpochDay());
+      case DECIMAL: return unscaled(s).intValueExact();
+      default:      return Integer.parseInt(s);
+    }
+  }
+
+  public long parseLong(String s) {
+    switch (kind) {
+      case TIMESTAMP_MILLIS: return LocalDateTime.parse(s).toInstant(ZoneOffset.UTC).toEpochMilli();
+      case DECIMAL:          return unscaled(s).longValueExact();
+      default:               return Long.parseLong(s);
+    }
+  }
+
+  public Binary parseBinary(String s) {
+    switch (kind) {
+      case INT96_TIMESTAMP:
+        LocalDateTime t = LocalDateTime.parse(s);
+        return int96(t.toLocalDate().toEpochDay(), t.toLocalTime().toNanoOfDay());
+      case DECIMAL:
+        return fixed(unscaled(s), typeLength);
+      default:
+        return Binary.fromString(s);
+    }
+  }
+
+  private BigInteger unscaled(String s) {
+    // throws if the literal has more digits after the point than the column's scale
+    return new BigDecimal(s).setScale(scale).unscaledValue();
+  }
+
+  // ---- physical value -> text form
+
+  public String format(int v) {
+    switch (kind) {
+      case DATE:    return LocalDate.ofEpochDay(v).toString();
+      case DECIMAL: return BigDecimal.valueOf(v, scale).toString();
+      default:      return Integer.toString(v);
+    }
+  }
+
+  public String format(long v) {
+    switch (kind) {
+      case TIMESTAMP_MILLIS:
+        return MILLIS.format(LocalDateTime.ofEpochSecond(Math.floorDiv(v, 1000L),
+            (int) Math.floorMod(v, 1000L) * 1000000, ZoneOffset.UTC));
+      case DECIMAL:
+        return BigDecimal.valueOf(v, scale).toString();
+      default:
+        return Long.toString(v);
+    }
+  }
+
+  public String format(Binary v) {
+    switch (kind) {
+      case INT96_TIMESTAMP:
+        ByteBuffer b = ByteBuffer.wrap(v.getBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        long nanoOfDay = b.getLong();
+        long epochDay = (b.getInt() & 0xFFFFFFFFL) - JULIAN_DAY_OF_EPOCH;
+        return NANOS.format(LocalDateTime.ofEpochSecond(epochDay * 86400L + nanoOfDay / 1000000000L,
+            (int) (nanoOfDay % 1000000000L), ZoneOffset.UTC));
+      case DECIMAL:
+        return new BigDecimal(new BigInteger(v.getBytes()), scale).toString();
+      default:
+        return v.toStringUsingUTF8();
+    }
+  }
+
+  // ---- encodings
+
+  /** An int96 timestamp of the given day (days since the epoch) and time of day */
+  static Binary int96(long epochDay, long nanoOfDay) {
+    if (nanoOfDay < 0 || nanoOfDay >= NANOS_PER_DAY) {
+      throw new IllegalArgumentException("Not a time of day: " + nanoOfDay + " ns");
+    }
+    ByteBuffer b = ByteBuffer.allocate(INT96_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    b.putLong(nanoOfDay).putInt(Math.toIntExact(epochDay + JULIAN_DAY_OF_EPOCH));
+    return Binary.fromConstantByteArray(b.array());
+  }
+
+  /** The big-endian two's complement of v, sign-extended to length bytes */
+  static Binary fixed(BigInteger v, int length) {
+    byte[] bytes = v.toByteArray();
+    if (bytes.length > length) {
+      throw new IllegalArgumentException(v + " does not fit into " + length + " bytes");
+    }
+    byte[] fixed = new byte[length];
+    byte pad = (byte) (v.signum() < 0 ? -1 : 0);
+    for (int i = 0; i < length - bytes.length; i++) {
+      fixed[i] = pad;
+    }
+    System.arraycopy(bytes, 0, fixed, length - bytes.length, bytes.length);
+    return Binary.fromConstantByteArray(fixed);
+  }
+
+  static Binary fixed(long v, int length) {
+    byte[] fixed = new byte[length];
+    for (int i = length - 1; i >= 0; i--) {
+      fixed[i] = (byte) v;
+      v >>= 8;   // arithmetic shift, so the top bytes are sign-extended
+    }
+    return Binary.fromConstantByteArray(fixed);
+  }
+}
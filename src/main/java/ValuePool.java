@@ -0,0 +1,116 @@
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.PrimitiveType;
+
+/**
+ * A value set parsed once into its primitive (or Binary) form, so generating a record
+ * copies values into a ColumnBatch instead of parsing strings. Logical types (dates, timestamps,
+ * decimals) are encoded here too, see ValueFormat.
+ * Values are addressed by their position in the original value set; an empty string is the null-value.
+ */
+class ValuePool {
+    final String type;
+    final String[] literals;
+
+    private boolean[] nulls;
+    private boolean[] booleans;
+    private int[] ints;
+    private long[] longs;
+    private float[] floats;
+    private double[] doubles;
+    private Binary[] binaries;
+
+    ValuePool(String type, String[] literals){
+        this.type = type;
+        this.literals = literals;
+
+        int n = literals.length;
+        nulls = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            nulls[i] = literals[i].length() == 0;
+        }
+
+        PrimitiveType primitive = TestFileGenerator.primitiveType(type);
+        ValueFormat format = ValueFormat.of(primitive);
+        switch (primitive.getPrimitiveTypeName()) {
+            case BOOLEAN:
+                booleans = new boolean[n];
+                for (int i = 0; i < n; i++) {
+                    booleans[i] = Boolean.parseBoolean(literals[i]);
+                }
+                break;
+            case INT32:
+                ints = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ints[i] = nulls[i] ? 0 : format.parseInt(literals[i]);
+                }
+                break;
+            case INT64:
+                longs = new long[n];
+                for (int i = 0; i < n; i++) {
+                    longs[i] = nulls[i] ? 0 : format.parseLong(literals[i]);
+                }
+                break;
+            case FLOAT:
+                floats = new float[n];
+                for (int i = 0; i < n; i++) {
+                    floats[i] = nulls[i] ? 0 : Float.parseFloat(literals[i]);
+                }
+                break;
+            case DOUBLE:
+                doubles = new double[n];
+                for (int i = 0; i < n; i++) {
+                    doubles[i] = nulls[i] ? 0 : Double.parseDouble(literals[i]);
+                }
+                break;
+            default: // binary, int96, fixed_len_byte_array
+                binaries = new Binary[n];
+                for (int i = 0; i < n; i++) {
+                    binaries[i] = nulls[i] ? Binary.fromString("") : format.parseBinary(literals[i]);
+                }
+        }
+    }
+
+    int size(){
+        return literals.length;
+    }
+
+    boolean isNull(int i){
+        return nulls[i];
+    }
+
+    /** Store value i in the row's slot of a required/optional column */
+    void set(ColumnBatch.Column c, int row, int i){
+        if (nulls[i]) {
+            c.setNull(row);
+        } else if (ints != null) {
+            c.setInt(row, ints[i]);
+        } else if (longs != null) {
+            c.setLong(row, longs[i]);
+        } else if (doubles != null) {
+            c.setDouble(row, doubles[i]);
+        } else if (floats != null) {
+            c.setFloat(row, floats[i]);
+        } else if (binaries != null) {
+            c.setBinary(row, binaries[i]);
+        } else {
+            c.setBoolean(row, booleans[i]);
+        }
+    }
+
+    /** Append value i to the current list of a repeated column */
+    void add(ColumnBatch.Column c, int i){
+        if (ints != null) {
+            c.addInt(ints[i]);
+        } else if (longs != null) {
+            c.addLong(longs[i]);
+        } else if (doubles != null) {
+            c.addDouble(doubles[i]);
+        } else if (floats != null) {
+            c.addFloat(floats[i]);
+        } else if (binaries != null) {
+            c.addBinary(binaries[i]);
+        } else {
+            c.addBoolean(booleans[i]);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * The binary .values sidecar of a flat test case: the expected values, column-major, for validators
+ * that would rather not parse the .json sidecar. Floats and doubles keep their exact bit patterns.
+ *
+ * Little-endian throughout:
+ *
+ *   "PQVALS01", int32 number of columns, int32 0, int64 number of rows
+ *   per column: int32 type (numbered as in parquet-format: boolean 0, int32 1, int64 2, int96 3,
+ *     float 4, double 5, binary 6, fixed_len_byte_array 7), int32 type length, int32 flags
+ *     (1 optional, 2 repeated), int32 name length, the UTF-8 name padded to 8 bytes, int64 number
+ *     of values, then (int64 offset, int64 length) of each of its four sections, (0, 0) if absent
+ *   the sections, each starting at a multiple of 8:
+ *     nulls    optional columns: one byte per row, 1 for null
+ *     lengths  repeated columns: int32 list length per row
+ *     values   one per row (zeros, or nothing for binaries, where the row is null), or the list
+ *              items back to back for repeated columns; booleans one byte each, int96 12 bytes,
+ *              fixed_len_byte_array the type length, binaries their bytes back to back
+ *     ends     binary columns: int64 end of each value in the values section
+ *
+ * The reader maps every section and serves it as a read-only view of the file, so nothing is copied
+ * and the columns can be read from many threads; a section must be smaller than 2 GB to be mapped.
+ */
+class ValuesSidecar {
+    static final byte[] MAGIC = "PQVALS01".getBytes(Charset.forName("US-ASCII"));
+    static final PrimitiveTypeName[] TYPES = new PrimitiveTypeName[]{
+            PrimitiveTypeName.BOOLEAN, PrimitiveTypeName.INT32, PrimitiveTypeName.INT64, PrimitiveTypeName.INT96,
+            PrimitiveTypeName.FLOAT, PrimitiveTypeName.DOUBLE, PrimitiveTypeName.BINARY,
+            PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY};
+    static final int OPTIONAL = 1;
+    static final int REPEATED = 2;
+    static final int NULLS = 0, LENGTHS = 1, VALUES = 2, ENDS = 3;
+    static final int NUM_SECTIONS = 4;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    final long numRows;
+    private final Column[] columns;
+
+    private ValuesSidecar(long numRows, Column[] columns){
+        this.numRows = numRows;
+        this.columns = columns;
+    }
+
+    /** Map a .values file; the mappings stay valid after the file is closed */
+    static ValuesSidecar open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            Directory d = Directory.read(channel, file);
+            Column[] columns = new Column[d.numColumns()];
+            for (int i = 0; i < columns.length; i++) {
+                Column c = new Column(d.names[i], TYPES[d.types[i]], d.typeLengths[i],
+                        (d.flags[i] & OPTIONAL) != 0, (d.flags[i] & REPEATED) != 0, d.numValues[i]);
+                ByteBuffer[] mapped = new ByteBuffer[NUM_SECTIONS];
+                for (int s = 0; s < NUM_SECTIONS; s++) {
+                    long length = d.lengths[i][s];
+                    if (length > Integer.MAX_VALUE) {
+                        throw new IOException(file + ": a section of column " + c.name + " is too large to map");
+                    }
+                    if (length > 0) {
+                        mapped[s] = channel.map(FileChannel.MapMode.READ_ONLY, d.offsets[i][s], length)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+                    }
+                }
+                c.attach(mapped, d.numRows);
+                columns[i] = c;
+            }
+            return new ValuesSidecar(d.numRows, columns);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // length rounded up to a multiple of 8
+    static long pad(long length){
+        return (length + 7) & ~7L;
+    }
+
+    /** The header: what the columns are and where their sections lie; a length of -1 for absent sections */
+    static class Directory {
+        long numRows;
+        final String[] names;
+        final int[] types;
+        final int[] typeLengths;
+        final int[] flags;
+        final long[] numValues;
+        final long[][] offsets;
+        final long[][] lengths;
+
+        Directory(int numColumns){
+            names = new String[numColumns];
+            types = new int[numColumns];
+            typeLengths = new int[numColumns];
+            flags = new int[numColumns];
+            numValues = new long[numColumns];
+            offsets = new long[numColumns][NUM_SECTIONS];
+            lengths = new long[numColumns][NUM_SECTIONS];
+        }
+
+        int numColumns(){
+            return names.length;
+        }
+
+        static Directory read(FileChannel channel, File file) throws IOException {
+            ByteBuffer header = read(channel, 0, 24);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a .values sidecar");
+            }
+            Directory d = new Directory(header.getInt());
+            header.getInt();
+            d.numRows = header.getLong();
+            long pos = header.capacity();
+            for (int i = 0; i < d.numColumns(); i++) {
+                ByteBuffer entry = read(channel, pos, 16);
+                d.types[i] = entry.getInt();
+                d.typeLengths[i] = entry.getInt();
+                d.flags[i] = entry.getInt();
+                int nameLength = entry.getInt();
+                if (d.types[i] < 0 || d.types[i] >= TYPES.length) {
+                    throw new IOException(file + ": unknown type " + d.types[i] + " of column " + i);
+                }
+                d.names[i] = UTF8.decode(read(channel, pos + 16, nameLength)).toString();
+                pos += 16 + pad(nameLength);
+                ByteBuffer sections = read(channel, pos, 8 + 16 * NUM_SECTIONS);
+                pos += sections.capacity();
+                d.numValues[i] = sections.getLong();
+                for (int s = 0; s < NUM_SECTIONS; s++) {
+                    d.offsets[i][s] = sections.getLong();
+                    d.lengths[i][s] = sections.getLong();
+                    if (d.offsets[i][s] == 0) {
+                        d.lengths[i][s] = -1;
+                    }
+                }
+            }
+            return d;
+        }
+
+        private static ByteBuffer read(FileChannel channel, long pos, int length) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            while (b.hasRemaining()) {
+                if (channel.read(b, pos + b.position()) < 0) {
+                    throw new IOException("Truncated .values sidecar");
+                }
+            }
+            b.flip();
+            return b;
+        }
+
+        /** Lay the sections out one after the other behind the header, and write the header */
+        void write(FileChannel out) throws IOException {
+            byte[][] nameBytes = new byte[names.length][];
+            long size = 24;
+            for (int i = 0; i < names.length; i++) {
+                nameBytes[i] = names[i].getBytes(UTF8);
+                size += 16 + pad(nameBytes[i].length) + 8 + 16 * NUM_SECTIONS;
+            }
+            ByteBuffer h = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            h.put(MAGIC).putInt(names.length).putInt(0).putLong(numRows);
+            long offset = size;
+            for (int i = 0; i < names.length; i++) {
+                h.putInt(types[i]).putInt(typeLengths[i]).putInt(flags[i]).putInt(nameBytes[i].length);
+                h.put(nameBytes[i]);
+                h.position((int) (h.position() + pad(nameBytes[i].length) - nameBytes[i].length));
+                h.putLong(numValues[i]);
+                for (int s = 0; s < NUM_SECTIONS; s++) {
+                    if (lengths[i][s] < 0) {
+                        h.putLong(0).putLong(0);
+                    } else {
+                        offsets[i][s] = offset;
+                        h.putLong(offset).putLong(lengths[i][s]);
+                        offset += pad(lengths[i][s]);
+                    }
+                }
+            }
+            h.flip();
+            while (h.hasRemaining()) {
+                out.write(h);
+            }
+        }
+    }
+
+    int numColumns(){
+        return columns.length;
+    }
+
+    Column column(int i){
+        return columns[i];
+    }
+
+    /** One column's vectors; positions index the values, rows the nulls and list lengths */
+    static class Column {
+        final String name;
+        final PrimitiveTypeName type;
+        final int typeLength;
+        final boolean optional;
+        final boolean repeated;
+        final long numValues;
+
+        private ByteBuffer nulls;
+        private IntBuffer lengths;
+        private int[] listStarts; // prefix sums of the lengths, the one thing that is computed
+        private ByteBuffer values;
+        private LongBuffer ends;
+        private int width; // bytes per value, fixed-width types only
+
+        Column(String name, PrimitiveTypeName type, int typeLength, boolean optional, boolean repeated,
+               long numValues){
+            this.name = name;
+            this.type = type;
+            this.typeLength = typeLength;
+            this.optional = optional;
+            this.repeated = repeated;
+            this.numValues = numValues;
+        }
+
+        private void attach(ByteBuffer[] sections, long numRows){
+            nulls = sections[NULLS];
+            values = sections[VALUES] != null ? sections[VALUES] : ByteBuffer.allocate(0);
+            if (sections[ENDS] != null) {
+                ends = sections[ENDS].asLongBuffer();
+            }
+            if (sections[LENGTHS] != null) {
+                lengths = sections[LENGTHS].asIntBuffer();
+                listStarts = new int[(int) numRows + 1];
+                for (int r = 0; r < numRows; r++) {
+                    listStarts[r + 1] = listStarts[r] + lengths.get(r);
+                }
+            }
+            switch (type) {
+                case BOOLEAN: width = 1; break;
+                case INT32:
+                case FLOAT:   width = 4; break;
+                case INT64:
+                case DOUBLE:  width = 8; break;
+                case INT96:   width = ValueFormat.INT96_LENGTH; break;
+                case FIXED_LEN_BYTE_ARRAY: width = typeLength; break;
+                default:      width = 0;
+            }
+        }
+
+        boolean isNull(int row){
+            return nulls != null && nulls.get(row) != 0;
+        }
+
+        int listLength(int row){
+            return lengths.get(row);
+        }
+
+        int listStart(int row){
+            return listStarts[row];
+        }
+
+        // ---- primitive views of the values section
+
+        ByteBuffer booleans(){ return values.duplicate(); }
+        IntBuffer ints()      { return values.asIntBuffer(); }
+        LongBuffer longs()    { return values.asLongBuffer(); }
+        FloatBuffer floats()  { return values.asFloatBuffer(); }
+        DoubleBuffer doubles(){ return values.asDoubleBuffer(); }
+
+        boolean getBoolean(int pos){ return values.get(pos) != 0; }
+        int getInt(int pos)        { return values.getInt(pos * 4); }
+        long getLong(int pos)      { return values.getLong(pos * 8); }
+        float getFloat(int pos)    { return values.getFloat(pos * 4); }
+        double getDouble(int pos)  { return values.getDouble(pos * 8); }
+
+        /** The bytes of a binary, int96 or fixed_len_byte_array value, as a view */
+        ByteBuffer getBytes(int pos){
+            int start;
+            int end;
+            if (ends != null) {
+                start = pos == 0 ? 0 : (int) ends.get(pos - 1);
+                end = (int) ends.get(pos);
+            } else {
+                start = pos * width;
+                end = start + width;
+            }
+            ByteBuffer b = values.duplicate();
+            b.limit(end).position(start);
+            return b.slice();
+        }
+
+        // for messages
+        String valueToString(int pos){
+            switch (type) {
+                case BOOLEAN: return Boolean.toString(getBoolean(pos));
+                case INT32:   return Integer.toString(getInt(pos));
+                case INT64:   return Long.toString(getLong(pos));
+                case FLOAT:   return Float.toString(getFloat(pos));
+                case DOUBLE:  return Double.toString(getDouble(pos));
+                default:      return UTF8.decode(getBytes(pos)).toString();
+            }
+        }
+    }
+}
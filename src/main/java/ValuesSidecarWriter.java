@@ -0,0 +1,367 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * Streams the binary .values sidecar (see ValuesSidecar) of a flat test case.
+ *
+ * The file is column-major but the records come batch by batch, so every batch's column vectors are
+ * appended to a spool file next to the target as they come, and close() copies them into place
+ * section by section (FileChannel.transferTo, without going through the heap) and deletes the spool.
+ */
+class ValuesSidecarWriter implements Closeable {
+    private static final String SPOOL_SUFFIX = ".spool";
+
+    private final File file;
+    private final File spoolFile;
+    private final FileChannel spool;
+    private final ColumnDescriptor[] descriptors;
+    private final String[] names;
+    private final Section[][] sections; // per column, per section kind; null if absent
+    private final long[] numValues;
+    private long numRows;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    // the pieces of one section in the spool, in order
+    private static class Section {
+        long[] chunks = new long[16]; // offset, length pairs
+        int numChunks;
+        long length;
+
+        void add(long offset, long n){
+            if (2 * numChunks + 2 > chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            chunks[2 * numChunks] = offset;
+            chunks[2 * numChunks + 1] = n;
+            numChunks++;
+            length += n;
+        }
+    }
+
+    ValuesSidecarWriter(File file, MessageType schema) throws IOException {
+        if (schema.getColumns().size() != schema.getFieldCount()) {
+            throw new IllegalArgumentException("The .values sidecar is for flat schemas only");
+        }
+        this.file = file;
+        spoolFile = new File(file.getPath() + SPOOL_SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(spoolFile, "rw");
+        raf.setLength(0);
+        spool = raf.getChannel();
+
+        int numColumns = schema.getFieldCount();
+        descriptors = schema.getColumns().toArray(new ColumnDescriptor[numColumns]);
+        names = new String[numColumns];
+        sections = new Section[numColumns][];
+        numValues = new long[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            names[i] = schema.getFieldName(i);
+            ColumnDescriptor cd = descriptors[i];
+            sections[i] = new Section[ValuesSidecar.NUM_SECTIONS];
+            if (cd.getMaxRepetitionLevel() > 0) {
+                sections[i][ValuesSidecar.LENGTHS] = new Section();
+            } else if (cd.getMaxDefinitionLevel() > 0) {
+                sections[i][ValuesSidecar.NULLS] = new Section();
+            }
+            sections[i][ValuesSidecar.VALUES] = new Section();
+            if (cd.getType() == PrimitiveTypeName.BINARY) {
+                sections[i][ValuesSidecar.ENDS] = new Section();
+            }
+        }
+    }
+
+    /** Append every row of the batch */
+    void write(ColumnBatch batch) throws IOException {
+        int rows = batch.getNumRows();
+        for (int i = 0; i < descriptors.length; i++) {
+            ColumnBatch.Column c = batch.column(i);
+            Section[] s = sections[i];
+            if (s[ValuesSidecar.NULLS] != null) {
+                ByteBuffer b = buffer(rows);
+                for (int r = 0; r < rows; r++) {
+                    b.put((byte) (c.isNull(r) ? 1 : 0));
+                }
+                flush(s[ValuesSidecar.NULLS]);
+            }
+            int count = rows;
+            if (s[ValuesSidecar.LENGTHS] != null) {
+                ByteBuffer b = buffer(4L * rows);
+                b.asIntBuffer().put(c.lengths, 0, rows);
+                b.position(4 * rows);
+                flush(s[ValuesSidecar.LENGTHS]);
+                count = c.numValues;
+            }
+            writeValues(c, count, s);
+            numValues[i] += count;
+        }
+        numRows += rows;
+    }
+
+    // the values of the batch column; zeros (nothing, for binaries) for null rows
+    private void writeValues(ColumnBatch.Column c, int count, Section[] s) throws IOException {
+        boolean nullable = s[ValuesSidecar.NULLS] != null;
+        ByteBuffer b;
+        switch (c.type) {
+            case BOOLEAN:
+                b = buffer(count);
+                for (int p = 0; p < count; p++) {
+                    b.put((byte) (c.booleans[p] && !(nullable && c.isNull(p)) ? 1 : 0));
+                }
+                break;
+            case INT32:
+                b = buffer(4L * count);
+                b.asIntBuffer().put(c.ints, 0, count);
+                zeroNulls(b, c, count, 4, nullable);
+                break;
+            case INT64:
+                b = buffer(8L * count);
+                b.asLongBuffer().put(c.longs, 0, count);
+                zeroNulls(b, c, count, 8, nullable);
+                break;
+            case FLOAT:
+                b = buffer(4L * count);
+                b.asFloatBuffer().put(c.floats, 0, count);
+                zeroNulls(b, c, count, 4, nullable);
+                break;
+            case DOUBLE:
+                b = buffer(8L * count);
+                b.asDoubleBuffer().put(c.doubles, 0, count);
+                zeroNulls(b, c, count, 8, nullable);
+                break;
+            case BINARY:
+                writeBinaries(c, count, s, nullable);
+                return;
+            default: // int96, fixed_len_byte_array
+                int width = c.type == PrimitiveTypeName.INT96
+                        ? ValueFormat.INT96_LENGTH : c.typeLength;
+                b = buffer((long) width * count);
+                byte[] zeros = new byte[width];
+                for (int p = 0; p < count; p++) {
+                    if (nullable && c.isNull(p)) {
+                        b.put(zeros);
+                    } else {
+                        b.put(c.binaries[p].toByteBuffer());
+                    }
+                }
+        }
+        flush(s[ValuesSidecar.VALUES]);
+    }
+
+    private static void zeroNulls(ByteBuffer b, ColumnBatch.Column c, int count, int width, boolean nullable){
+        if (nullable) {
+            for (int p = 0; p < count; p++) {
+                if (c.isNull(p)) {
+                    for (int k = 0; k < width; k++) {
+                        b.put(p * width + k, (byte) 0);
+                    }
+                }
+            }
+        }
+        b.position(count * width);
+    }
+
+    private void writeBinaries(ColumnBatch.Column c, int count, Section[] s, boolean nullable) throws IOException {
+        Section values = s[ValuesSidecar.VALUES];
+        long end = values.length;
+        ByteBuffer b = buffer(8L * count);
+        long size = 0;
+        for (int p = 0; p < count; p++) {
+            if (!(nullable && c.isNull(p))) {
+                size += c.binaries[p].length();
+            }
+            b.putLong(end + size);
+        }
+        flush(s[ValuesSidecar.ENDS]);
+
+        b = buffer(size);
+        for (int p = 0; p < count; p++) {
+            if (!(nullable && c.isNull(p))) {
+                b.put(c.binaries[p].toByteBuffer());
+            }
+        }
+        flush(values);
+    }
+
+    // the cleared buffer, with room for n bytes
+    private ByteBuffer buffer(long n){
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Batch column too large: " + n + " bytes");
+        }
+        if (buffer.capacity() < n) {
+            buffer = ByteBuffer.allocate((int) Math.max(n, 2L * buffer.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    // append what was put into the buffer to the spool, as the next chunk of the section
+    private void flush(Section section) throws IOException {
+        buffer.flip();
+        long offset = spool.position();
+        int n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            spool.write(buffer);
+        }
+        if (n > 0) {
+            section.add(offset, n);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            ValuesSidecar.Directory d = new ValuesSidecar.Directory(names.length);
+            d.numRows = numRows;
+            for (int i = 0; i < names.length; i++) {
+                ColumnDescriptor cd = descriptors[i];
+                d.names[i] = names[i];
+                d.types[i] = Arrays.asList(ValuesSidecar.TYPES).indexOf(cd.getType());
+                d.typeLengths[i] = cd.getTypeLength();
+                d.flags[i] = (sections[i][ValuesSidecar.NULLS] != null ? ValuesSidecar.OPTIONAL : 0)
+                        | (sections[i][ValuesSidecar.LENGTHS] != null ? ValuesSidecar.REPEATED : 0);
+                d.numValues[i] = numValues[i];
+                for (int s = 0; s < ValuesSidecar.NUM_SECTIONS; s++) {
+                    d.lengths[i][s] = sections[i][s] == null ? -1 : sections[i][s].length;
+                }
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+                FileChannel out = raf.getChannel();
+                d.write(out);
+                for (Section[] column : sections) {
+                    for (Section section : column) {
+                        if (section != null) {
+                            for (int k = 0; k < section.numChunks; k++) {
+                                transfer(spool, section.chunks[2 * k], section.chunks[2 * k + 1], out);
+                            }
+                            padTo8(out);
+                        }
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+        } finally {
+            spool.close();
+            spoolFile.delete();
+        }
+    }
+
+    private static void transfer(FileChannel in, long pos, long n, FileChannel out) throws IOException {
+        for (long done = 0; done < n; ) {
+            done += in.transferTo(pos + done, n - done, out);
+        }
+    }
+
+    private static void padTo8(FileChannel out) throws IOException {
+        long pos = out.position();
+        ByteBuffer zeros = ByteBuffer.allocate((int) (ValuesSidecar.pad(pos) - pos));
+        while (zeros.hasRemaining()) {
+            out.write(zeros);
+        }
+    }
+
+    /**
+     * Concatenate the sidecars of consecutive shards of a case into one, section by section; only
+     * the binary end offsets are rewritten, to count from the start of the whole values section
+     */
+    static void concatenate(List<File> parts, File target) throws IOException {
+        ArrayList<FileChannel> inputs = new ArrayList<FileChannel>(parts.size());
+        try {
+            ArrayList<ValuesSidecar.Directory> dirs = new ArrayList<ValuesSidecar.Directory>(parts.size());
+            for (File part : parts) {
+                FileChannel in = new FileInputStream(part).getChannel();
+                inputs.add(in);
+                dirs.add(ValuesSidecar.Directory.read(in, part));
+            }
+            ValuesSidecar.Directory first = dirs.get(0);
+            ValuesSidecar.Directory merged = new ValuesSidecar.Directory(first.numColumns());
+            for (int i = 0; i < first.numColumns(); i++) {
+                merged.names[i] = first.names[i];
+                merged.types[i] = first.types[i];
+                merged.typeLengths[i] = first.typeLengths[i];
+                merged.flags[i] = first.flags[i];
+                for (int s = 0; s < ValuesSidecar.NUM_SECTIONS; s++) {
+                    merged.lengths[i][s] = first.lengths[i][s] < 0 ? -1 : 0;
+                }
+            }
+            for (ValuesSidecar.Directory d : dirs) {
+                merged.numRows += d.numRows;
+                for (int i = 0; i < merged.numColumns(); i++) {
+                    merged.numValues[i] += d.numValues[i];
+                    for (int s = 0; s < ValuesSidecar.NUM_SECTIONS; s++) {
+                        if (merged.lengths[i][s] >= 0) {
+                            merged.lengths[i][s] += d.lengths[i][s];
+                        }
+                    }
+                }
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(target, "rw");
+            try {
+                raf.setLength(0);
+                FileChannel out = raf.getChannel();
+                merged.write(out);
+                for (int i = 0; i < merged.numColumns(); i++) {
+                    for (int s = 0; s < ValuesSidecar.NUM_SECTIONS; s++) {
+                        if (merged.lengths[i][s] < 0) {
+                            continue;
+                        }
+                        long base = 0; // bytes of binary values in the parts before
+                        for (int p = 0; p < parts.size(); p++) {
+                            ValuesSidecar.Directory d = dirs.get(p);
+                            if (s == ValuesSidecar.ENDS) {
+                                writeShiftedEnds(inputs.get(p), d.offsets[i][s], d.lengths[i][s], base, out);
+                                base += d.lengths[i][ValuesSidecar.VALUES];
+                            } else {
+                                transfer(inputs.get(p), d.offsets[i][s], d.lengths[i][s], out);
+                            }
+                        }
+                        padTo8(out);
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+        } finally {
+            for (FileChannel in : inputs) {
+                in.close();
+            }
+        }
+    }
+
+    private static void writeShiftedEnds(FileChannel in, long pos, long n, long base, FileChannel out)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (long done = 0; done < n; ) {
+            b.clear();
+            b.limit((int) Math.min(b.capacity(), n - done));
+            while (b.hasRemaining()) {
+                if (in.read(b, pos + done + b.position()) < 0) {
+                    throw new IOException("Truncated .values sidecar");
+                }
+            }
+            for (int k = 0; k < b.limit(); k += 8) {
+                b.putLong(k, b.getLong(k) + base);
+            }
+            b.flip();
+            done += b.remaining();
+            while (b.hasRemaining()) {
+                out.write(b);
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+import java.lang.reflect.Field;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.hadoop.ParquetWriter;
+
+/**
+ * Memory budget shared by all parquet writers of the process.
+ *
+ * Writers register with the row group size they were configured with; while the sum of those
+ * exceeds the pool (a fraction of the max heap), every writer's row group threshold is scaled down
+ * by the same factor, but not below MIN_ALLOCATION, and scaled back up as writers close. A writer
+ * that already buffers more than its new threshold flushes the row group at its next memory check.
+ * So with many concurrent writers, row group boundaries depend on what else is being written.
+ * Writers whose row groups end at set records (ParallelParquetWriter.setPageEnds) are exempt: they
+ * keep what they asked for, and the others share the rest of the pool.
+ *
+ * This is parquet-hadoop's MemoryManager for ParquetWriter, which 1.8.1 only offers to
+ * ParquetOutputFormat's record writers. The thresholds live in the writer's private
+ * InternalParquetRecordWriter and are set by reflection; in 1.8.1 the row group check only looks
+ * at nextRowGroupSize, so that is set along with rowGroupSizeThreshold. ParallelParquetWriters
+ * register the same way, and have both set directly. Neither is thread safe, so a new threshold
+ * isn't set by whichever thread changed the pool: it is set under the manager's lock by the
+ * writer's own thread, when registering (before the first record) and when reporting its usage.
+ */
+public class WriterMemoryManager {
+  public static final float DEFAULT_POOL_RATIO = 0.5f;
+  public static final long MIN_ALLOCATION = 1 << 20;
+
+  private static final Field WRITER;
+  private static final Field THRESHOLD;
+  private static final Field NEXT_ROW_GROUP_SIZE;
+  private static final Field COLUMN_STORE;
+  static {
+    WRITER = field(ParquetWriter.class, "writer", null);
+    Class<?> internal = WRITER.getType();
+    THRESHOLD = field(internal, "rowGroupSizeThreshold", long.class);
+    NEXT_ROW_GROUP_SIZE = field(internal, "nextRowGroupSize", long.class);
+    COLUMN_STORE = field(internal, "columnStore", ColumnWriteStore.class);
+  }
+
+  private static final WriterMemoryManager GLOBAL = new WriterMemoryManager(DEFAULT_POOL_RATIO);
+
+  /** The manager all ColumnBatchParquetWriters, CsvParquetWriters and ParallelParquetWriters register with */
+  public static WriterMemoryManager global() {
+    return GLOBAL;
+  }
+
+  private static class Entry {
+    final Object internalWriter; // a ParquetWriter's InternalParquetRecordWriter, or a ParallelParquetWriter
+    final long requested;
+    long allocation;
+    long applied;     // the threshold the writer has, set by its own thread
+    boolean exempt;   // row groups end at set records; keeps its requested size
+    long buffered;    // as last reported by the writer's own thread
+
+    Entry(Object internalWriter, long requested) {
+      this.internalWriter = internalWriter;
+      this.requested = requested;
+      this.allocation = requested;
+    }
+  }
+
+  /** What the manager did so far */
+  public static class Stats {
+    public long poolBytes;
+    public int writers;
+    public long allocatedBytes;
+    public long bufferedBytes;
+    public int peakWriters;
+    public long peakRequestedBytes;
+    public long peakBufferedBytes;
+    public long scaleDowns;     // times the writers' thresholds were lowered
+    public long forcedFlushes;  // writers that were over their new threshold at that point
+
+    @Override
+    public String toString() {
+      return String.format("pool %.1f MB, %d writer(s) (peak %d), peak requested %.1f MB, " +
+          "peak buffered %.1f MB, %d scale-down(s), %d forced flush(es)", poolBytes / 1e6, writers, peakWriters,
+          peakRequestedBytes / 1e6, peakBufferedBytes / 1e6, scaleDowns, forcedFlushes);
+    }
+  }
+
+  private final Map<Object, Entry> writers = new IdentityHashMap<Object, Entry>();
+  private long poolBytes;
+  private double scale = 1.0;
+  private long bufferedBytes;
+  private int peakWriters;
+  private long peakRequestedBytes;
+  private long peakBufferedBytes;
+  private long scaleDowns;
+  private long forcedFlushes;
+
+  public WriterMemoryManager(float poolRatio) {
+    setPoolRatio(poolRatio);
+  }
+
+  /** Pool size as a fraction of the max heap; re-balances the registered writers */
+  public synchronized void setPoolRatio(float poolRatio) {
+    if (poolRatio <= 0 || poolRatio > 1) {
+      throw new IllegalArgumentException("Memory pool ratio must be within (0, 1]: " + poolRatio);
+    }
+    poolBytes = (long) (Runtime.getRuntime().maxMemory() * (double) poolRatio);
+    updateAllocation();
+  }
+
+  public void register(ParquetWriter<?> writer, long rowGroupSize) {
+    register(writer, new Entry(internalWriter(writer), rowGroupSize));
+  }
+
+  public void register(ParallelParquetWriter<?> writer, long rowGroupSize) {
+    register(writer, new Entry(writer, rowGroupSize));
+  }
+
+  // on the writer's thread, before it writes anything
+  private synchronized void register(Object writer, Entry e) {
+    if (writers.put(writer, e) != null) {
+      throw new IllegalArgumentException("Writer is already registered");
+    }
+    peakWriters = Math.max(peakWriters, writers.size());
+    updateAllocation();
+    apply(e);
+  }
+
+  /** Take a writer whose row groups end at set records out of the scaling; on the writer's thread */
+  public synchronized void exempt(ParallelParquetWriter<?> writer) {
+    Entry e = writers.get(writer);
+    if (e == null) {
+      throw new IllegalArgumentException("Writer isn't registered");
+    }
+    e.exempt = true;
+    updateAllocation();
+    apply(e);
+  }
+
+  public void unregister(ParquetWriter<?> writer) {
+    remove(writer);
+  }
+
+  public void unregister(ParallelParquetWriter<?> writer) {
+    remove(writer);
+  }
+
+  private synchronized void remove(Object writer) {
+    Entry e = writers.remove(writer);
+    if (e != null) {
+      bufferedBytes -= e.buffered;
+      updateAllocation();
+    }
+  }
+
+  /** Called by the writer's own thread after writing, for the usage figures */
+  public void reportUsage(ParquetWriter<?> writer) {
+    report(writer);
+  }
+
+  public void reportUsage(ParallelParquetWriter<?> writer) {
+    report(writer);
+  }
+
+  private void report(Object writer) {
+    Entry e;
+    synchronized (this) {
+      e = writers.get(writer);
+    }
+    if (e == null) {
+      return;
+    }
+    // the column store isn't thread safe, so only its owner reads it
+    long buffered = e.internalWriter instanceof ParallelParquetWriter
+        ? ((ParallelParquetWriter<?>) e.internalWriter).estimateBufferedSize()
+        : ((ColumnWriteStore) get(COLUMN_STORE, e.internalWriter)).getBufferedSize();
+    synchronized (this) {
+      bufferedBytes += buffered - e.buffered;
+      e.buffered = buffered;
+      peakBufferedBytes = Math.max(peakBufferedBytes, bufferedBytes);
+      apply(e);
+    }
+  }
+
+  public synchronized Stats stats() {
+    Stats s = new Stats();
+    s.poolBytes = poolBytes;
+    s.writers = writers.size();
+    for (Entry e : writers.values()) {
+      s.allocatedBytes += e.allocation;
+    }
+    s.bufferedBytes = bufferedBytes;
+    s.peakWriters = peakWriters;
+    s.peakRequestedBytes = peakRequestedBytes;
+    s.peakBufferedBytes = peakBufferedBytes;
+    s.scaleDowns = scaleDowns;
+    s.forcedFlushes = forcedFlushes;
+    return s;
+  }
+
+  // only decides the allocations; apply() hands them to the writers
+  private void updateAllocation() {
+    long requested = 0;
+    long exempt = 0;
+    for (Entry e : writers.values()) {
+      if (e.exempt) {
+        exempt += e.requested;
+      } else {
+        requested += e.requested;
+      }
+    }
+    peakRequestedBytes = Math.max(peakRequestedBytes, requested + exempt);
+    long pool = Math.max(0, poolBytes - exempt);
+    double newScale = requested > pool ? (double) pool / requested : 1.0;
+    if (newScale < scale) {
+      scaleDowns++;
+    }
+    scale = newScale;
+    for (Entry e : writers.values()) {
+      long allocation = e.exempt ? e.requested
+          : Math.min(e.requested, Math.max(MIN_ALLOCATION, (long) (e.requested * scale)));
+      if (allocation < e.allocation && e.buffered > allocation) {
+        forcedFlushes++;
+      }
+      e.allocation = allocation;
+    }
+  }
+
+  // under the lock, on the writer's own thread
+  private void apply(Entry e) {
+    if (e.applied == e.allocation) {
+      return;
+    }
+    if (e.internalWriter instanceof ParallelParquetWriter) {
+      ((ParallelParquetWriter<?>) e.internalWriter).setRowGroupSizeThreshold(e.allocation);
+    } else {
+      set(THRESHOLD, e.internalWriter, e.allocation);
+      set(NEXT_ROW_GROUP_SIZE, e.internalWriter, e.allocation);
+    }
+    e.applied = e.allocation;
+  }
+
+  private static Object internalWriter(ParquetWriter<?> writer) {
+    return get(WRITER, writer);
+  }
+
+  // type null: any
+  private static Field field(Class<?> c, String name, Class<?> type) {
+    Field f;
+    try {
+      f = c.getDeclaredField(name);
+    } catch (NoSuchFieldException e) {
+      throw new IllegalStateException("WriterMemoryManager needs parquet-hadoop 1.8's " + c.getName() + "." + name +
+          ", which this parquet-hadoop doesn't have", e);
+    }
+    if (type != null && !type.isAssignableFrom(f.getType())) {
+      throw new IllegalStateException("WriterMemoryManager needs parquet-hadoop 1.8's " + c.getName() + "." + name +
+          " of type " + type.getName() + ", not " + f.getType().getName());
+    }
+    try {
+      f.setAccessible(true);
+    } catch (RuntimeException e) { // SecurityException, or a module that isn't open
+      throw new IllegalStateException("WriterMemoryManager can't access " + c.getName() + "." + name, e);
+    }
+    return f;
+  }
+
+  private static Object get(Field f, Object o) {
+    try {
+      return f.get(o);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void set(Field f, Object o, long value) {
+    try {
+      f.setLong(o, value);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
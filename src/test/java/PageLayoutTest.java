@@ -0,0 +1,167 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.format.PageHeader;
+import org.apache.parquet.format.PageType;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PageLayoutTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void pagesEndOnTarget() throws IOException {
+        for (String c : new String[]{
+                "\"firstType\": \"float\", \"rotateTypes\": true, \"columns\": 6, " +
+                        "\"storage\": {\"columns\": 6, \"blocks\": 1, \"pagesPerBlock\": 4, \"exact\": true}, " +
+                        "\"repetition\": \"MIX_OPTIONAL_REPEATED\"",
+                "\"firstType\": \"int32\", \"rotateTypes\": true, \"columns\": 6, \"codec\": \"GZIP\", " +
+                        "\"storage\": {\"columns\": 6, \"blocks\": 5, \"pagesPerBlock\": 3, \"exact\": true}, " +
+                        "\"repetition\": \"MIX_OPTIONAL_REPEATED\"",
+                "\"firstType\": \"double\", \"rotateTypes\": true, \"columns\": 4, \"writerVersion\": \"PARQUET_2_0\", " +
+                        "\"storage\": {\"columns\": 4, \"blocks\": 3, \"pagesPerBlock\": 7, \"exact\": true}, " +
+                        "\"repetition\": \"ALL_REPEATED\"",
+                "\"types\": [\"binary-bigString\", \"binary-bigString\"], " +
+                        "\"storage\": {\"columns\": 2, \"blocks\": 1, \"pagesPerBlock\": 128, \"exact\": true}, " +
+                        "\"repetition\": \"MIX_OPTIONAL_REPEATED\""}) {
+            TestFileGenerator.TestCase tc = generate(c);
+            TestFileGenerator.StorageDimensions storage = tc.options.storage;
+            long[] ends = storage.pageEnds;
+            assertEquals(c, storage.numBlocks * storage.numPagesPerBlock, ends.length);
+            assertEquals(c, ends[ends.length - 1], tc.options.numRecords);
+            for (int i = 1; i < ends.length; i++) {
+                assertTrue(c, ends[i] > ends[i - 1]);
+            }
+            // the generator checks the layout itself as well
+            PageLayout.check(new File(tc.fileName.getNameParquet()), storage);
+
+            List<BlockMetaData> blocks = footer(tc).getBlocks();
+            assertEquals(c, storage.numBlocks, blocks.size());
+            long target = (long) TestFileGenerator.StorageDimensions.TEST_PAGE_SIZE * storage.numColumns;
+            for (long bytes : pageBytes(tc, blocks)) {
+                // a page is cut on the first record that fills TEST_PAGE_SIZE per column, so at most a record over
+                assertTrue(c + ": " + bytes + " bytes for " + target, bytes >= target && bytes < 2 * target);
+            }
+        }
+    }
+
+    @Test
+    public void planIsTheSameEveryTime() throws IOException {
+        String c = "\"firstType\": \"int64\", \"rotateTypes\": true, \"columns\": 3, " +
+                "\"nested\": {\"layouts\": [\"list\", \"map\", \"struct\"], \"depth\": 2}, " +
+                "\"storage\": {\"columns\": 3, \"blocks\": 2, \"pagesPerBlock\": 5, \"exact\": true}, " +
+                "\"repetition\": \"MIX_REQUIRED_OPTIONAL\"";
+        assertTrue(Arrays.equals(load(c).options.storage.pageEnds, load(c).options.storage.pageEnds));
+    }
+
+    @Test
+    public void checkTellsAnotherLayout() throws IOException {
+        TestFileGenerator.TestCase tc = generate("\"firstType\": \"float\", \"rotateTypes\": true, \"columns\": 6, " +
+                "\"storage\": {\"columns\": 6, \"blocks\": 2, \"pagesPerBlock\": 3, \"exact\": true}, " +
+                "\"repetition\": \"ALL_REQUIRED\"");
+        File parquet = new File(tc.fileName.getNameParquet());
+        TestFileGenerator.StorageDimensions storage = tc.options.storage;
+
+        TestFileGenerator.StorageDimensions movedEnd = copy(storage, storage.numBlocks, storage.numPagesPerBlock);
+        movedEnd.pageEnds[1]++;
+        assertCheckFails(parquet, movedEnd);
+
+        // the same records, cut into other row groups and pages
+        long[] ends = storage.pageEnds;
+        TestFileGenerator.StorageDimensions oneBlock = copy(storage, 1, ends.length);
+        assertCheckFails(parquet, oneBlock);
+        TestFileGenerator.StorageDimensions morePages = copy(storage, storage.numBlocks, storage.numPagesPerBlock + 1);
+        morePages.pageEnds = new long[]{1, 2, ends[2], 4, 5, ends[5], ends[5], ends[5]};
+        assertCheckFails(parquet, morePages);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAPage() throws IOException {
+        load("\"firstType\": \"float\", \"columns\": 1, " +
+                "\"storage\": {\"columns\": 1, \"blocks\": 1, \"pagesPerBlock\": 0, \"exact\": true}, " +
+                "\"repetition\": \"ALL_REQUIRED\"");
+    }
+
+    private TestFileGenerator.TestCase load(String c) throws IOException {
+        File plan = new File(tmp.getRoot(), "plan.json");
+        FileWriter out = new FileWriter(plan);
+        try {
+            out.write("{\"cases\": [{\"group\": \"TestExact\", " + c + "}]}");
+        } finally {
+            out.close();
+        }
+        return TestPlan.load(plan, tmp.getRoot().getPath()).get(0);
+    }
+
+    private TestFileGenerator.TestCase generate(String c) throws IOException {
+        TestFileGenerator.TestCase tc = load(c);
+        tc.generate();
+        return tc;
+    }
+
+    private static TestFileGenerator.StorageDimensions copy(TestFileGenerator.StorageDimensions storage, int blocks,
+                                                            int pages){
+        TestFileGenerator.StorageDimensions copy = new TestFileGenerator.StorageDimensions(storage.numColumns,
+                blocks, pages);
+        copy.pageEnds = storage.pageEnds.clone();
+        return copy;
+    }
+
+    private static void assertCheckFails(File parquet, TestFileGenerator.StorageDimensions storage){
+        try {
+            PageLayout.check(parquet, storage);
+            fail("Expected a mismatch with " + Arrays.toString(storage.pageEnds) + " in " + storage.numBlocks +
+                    " row groups");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static ParquetMetadata footer(TestFileGenerator.TestCase tc) throws IOException {
+        return ParquetFileReader.readFooter(LocalChannelFileSystem.sharedConfiguration(),
+                new Path(new File(tc.fileName.getNameParquet()).toURI()), ParquetMetadataConverter.NO_FILTER);
+    }
+
+    // uncompressed bytes of each page, summed over the columns
+    private static List<Long> pageBytes(TestFileGenerator.TestCase tc, List<BlockMetaData> blocks)
+            throws IOException {
+        List<Long> pages = new ArrayList<Long>();
+        FileInputStream file = new FileInputStream(tc.fileName.getNameParquet());
+        try {
+            for (BlockMetaData block : blocks) {
+                long[] bytes = new long[tc.options.storage.numPagesPerBlock];
+                for (ColumnChunkMetaData chunk : block.getColumns()) {
+                    int page = 0;
+                    for (PageHeader header : CaseMetrics.readPageHeaders(file, chunk)) {
+                        if (header.getType() != PageType.DICTIONARY_PAGE) {
+                            bytes[page++] += header.getUncompressed_page_size();
+                        }
+                    }
+                }
+                for (long b : bytes) {
+                    pages.add(b);
+                }
+            }
+        } finally {
+            file.close();
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,159 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.format.PageHeader;
+import org.apache.parquet.format.PageType;
+import org.apache.parquet.format.Util;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParquetFileMergerTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void chunksMoveByTheBytesBeforeThem() throws IOException {
+    File first = part("first", "int32", 0, 3000);
+    File second = part("second", "int32", 3000, 2000);
+    File merged = merge(first, second);
+
+    List<BlockMetaData> sources = new ArrayList<BlockMetaData>(footer(first).getBlocks());
+    sources.addAll(footer(second).getBlocks());
+    List<BlockMetaData> blocks = footer(merged).getBlocks();
+    assertEquals(sources.size(), blocks.size());
+
+    long pos = 4; // after the magic
+    int dictionaries = 0;
+    for (int b = 0; b < blocks.size(); b++) {
+      assertEquals(sources.get(b).getRowCount(), blocks.get(b).getRowCount());
+      File source = b < footer(first).getBlocks().size() ? first : second;
+      for (int c = 0; c < blocks.get(b).getColumns().size(); c++) {
+        ColumnChunkMetaData from = sources.get(b).getColumns().get(c);
+        ColumnChunkMetaData to = blocks.get(b).getColumns().get(c);
+        assertEquals(pos, to.getStartingPos());
+        assertEquals(from.getTotalSize(), to.getTotalSize());
+        assertEquals(from.getValueCount(), to.getValueCount());
+        long shift = to.getStartingPos() - from.getStartingPos();
+        assertEquals(from.getFirstDataPageOffset() + shift, to.getFirstDataPageOffset());
+        assertEquals(from.getDictionaryPageOffset() > 0 ? from.getDictionaryPageOffset() + shift : 0,
+            to.getDictionaryPageOffset());
+        // parquet-mr 1.8.1 leaves the dictionary page offset out of the footer, and its first data page
+        // offset is the chunk's start, i.e. the dictionary page if there is one
+        PageHeader header = pageAt(merged, to.getFirstDataPageOffset());
+        assertEquals(pageAt(source, from.getFirstDataPageOffset()), header);
+        if (header.getType() == PageType.DICTIONARY_PAGE) {
+          dictionaries++;
+        }
+        assertArrayEquals(bytes(source, from.getStartingPos(), from.getTotalSize()),
+            bytes(merged, to.getStartingPos(), to.getTotalSize()));
+        pos += to.getTotalSize();
+      }
+    }
+    assertTrue(dictionaries > 0);
+  }
+
+  @Test
+  public void recordsFollowEachOtherInInputOrder() throws IOException {
+    File first = part("first", "binary", 0, 1500);
+    File second = part("second", "binary", 1500, 2500);
+
+    List<String> expected = new ArrayList<String>(records(first));
+    expected.addAll(records(second));
+    assertEquals(4000, expected.size());
+    assertEquals(expected, records(merge(first, second)));
+  }
+
+  @Test(expected = ParquetEncodingException.class)
+  public void rejectsAnotherSchema() throws IOException {
+    merge(part("first", "int32", 0, 100), part("second", "int64", 0, 100));
+  }
+
+  // records [first, first + count) of a dictionary encoded, 6 column case starting at firstType
+  private File part(String name, String firstType, long first, long count) throws IOException {
+    TestFileGenerator.TestOptions options = new TestFileGenerator.TestOptions(firstType, true, 6, count,
+        TestFileGenerator.RepetitionPattern.MIX_OPTIONAL_REPEATED);
+    options.enableDictionary = true;
+    ArrayList<TestFileGenerator.VarProperties> propList = new ArrayList<TestFileGenerator.VarProperties>();
+    for (TestFileGenerator.VarProperties vp : TestFileGenerator.makePropertyList(TestFileGenerator.valueMap,
+        TestFileGenerator.buildRawTypeSequence(options.numColumns, firstType, true), options.repMask)) {
+      propList.add(vp.copyAt(first));
+    }
+    MessageType schema = MessageTypeParser.parseMessageType(TestFileGenerator.emitFlatSchemaString(propList));
+    File parquet = new File(tmp.getRoot(), name + ".parquet");
+    TestFileGenerator.writeRecords(parquet, new File(tmp.getRoot(), name + ".json"), null, schema, options,
+        propList, count, null, new CaseMetrics());
+    return parquet;
+  }
+
+  private File merge(File... parts) throws IOException {
+    List<Path> inputs = new ArrayList<Path>();
+    for (File part : parts) {
+      inputs.add(new Path(part.toURI()));
+    }
+    File merged = new File(tmp.getRoot(), "merged.parquet");
+    new ParquetFileMerger(LocalChannelFileSystem.sharedConfiguration()).merge(inputs, new Path(merged.toURI()));
+    return merged;
+  }
+
+  private static ParquetMetadata footer(File f) throws IOException {
+    return ParquetFileReader.readFooter(LocalChannelFileSystem.sharedConfiguration(), new Path(f.toURI()),
+        ParquetMetadataConverter.NO_FILTER);
+  }
+
+  private static PageHeader pageAt(File f, long offset) throws IOException {
+    FileInputStream in = new FileInputStream(f);
+    try {
+      in.getChannel().position(offset);
+      return Util.readPageHeader(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static byte[] bytes(File f, long offset, long length) throws IOException {
+    RandomAccessFile in = new RandomAccessFile(f, "r");
+    try {
+      byte[] b = new byte[(int) length];
+      in.seek(offset);
+      in.readFully(b);
+      return b;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static List<String> records(File f) throws IOException {
+    List<String> records = new ArrayList<String>();
+    ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(f.toURI()))
+        .withConf(LocalChannelFileSystem.sharedConfiguration()).build();
+    try {
+      for (Group g = reader.read(); g != null; g = reader.read()) {
+        records.add(g.toString());
+      }
+    } finally {
+      reader.close();
+    }
+    return records;
+  }
+}
@@ -0,0 +1,170 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.MessageType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SkipManifestTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void sortedRowGroupsAboveTheValueAreSkippable() throws IOException {
+        JsonObject manifest = check("sorted", "");
+        // sorted: everything after the row group holding the value, i.e. most of them for 1%
+        JsonObject first = manifest.getJsonArray("predicates").getJsonObject(0);
+        assertEquals(0.01, first.getJsonNumber("target_selectivity").doubleValue(), 0);
+        assertTrue(first.toString(), first.getInt("skippable_row_groups") >= manifest.getInt("row_groups") - 1);
+    }
+
+    @Test
+    public void rangePartitionsAboveTheValueAreSkippable() throws IOException {
+        check("range", ", \"partitions\": 16");
+    }
+
+    @Test
+    public void clusteredPartitionsAboveTheValueAreSkippable() throws IOException {
+        check("clustered", ", \"partitions\": 16");
+    }
+
+    // generate a TestSkipping case of the default plan's shape, and check its manifest against the records
+    private JsonObject check(String kind, String partitions) throws IOException {
+        File plan = tmp.newFile("plan.json");
+        FileWriter out = new FileWriter(plan);
+        try {
+            out.write("{\"cases\": [{\"group\": \"TestSkipping\", \"variations\": [\"" + kind + "\"]," +
+                    " \"distribution\": {\"kind\": \"" + kind + "\", \"cardinality\": 1000000" + partitions +
+                    ", \"nullRatio\": 0.05, \"seed\": 20160706}, \"skipManifest\": [0.01, 0.1, 0.5]," +
+                    " \"firstType\": \"int32\", \"rotateTypes\": true, \"columns\": 6, \"records\": 32768," +
+                    " \"storage\": {\"columns\": 6, \"blocks\": 8, \"pagesPerBlock\": 4}," +
+                    " \"repetition\": \"MIX_REQUIRED_OPTIONAL\"}]}");
+        } finally {
+            out.close();
+        }
+        TestFileGenerator.TestCase tc = TestPlan.load(plan, tmp.getRoot().getPath()).get(0);
+        tc.generate();
+
+        JsonObject manifest = read(new File(tc.fileName.getNameSkipManifest()));
+        List<List<Group>> rowGroups = rowGroups(new File(tc.fileName.getNameParquet()));
+        assertTrue(rowGroups.size() > 1);
+        assertEquals(rowGroups.size(), manifest.getInt("row_groups"));
+        assertEquals(32768, manifest.getInt("records"));
+
+        HashSet<String> columns = new HashSet<String>();
+        for (JsonValue v : manifest.getJsonArray("predicates")) {
+            JsonObject p = (JsonObject) v;
+            String column = p.getString("column");
+            columns.add(column);
+            assertEquals("lt", p.getString("op"));
+
+            long matching = 0, nonNull = 0;
+            HashSet<Integer> skippable = new HashSet<Integer>();
+            for (int b = 0; b < rowGroups.size(); b++) {
+                boolean below = false;
+                for (Group g : rowGroups.get(b)) {
+                    if (g.getFieldRepetitionCount(column) == 0) {
+                        continue; // null
+                    }
+                    nonNull++;
+                    if (compare(g, column, p) < 0) {
+                        matching++;
+                        below = true;
+                    }
+                }
+                if (!below) {
+                    skippable.add(b);
+                }
+            }
+            assertEquals(p.toString(), matching, p.getJsonNumber("matching_records").longValue());
+            HashSet<Integer> skipped = new HashSet<Integer>();
+            for (JsonValue i : p.getJsonArray("skipped_row_group_indexes")) {
+                skipped.add(((JsonNumber) i).intValue());
+            }
+            assertEquals(p.toString(), skippable, skipped);
+            assertEquals(skipped.size(), p.getInt("skippable_row_groups"));
+            // the value is the quantile of the target selectivity
+            assertEquals(p.toString(), p.getJsonNumber("target_selectivity").doubleValue(),
+                    (double) matching / nonNull, 0.02);
+        }
+        // the ordered, non-boolean columns: int32, int64, float, double and binary
+        assertEquals(5, columns.size());
+        return manifest;
+    }
+
+    // the record's value against the predicate's
+    private static int compare(Group g, String column, JsonObject p){
+        String type = p.getString("type");
+        if (type.equals("BINARY")) {
+            return g.getBinary(column, 0).toStringUsingUTF8().compareTo(p.getString("value"));
+        }
+        double value;
+        if (type.equals("INT32")) {
+            value = g.getInteger(column, 0);
+        } else if (type.equals("INT64")) {
+            value = g.getLong(column, 0);
+        } else if (type.equals("FLOAT")) {
+            value = g.getFloat(column, 0);
+        } else {
+            value = g.getDouble(column, 0);
+        }
+        return Double.compare(value, p.getJsonNumber("value").doubleValue());
+    }
+
+    private static List<List<Group>> rowGroups(File parquet) throws IOException {
+        Path path = new Path(parquet.toURI());
+        ParquetMetadata footer = ParquetFileReader.readFooter(LocalChannelFileSystem.sharedConfiguration(), path,
+                ParquetMetadataConverter.NO_FILTER);
+        MessageType schema = footer.getFileMetaData().getSchema();
+        ParquetFileReader reader = new ParquetFileReader(LocalChannelFileSystem.sharedConfiguration(), path,
+                footer.getBlocks(), schema.getColumns());
+        List<List<Group>> rowGroups = new ArrayList<List<Group>>();
+        try {
+            for (PageReadStore rowGroup; (rowGroup = reader.readNextRowGroup()) != null; ) {
+                RecordReader<Group> records = new ColumnIOFactory().getColumnIO(schema)
+                        .getRecordReader(rowGroup, new GroupRecordConverter(schema));
+                List<Group> groups = new ArrayList<Group>();
+                for (long r = 0; r < rowGroup.getRowCount(); r++) {
+                    groups.add(records.read());
+                }
+                rowGroups.add(groups);
+            }
+        } finally {
+            reader.close();
+        }
+        return rowGroups;
+    }
+
+    private static JsonObject read(File f) throws IOException {
+        JsonReader in = Json.createReader(new FileReader(f));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
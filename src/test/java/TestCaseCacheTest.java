@@ -0,0 +1,129 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCaseCacheTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void keyDependsOnWhatTheFilesDependOn(){
+        String key = TestCaseCache.computeKey(testCase(100));
+        assertEquals(key, TestCaseCache.computeKey(testCase(100)));
+
+        assertNotEquals(key, TestCaseCache.computeKey(testCase(101)));
+
+        TestFileGenerator.TestCase codec = testCase(100);
+        codec.options.codec = CompressionCodecName.GZIP;
+        assertNotEquals(key, TestCaseCache.computeKey(codec));
+
+        TestFileGenerator.TestCase dictionary = testCase(100);
+        dictionary.options.enableDictionary = true;
+        assertNotEquals(key, TestCaseCache.computeKey(dictionary));
+
+        TestFileGenerator.TestCase values = testCase(100);
+        values.propList.get(0).valueSet = values.propList.get(0).valueSet.clone();
+        values.propList.get(0).valueSet[0] = "42";
+        assertNotEquals(key, TestCaseCache.computeKey(values));
+    }
+
+    @Test
+    public void keyTellsShardedFromSerialFilesOnly(){
+        TestFileGenerator.TestCase two = testCase(100);
+        two.options.shardThreads = 2;
+        TestFileGenerator.TestCase four = testCase(100);
+        four.options.shardThreads = 4;
+        assertNotEquals(TestCaseCache.computeKey(testCase(100)), TestCaseCache.computeKey(two));
+        // the shards are as big as a row group whatever the number of threads
+        assertEquals(TestCaseCache.computeKey(two), TestCaseCache.computeKey(four));
+    }
+
+    @Test
+    public void freshUntilAFileChanges() throws IOException {
+        TestFileGenerator.TestCase tc = generate(100);
+        TestCaseCache cache = new TestCaseCache(false);
+        assertFalse(cache.isFresh(tc)); // no key yet
+        cache.store(tc);
+        assertTrue(cache.isFresh(tc));
+
+        // same length, other bytes: only the checksum tells
+        File json = new File(tc.fileName.getNameJSON());
+        flipFirstByte(json);
+        assertFalse(cache.isFresh(tc));
+        flipFirstByte(json);
+        assertTrue(cache.isFresh(tc));
+
+        assertTrue(new File(tc.fileName.getNameSchema()).delete());
+        assertFalse(cache.isFresh(tc));
+    }
+
+    @Test
+    public void staleForOtherOptions() throws IOException {
+        TestFileGenerator.TestCase tc = generate(100);
+        new TestCaseCache(false).store(tc);
+
+        TestFileGenerator.TestCase other = testCase(100);
+        other.options.compactJson = true;
+        assertFalse(new TestCaseCache(false).isFresh(other));
+    }
+
+    @Test
+    public void forceRegeneratesButStillStoresKeys() throws IOException {
+        TestFileGenerator.TestCase tc = generate(100);
+        TestCaseCache force = new TestCaseCache(true);
+        force.store(tc);
+        assertFalse(force.isFresh(tc));
+        assertTrue(new TestCaseCache(false).isFresh(tc));
+    }
+
+    @Test
+    public void invalidateForgetsTheCase() throws IOException {
+        TestFileGenerator.TestCase tc = generate(100);
+        TestCaseCache cache = new TestCaseCache(false);
+        cache.store(tc);
+        cache.invalidate(tc);
+        assertFalse(TestCaseCache.keyFile(tc).exists());
+        assertFalse(cache.isFresh(tc));
+    }
+
+    private TestFileGenerator.TestCase testCase(long records){
+        TestFileGenerator.TestOptions options = new TestFileGenerator.TestOptions("int32", true, 3, records,
+                TestFileGenerator.RepetitionPattern.MIX_OPTIONAL_REPEATED);
+        TestFileGenerator.TestFileName tfn = new TestFileGenerator.TestFileName("TestCache",
+                tmp.getRoot().getPath() + "/");
+        tfn.appendTail(options);
+        ArrayList<TestFileGenerator.VarProperties> propList = TestFileGenerator.makePropertyList(
+                TestFileGenerator.valueMap,
+                TestFileGenerator.buildRawTypeSequence(options.numColumns, options.firstType, options.rotateType),
+                options.repMask);
+        return new TestFileGenerator.TestCase(tfn, options, propList);
+    }
+
+    private TestFileGenerator.TestCase generate(long records) throws IOException {
+        TestFileGenerator.TestCase tc = testCase(records);
+        tc.generate();
+        return tc;
+    }
+
+    private static void flipFirstByte(File f) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        try {
+            byte b = file.readByte();
+            file.seek(0);
+            file.writeByte(b ^ 1);
+        } finally {
+            file.close();
+        }
+    }
+}
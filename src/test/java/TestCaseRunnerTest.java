@@ -0,0 +1,82 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestCaseRunnerTest {
+
+    @Test
+    public void shardsSplitTheCasesExactlyOnce(){
+        ArrayList<TestFileGenerator.TestCase> cases = TestFileGenerator.buildTestCases("testcases");
+        for (int count = 1; count <= 5; count++) {
+            HashSet<String> seen = new HashSet<String>();
+            long totalCost = 0;
+            for (int index = 1; index <= count; index++) {
+                TestCaseRunner.Shard shard = TestCaseRunner.selectShard(cases, index, count);
+                assertEquals(cases.size(), shard.totalCases);
+                long cost = 0;
+                for (TestFileGenerator.TestCase tc : shard.cases) {
+                    assertTrue(tc.fileName.getNameParquet(), seen.add(tc.fileName.getNameParquet()));
+                    cost += tc.estimateCost();
+                }
+                assertEquals(cost, shard.cost);
+                totalCost = shard.totalCost;
+            }
+            assertEquals(cases.size(), seen.size());
+            long sum = 0;
+            for (TestFileGenerator.TestCase tc : cases) {
+                sum += tc.estimateCost();
+            }
+            assertEquals(sum, totalCost);
+        }
+    }
+
+    @Test
+    public void everyJobComputesTheSameSplitWhateverThePlanOrder(){
+        ArrayList<TestFileGenerator.TestCase> cases = TestFileGenerator.buildTestCases("testcases");
+        for (int index = 1; index <= 3; index++) {
+            List<String> expected = names(TestCaseRunner.selectShard(cases, index, 3));
+            for (long seed = 0; seed < 5; seed++) {
+                ArrayList<TestFileGenerator.TestCase> shuffled = new ArrayList<TestFileGenerator.TestCase>(cases);
+                Collections.shuffle(shuffled, new Random(seed));
+                assertEquals(expected, names(TestCaseRunner.selectShard(shuffled, index, 3)));
+            }
+        }
+    }
+
+    @Test
+    public void noShardCarriesMoreThanItsShareAndTheBiggestCase(){
+        ArrayList<TestFileGenerator.TestCase> cases = TestFileGenerator.buildTestCases("testcases");
+        long biggest = 0;
+        for (TestFileGenerator.TestCase tc : cases) {
+            biggest = Math.max(biggest, tc.estimateCost());
+        }
+        for (int count = 2; count <= 4; count++) {
+            for (int index = 1; index <= count; index++) {
+                TestCaseRunner.Shard shard = TestCaseRunner.selectShard(cases, index, count);
+                // greedy onto the cheapest shard: at most the mean plus one case over it
+                assertTrue(shard.toString(), shard.cost <= shard.totalCost / count + biggest);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAShardOutOfRange(){
+        TestCaseRunner.selectShard(TestFileGenerator.buildTestCases("testcases"), 4, 3);
+    }
+
+    private static List<String> names(TestCaseRunner.Shard shard){
+        List<String> names = new ArrayList<String>();
+        for (TestFileGenerator.TestCase tc : shard.cases) {
+            names.add(tc.fileName.getNameParquet());
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,103 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class ValueDistributionTest {
+    private static final int SAMPLES = 200000;
+
+    @Test
+    public void zipfSamplerFollowsTheZipfDistribution(){
+        for (double exponent : new double[]{0.5, 1.0, 1.2, 2.5}) {
+            int n = 20;
+            double[] p = new double[n + 1];
+            double sum = 0;
+            for (int k = 1; k <= n; k++) {
+                p[k] = Math.pow(k, -exponent);
+                sum += p[k];
+            }
+            long[] counts = new long[n + 1];
+            ValueDistribution.ZipfSampler zipf = new ValueDistribution.ZipfSampler(n, exponent);
+            SplittableRandom random = new SplittableRandom(20160706);
+            for (int i = 0; i < SAMPLES; i++) {
+                counts[(int) zipf.sample(random)]++;
+            }
+            for (int k = 1; k <= n; k++) {
+                double expected = p[k] / sum;
+                double sigma = Math.sqrt(expected * (1 - expected) / SAMPLES);
+                assertEquals("exponent " + exponent + ", k " + k, expected, (double) counts[k] / SAMPLES, 5 * sigma);
+            }
+        }
+    }
+
+    @Test
+    public void zipfSamplerStaysWithinOneToN(){
+        SplittableRandom random = new SplittableRandom(1);
+        ValueDistribution.ZipfSampler one = new ValueDistribution.ZipfSampler(1, 1.1);
+        ValueDistribution.ZipfSampler huge = new ValueDistribution.ZipfSampler(1L << 40, 0.8);
+        long max = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            assertEquals(1, one.sample(random));
+            long k = huge.sample(random);
+            assertTrue(k >= 1 && k <= 1L << 40);
+            max = Math.max(max, k);
+        }
+        // constant memory, and yet the tail is reached
+        assertTrue(max > 1L << 30);
+    }
+
+    @Test
+    public void cursorAtAnyRecordContinuesTheSerialRun(){
+        for (ValueDistribution d : new ValueDistribution[]{
+                ValueDistribution.zipf(1000, 1.1, 0.2, 0, 0, 7),
+                ValueDistribution.uniform(1000000, 0.1, 0, 0, 7)}) {
+            long[] serial = keys(d.cursor(true, false, 0), 4 * ValueDistribution.BLOCK_RECORDS);
+            for (int record : new int[]{1, 1023, 1024, 1025, 2047, 2048, 3000}) {
+                long[] seeked = keys(d.cursor(true, false, record), serial.length - record);
+                assertTrue(d + " at " + record,
+                        Arrays.equals(Arrays.copyOfRange(serial, record, serial.length), seeked));
+            }
+        }
+    }
+
+    @Test
+    public void everyBlockIsSeededOnItsOwn(){
+        int block = ValueDistribution.BLOCK_RECORDS;
+        ValueDistribution d = ValueDistribution.uniform(1L << 40, 0, 0, 0, 7);
+        long[] serial = keys(d.cursor(false, false, 0), 3 * block);
+        // the same seed for the block number, whatever came before
+        assertTrue(Arrays.equals(Arrays.copyOfRange(serial, 2 * block, 3 * block),
+                keys(d.cursor(false, false, 2 * block), block)));
+        // and other draws in every block
+        assertFalse(Arrays.equals(Arrays.copyOfRange(serial, 0, block), Arrays.copyOfRange(serial, block, 2 * block)));
+        assertFalse(Arrays.equals(keys(d.cursor(false, false, 0), block),
+                keys(d.forColumn(1).cursor(false, false, 0), block)));
+    }
+
+    @Test
+    public void nullRatioIsKept(){
+        ValueDistribution d = ValueDistribution.zipf(100, 1.0, 0.25, 0, 0, 3);
+        long nulls = 0;
+        for (long k : keys(d.cursor(true, false, 0), SAMPLES)) {
+            if (k < 0) {
+                nulls++;
+            }
+        }
+        assertEquals(0.25, (double) nulls / SAMPLES, 0.01);
+        for (long k : keys(d.cursor(false, false, 0), SAMPLES)) {
+            assertTrue(k >= 0 && k < 100); // required columns have no nulls
+        }
+    }
+
+    private static long[] keys(ValueDistribution.Cursor cursor, int n){
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = cursor.nextKey();
+        }
+        return keys;
+    }
+}